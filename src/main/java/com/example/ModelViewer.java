@@ -2,24 +2,34 @@ package com.example;
 import com.example.graphics.PointLightShadowMap;
 
 import com.example.graphics.*;
+import org.joml.FrustumIntersection;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.lwjgl.glfw.GLFWErrorCallback;
 import org.lwjgl.opengl.GL;
 
 import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntConsumer;
 
 import static org.lwjgl.glfw.GLFW.*;
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL13.*;
 import static org.lwjgl.opengl.GL20.*;
-import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.opengl.GL32.GL_DEPTH_CLAMP;
+import static org.lwjgl.system.MemoryUtil.memAllocFloat;
+import static org.lwjgl.system.MemoryUtil.memFree;
 
 public class ModelViewer {
     private long window;
     private int width = 1280;
     private int height = 720;
 
+    private final AssetRegistry assets = new AssetRegistry();
+
     private ShaderProgram shader;
     private Camera camera = new Camera();
 
@@ -27,6 +37,13 @@ public class ModelViewer {
     private Skybox skybox;
 
     private Model[] bottles;
+    // Distinct bottle models, one instanced draw each; bottleGroup[i] indexes into them.
+    private Model[] bottleModels;
+    private int[] bottleGroup;
+    private InstanceBuffer[] bottleInstances;
+    private float[] bottleGroupDepth;
+    // Finest LOD any visible instance of the group needs this frame.
+    private int[] bottleGroupLod;
     private float[] bottleScale;
     private float[] bottleOrientX;
     private float[] bottleOrientZ;
@@ -35,6 +52,7 @@ public class ModelViewer {
 
     private Model cyborgModel;
     private float cyborgScale = 1.0f;
+    private InstanceBuffer cyborgInstance;
 
     private float lastX = width / 2f;
     private float lastY = height / 2f;
@@ -70,8 +88,82 @@ public class ModelViewer {
     private Texture cyborgAltTex;
 
     private ShaderProgram depthCubeShader;
-    private PointLightShadowMap[] shadowMaps;
+
+    // Uniform handles resolved once after linking, so the frame loop does no name lookups.
+    private Uniform depthModel, depthShadowMatrices, depthLight, depthLightPos, depthFaceMask;
+    private Uniform reflectU, reflectStrengthU, glowU, shadowEnabledU;
+    // Camera and light data shared by all shaders through uniform blocks, written once per frame.
+    private FrameUniforms frameUniforms;
+    private LightUniforms lightUniforms;
+    private ClusteredLights clusteredLights;
+    // Each bottle carries a light; the rest are dim colored lights orbiting the cyborg.
+    private final int requestedLights = Integer.getInteger("modelviewer.lights", 256);
+    private static final float EXTRA_LIGHT_INTENSITY = 0.15f;
+    private float[] extraLightOrbit; // per extra light: radius, height, angle, angular speed
+    private float[] extraLightColor;
+    private final Vector3f extraLightPos = new Vector3f();
+    // Deferred path, toggled with G: G-buffer pass, then full-screen ambient and per-light volumes.
+    private boolean deferred = Boolean.getBoolean("modelviewer.deferred");
+    private boolean deferredKeyDown;
+    private GBuffer gBuffer;
+    private LightVolume lightVolume;
+    private ShaderProgram gBufferShader, deferredAmbientShader, lightVolumeShader;
+    private Uniform ambientReflectU, ambientReflectStrengthU, ambientGlowU, volumeShadowEnabledU;
+    // Depth-only pass before the scene pass, which then shades with GL_EQUAL; toggled with P.
+    private boolean depthPrepass = !Boolean.getBoolean("modelviewer.noPrepass");
+    private boolean prepassKeyDown;
+    private ShaderProgram depthShader;
+
+    // Per-frame scratch objects, reused every frame so the steady-state loop allocates nothing.
+    private final Matrix4f projection = new Matrix4f();
+    private final Matrix4f view = new Matrix4f();
+    private final Matrix4f viewProjection = new Matrix4f();
+    private final Matrix4f cyborgTransform = new Matrix4f();
+    private final Matrix4f cyborgShadowTransform = new Matrix4f();
+    private final Matrix4f[] lightSpaceMatrices = new Matrix4f[6];
+    private final Vector3f casterMin = new Vector3f();
+    private final Vector3f casterMax = new Vector3f();
+    private final Vector3f casterCenter = new Vector3f();
+    private final Vector3f meshMin = new Vector3f();
+    private final Vector3f meshMax = new Vector3f();
+    private final Vector3f worldMin = new Vector3f();
+    private final Vector3f worldMax = new Vector3f();
+    private final Vector3f cyborgWorldCenter = new Vector3f();
+    private final Vector3f cyborgBoundsMin = new Vector3f();
+    private final Vector3f cyborgBoundsMax = new Vector3f();
+    private float[] angleTotals;
+    private Vector3f[] precomputedLightPos;
+    private FloatBuffer shadowFaces;
+    private final IntConsumer casterQuery = id -> {
+        if (id == this.bottles.length) this.casterInRange = true;
+    };
+    private final IntConsumer visibilityQuery = id -> {
+        if (id < this.bottleVisible.length) this.bottleVisible[id] = true;
+        else this.cyborgVisible = true;
+    };
+    private final RenderQueue renderQueue = new RenderQueue();
+    private final FrustumCuller cameraCuller = new FrustumCuller();
+    private final FrustumCuller shadowCuller = new FrustumCuller();
+    // Scene objects by world bounds: payload i < bottles.length is bottle i, bottles.length is the cyborg.
+    private final AabbTree sceneTree = new AabbTree(0.25f);
+    private final FrustumIntersection viewFrustum = new FrustumIntersection();
+    private int[] bottleProxy;
+    private int cyborgProxy;
+    private Matrix4f[] bottleTransforms;
+    private boolean[] bottleVisible;
+    private boolean cyborgVisible;
+    private boolean casterInRange;
+    // Shared vertex/index storage for all loaded models, so a model's meshes batch into one draw.
+    private GeometryArena geometryArena;
+    private PointLightShadowMap shadowMap;
     private float shadowFarPlane = 50f;
+    private ShadowScheduler shadowScheduler;
+    private int[] shadowFaceMasks;
+    // Cube faces re-rendered per frame at most; <= 0 renders every dirty face.
+    private final int shadowFaceBudget = Integer.getInteger("modelviewer.shadowFaceBudget", 24);
+    private static final float FOV_Y = (float) Math.toRadians(60);
+    // Shadow maps are low resolution and blurred by filtering, so casters go one LOD coarser there.
+    private static final int SHADOW_LOD_BIAS = 1;
 
     public static void main(String[] args) { new ModelViewer().run(); }
 
@@ -115,19 +207,103 @@ public class ModelViewer {
     }
 
     private void initScene() {
-        shader = new ShaderProgram("shaders/basic.vert", "shaders/basic.frag");
+        String[][] bottleRes = new String[][]{
+                {"model/beer-v1/beer.obj", "model/beer-v1/14043_16_oz._Beer_Bottle_diff.jpg"},
+                {"model/bud/bud.obj", "model/bud/BUD2.jpeg"},
+                {"model/beer-v2/beer.obj", "model/beer-v2/14043_16_oz._Beer_Bottle_diff_final.jpg"},
+                {"model/heineken/heineken.obj", "model/heineken/material_baseColor.png"},
+                {"model/corona/Corona.obj", "model/corona/BotellaText.jpg"},
+                {"model/stella/stella-artois.obj", "model/stella/STELLAARTOIS2.png"},
+                {"model/beer-v1/beer.obj", "model/beer-v1/14043_16_oz._Beer_Bottle_diff.jpg"},
+                {"model/bud/bud.obj", "model/bud/BUD2.jpeg"},
+                {"model/beer-v2/beer.obj", "model/beer-v2/14043_16_oz._Beer_Bottle_diff_final.jpg"},
+                {"model/heineken/heineken.obj", "model/heineken/material_baseColor.png"},
+                {"model/corona/Corona.obj", "model/corona/BotellaText.jpg"},
+                {"model/stella/stella-artois.obj", "model/stella/STELLAARTOIS2.png"}
+        };
+
+        shadowMap = new PointLightShadowMap(512, shadowFarPlane, bottleRes.length);
+        shadowScheduler = new ShadowScheduler(shadowMap.capacity, shadowFaceBudget, 0.05f);
+        shadowFaceMasks = new int[shadowMap.capacity];
+
+        frameUniforms = new FrameUniforms();
+        lightUniforms = new LightUniforms();
+        clusteredLights = new ClusteredLights(Math.min(3, Runtime.getRuntime().availableProcessors() - 1));
+
+        shader = new ShaderProgram("shaders/basic.vert", null, "shaders/basic.frag", shadowMap.shaderDefine());
+        bindUniformBlocks(shader);
         glUseProgram(shader.id());
-        glUniform1i(shader.getUniformLocation("uTexture"), 0);
-        glUniform1i(shader.getUniformLocation("uEnvMap"), 1);
+        shader.uniform("uTexture").set(0);
+        shader.uniform("uEnvMap").set(1);
+        shader.uniform("uShadowMaps").set(2);
+        shader.uniform("uLightData").set(ClusteredLights.LIGHT_DATA_UNIT);
+        shader.uniform("uClusterGrid").set(ClusteredLights.CLUSTER_GRID_UNIT);
+        shader.uniform("uLightIndices").set(ClusteredLights.LIGHT_INDEX_UNIT);
+        shader.uniform("uAmbient").set(0.03f);
+        shader.uniform("uSpecularStrength").set(0.7f);
+        shader.uniform("uShininess").set(48.0f);
+        reflectU = shader.uniform("uReflect");
+        reflectStrengthU = shader.uniform("uReflectStrength");
+        glowU = shader.uniform("uGlow");
+        shadowEnabledU = shader.uniform("uShadowEnabled");
 
         skyboxShader = new ShaderProgram("shaders/skybox.vert", "shaders/skybox.frag");
+        bindUniformBlocks(skyboxShader);
         glUseProgram(skyboxShader.id());
-        int skyboxLoc = skyboxShader.getUniformLocation("uSkybox");
-        glUniform1i(skyboxLoc, 0);
+        skyboxShader.uniform("uSkybox").set(0);
         CubeMapTexture cubeMap = new CubeMapTexture("environment/cubemap/space");
         skybox = new Skybox(cubeMap);
 
-        cyborgModel = ModelLoader.loadObjWithTexture("model/cyborg/cyborg.obj", "model/cyborg/cyborg_diffuse.png");
+
+        try (AssetLoader loader = new AssetLoader(assets)) {
+            geometryArena = new GeometryArena(VertexFormat.PACKED, 1 << 18, 1 << 20);
+            loader.setGeometryArena(geometryArena);
+            CompletableFuture<Model> cyborgFuture = loader.loadModel("model/cyborg/cyborg.obj", "model/cyborg/cyborg_diffuse.png");
+            CompletableFuture<Texture> altTexFuture = loader.loadTexture("model/cyborg/cyborg_normal.png");
+            CompletableFuture<Texture> albedoTexFuture = loader.loadTexture("model/cyborg/cyborg_diffuse.png");
+            List<CompletableFuture<Model>> bottleFutures = new ArrayList<>();
+            for (String[] res : bottleRes) {
+                bottleFutures.add(loader.loadModel(res[0], res[1]));
+            }
+            loader.awaitAll();
+
+            cyborgModel = cyborgFuture.join();
+            cyborgAltTex = altTexFuture.join();
+            cyborgAlbedoTex = albedoTexFuture.join();
+            bottles = new Model[bottleRes.length];
+            for (int i = 0; i < bottles.length; i++) {
+                bottles[i] = bottleFutures.get(i).join();
+            }
+        }
+
+        // The registry hands back the same Model for repeated OBJ/texture pairs.
+        List<Model> distinct = new ArrayList<>();
+        bottleGroup = new int[bottles.length];
+        for (int i = 0; i < bottles.length; i++) {
+            int group = distinct.indexOf(bottles[i]);
+            if (group < 0) {
+                group = distinct.size();
+                distinct.add(bottles[i]);
+            }
+            bottleGroup[i] = group;
+        }
+        bottleModels = distinct.toArray(new Model[0]);
+        bottleInstances = new InstanceBuffer[bottleModels.length];
+        for (int g = 0; g < bottleInstances.length; g++) {
+            bottleInstances[g] = new InstanceBuffer(4);
+        }
+        bottleGroupDepth = new float[bottleModels.length];
+        bottleGroupLod = new int[bottleModels.length];
+        bottleTransforms = new Matrix4f[bottles.length];
+        bottleVisible = new boolean[bottles.length];
+        bottleProxy = new int[bottles.length];
+        for (int i = 0; i < bottles.length; i++) {
+            bottleTransforms[i] = new Matrix4f();
+            bottleProxy[i] = sceneTree.insert(bottles[i].getBoundsMin(), bottles[i].getBoundsMax(), i);
+        }
+        cyborgProxy = sceneTree.insert(cyborgModel.getBoundsMin(), cyborgModel.getBoundsMax(), bottles.length);
+        cyborgInstance = new InstanceBuffer(1);
+
         float targetSize = 2.0f;
         cyborgScale = targetSize / Math.max(1e-6f, cyborgModel.getMaxExtent());
         cyborgScale *= 5f;
@@ -140,32 +316,35 @@ public class ModelViewer {
         maxRadius = 5.0f * cyborgRadius;
         currentRadius = maxRadius;
 
-        cyborgAltTex = new Texture("model/cyborg/cyborg_normal.png");
-        cyborgAlbedoTex = new Texture("model/cyborg/cyborg_diffuse.png");
-
-        String[][] bottleRes = new String[][]{
-                {"model/beer-v1/beer.obj", "model/beer-v1/14043_16_oz._Beer_Bottle_diff.jpg"},
-                {"model/bud/bud.obj", "model/bud/BUD2.jpeg"},
-                {"model/beer-v2/beer.obj", "model/beer-v2/14043_16_oz._Beer_Bottle_diff_final.jpg"},
-                {"model/heineken/heineken.obj", "model/heineken/material_baseColor.png"},
-                {"model/corona/Corona.obj", "model/corona/BotellaText.jpg"},
-                {"model/stella/stella-artois.obj", "model/stella/STELLAARTOIS2.png"},
-                {"model/beer-v1/beer.obj", "model/beer-v1/14043_16_oz._Beer_Bottle_diff.jpg"},
-                {"model/bud/bud.obj", "model/bud/BUD2.jpeg"},
-                {"model/beer-v2/beer.obj", "model/beer-v2/14043_16_oz._Beer_Bottle_diff_final.jpg"},
-                {"model/heineken/heineken.obj", "model/heineken/material_baseColor.png"},
-                {"model/corona/Corona.obj", "model/corona/BotellaText.jpg"},
-                {"model/stella/stella-artois.obj", "model/stella/STELLAARTOIS2.png"}
-        };
-        bottles = new Model[bottleRes.length];
         bottleScale = new float[bottleRes.length];
         bottleOrientX = new float[bottleRes.length];
         bottleOrientZ = new float[bottleRes.length];
         bottleSpinAxis = new int[bottleRes.length];
         bottleOrbitAngle = new float[bottleRes.length];
+        angleTotals = new float[bottleRes.length];
+        precomputedLightPos = new Vector3f[bottleRes.length];
+        for (int i = 0; i < bottleRes.length; i++) precomputedLightPos[i] = new Vector3f();
+        for (int face = 0; face < 6; face++) lightSpaceMatrices[face] = new Matrix4f();
+        shadowFaces = memAllocFloat(6 * 16);
+        cyborgBoundsMin.set(cmin);
+        cyborgBoundsMax.set(cmax);
+
+        int extraLights = Math.max(0, Math.min(requestedLights, ClusteredLights.MAX_LIGHTS) - bottleRes.length);
+        extraLightOrbit = new float[extraLights * 4];
+        extraLightColor = new float[extraLights * 3];
+        java.util.Random random = new java.util.Random(42);
+        for (int i = 0; i < extraLights; i++) {
+            extraLightOrbit[i * 4] = minRadius + random.nextFloat() * (maxRadius * 1.2f - minRadius);
+            extraLightOrbit[i * 4 + 1] = (cmin.y + random.nextFloat() * (cmax.y - cmin.y)) * cyborgScale;
+            extraLightOrbit[i * 4 + 2] = random.nextFloat() * (float) (2.0 * Math.PI);
+            extraLightOrbit[i * 4 + 3] = (0.1f + random.nextFloat() * 0.4f) * (random.nextBoolean() ? 1 : -1);
+            float hue = random.nextFloat() * 6.0f;
+            extraLightColor[i * 3] = Math.max(0.0f, Math.min(1.0f, Math.abs(hue - 3.0f) - 1.0f));
+            extraLightColor[i * 3 + 1] = Math.max(0.0f, Math.min(1.0f, 2.0f - Math.abs(hue - 2.0f)));
+            extraLightColor[i * 3 + 2] = Math.max(0.0f, Math.min(1.0f, 2.0f - Math.abs(hue - 4.0f)));
+        }
 
         for (int i = 0; i < bottleRes.length; i++) {
-            bottles[i] = ModelLoader.loadObjWithTexture(bottleRes[i][0], bottleRes[i][1]);
             float extent = Math.max(1e-6f, bottles[i].getMaxExtent());
             bottleScale[i] = targetSize / extent;
 
@@ -197,11 +376,61 @@ public class ModelViewer {
             }
         }
 
-        depthCubeShader = new ShaderProgram("shaders/depth_cube.vert", "shaders/depth_cube.frag");
-        shadowMaps = new PointLightShadowMap[bottleRes.length];
-        for (int i = 0; i < shadowMaps.length; i++) {
-            shadowMaps[i] = new PointLightShadowMap(512, shadowFarPlane);
-        }
+        depthCubeShader = new ShaderProgram("shaders/depth_cube.vert", "shaders/depth_cube.geom", "shaders/depth_cube.frag");
+        bindUniformBlocks(depthCubeShader);
+        depthModel = depthCubeShader.uniform("uModel");
+        depthShadowMatrices = depthCubeShader.uniform("uShadowMatrices");
+        depthLight = depthCubeShader.uniform("uLight");
+        depthLightPos = depthCubeShader.uniform("uLightPos");
+        depthFaceMask = depthCubeShader.uniform("uFaceMask");
+
+        gBuffer = new GBuffer(width, height);
+        lightVolume = new LightVolume();
+        gBufferShader = new ShaderProgram("shaders/basic.vert", "shaders/gbuffer.frag");
+        bindUniformBlocks(gBufferShader);
+        glUseProgram(gBufferShader.id());
+        gBufferShader.uniform("uTexture").set(0);
+
+        deferredAmbientShader = new ShaderProgram("shaders/fullscreen.vert", "shaders/deferred_ambient.frag");
+        bindUniformBlocks(deferredAmbientShader);
+        glUseProgram(deferredAmbientShader.id());
+        bindGBufferSamplers(deferredAmbientShader);
+        deferredAmbientShader.uniform("uDepth").set(GBuffer.DEPTH_UNIT);
+        deferredAmbientShader.uniform("uEnvMap").set(1);
+        deferredAmbientShader.uniform("uAmbient").set(0.03f);
+        ambientReflectU = deferredAmbientShader.uniform("uReflect");
+        ambientReflectStrengthU = deferredAmbientShader.uniform("uReflectStrength");
+        ambientGlowU = deferredAmbientShader.uniform("uGlow");
+
+        lightVolumeShader = new ShaderProgram("shaders/light_volume.vert", null, "shaders/light_volume.frag", shadowMap.shaderDefine());
+        bindUniformBlocks(lightVolumeShader);
+        glUseProgram(lightVolumeShader.id());
+        bindGBufferSamplers(lightVolumeShader);
+        lightVolumeShader.uniform("uShadowMaps").set(2);
+        lightVolumeShader.uniform("uLightData").set(ClusteredLights.LIGHT_DATA_UNIT);
+        lightVolumeShader.uniform("uSpecularStrength").set(0.7f);
+        lightVolumeShader.uniform("uShininess").set(48.0f);
+        volumeShadowEnabledU = lightVolumeShader.uniform("uShadowEnabled");
+
+        depthShader = new ShaderProgram("shaders/depth.vert", "shaders/depth.frag");
+        bindUniformBlocks(depthShader);
+        glUseProgram(0);
+        updateTitle();
+    }
+
+    private static void bindGBufferSamplers(ShaderProgram program) {
+        program.uniform("uAlbedo").set(GBuffer.ALBEDO_UNIT);
+        program.uniform("uNormal").set(GBuffer.NORMAL_UNIT);
+        program.uniform("uPosition").set(GBuffer.POSITION_UNIT);
+    }
+
+    private void updateTitle() {
+        glfwSetWindowTitle(window, "Model Viewer (" + (deferred ? "deferred" : "forward") + (depthPrepass ? ", depth pre-pass)" : ")"));
+    }
+
+    private void bindUniformBlocks(ShaderProgram program) {
+        program.bindUniformBlock(FrameUniforms.BLOCK, FrameUniforms.BINDING);
+        program.bindUniformBlock(LightUniforms.BLOCK, LightUniforms.BINDING);
     }
 
     private void loop() {
@@ -214,21 +443,12 @@ public class ModelViewer {
             glClearColor(0.02f, 0.02f, 0.03f, 1.0f);
             glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
 
-            glDepthFunc(GL_LEQUAL);
-            skyboxShader.use();
-            try (var stack = stackPush()) {
-                FloatBuffer fb = stack.mallocFloat(16);
-                Matrix4f projection = new Matrix4f().perspective((float)Math.toRadians(60), (float)width/height, 0.1f, 100f);
-                int projLoc = skyboxShader.getUniformLocation("uProjection");
-                glUniformMatrix4fv(projLoc, false, projection.get(fb));
-                Matrix4f view = camera.getViewMatrix();
-                view.m30(0).m31(0).m32(0);
-                int viewLoc = skyboxShader.getUniformLocation("uViewRot");
-                glUniformMatrix4fv(viewLoc, false, view.get(fb));
-            }
-            skybox.bindTexture(0);
-            skybox.render();
-            glDepthFunc(GL_LESS);
+            projection.setPerspective(FOV_Y, (float) width / height, 0.1f, 100f);
+            camera.getViewMatrix(view);
+            frameUniforms.update(view, projection, camera.getPosition());
+            viewProjection.set(projection).mul(view);
+            cameraCuller.set(viewProjection);
+            viewFrustum.set(viewProjection, false);
 
             float targetRadius;
             if (orbitSpeedScale < absorbSpeedMin) {
@@ -254,15 +474,10 @@ public class ModelViewer {
             float sTilt = (float)Math.sin(tilt);
             float cTilt = (float)Math.cos(tilt);
 
-            Vector3f cyborgMinForLights = cyborgModel.getBoundsMin();
-            Vector3f cyborgMaxForLights = cyborgModel.getBoundsMax();
-            float cyborgMidYForLights = (cyborgMinForLights.y + cyborgMaxForLights.y) * 0.5f * cyborgScale;
+            float cyborgMidYForLights = (cyborgBoundsMin.y + cyborgBoundsMax.y) * 0.5f * cyborgScale;
 
-            final int MAX_LIGHTS = 16;
-            int totalLights = Math.min(bottles.length, MAX_LIGHTS);
-            float[] angleTotals = new float[totalLights];
-            Vector3f[] precomputedLightPos = new Vector3f[totalLights];
-            for (int i = 0; i < totalLights; i++) {
+            int bottleLights = Math.min(bottles.length, ClusteredLights.MAX_LIGHTS);
+            for (int i = 0; i < bottleLights; i++) {
                 float orbitFreq = 0.3f + 0.15f;
                 float orbitOmega = orbitFreq * orbitSpeedScale;
                 bottleOrbitAngle[i] += orbitOmega * deltaTime;
@@ -273,169 +488,274 @@ public class ModelViewer {
                 float xPos = xBase * cTilt;
                 float yPos = cyborgMidYForLights + yOff;
                 float zPos = zBase;
-                precomputedLightPos[i] = new Vector3f(xPos, yPos, zPos);
+                precomputedLightPos[i].set(xPos, yPos, zPos);
+            }
+
+            if (!absorbed && orbitSpeedScale >= absorbSpeedMax && currentRadius <= Math.max(0.1f, 0.02f * maxRadius)) {
+                absorbed = true;
+                reflectStrength = 0.0f;
+                if (cyborgAltTex != null) cyborgModel.setOverrideTexture(cyborgAltTex);
+            }
+            if (absorbed && orbitSpeedScale <= absorbSpeedMax && currentRadius >= Math.max(0.1f, 0.02f * maxRadius)) {
+                absorbed = false;
+                reflectStrength = 0.0f;
+                if (cyborgAltTex != null) cyborgModel.setOverrideTexture(cyborgAlbedoTex);
+            }
+
+            int shadowCount = Math.min(bottleLights, shadowMap.capacity);
+            for (int i = 0; i < bottleLights; i++) {
+                clusteredLights.setLight(i, precomputedLightPos[i], 1.0f, 0.95f, 0.85f, 1.0f);
+            }
+            int extraLights = Math.min(extraLightColor.length / 3, ClusteredLights.MAX_LIGHTS - bottleLights);
+            for (int i = 0; i < extraLights; i++) {
+                int o = i * 4;
+                extraLightOrbit[o + 2] += extraLightOrbit[o + 3] * orbitSpeedScale * deltaTime;
+                extraLightPos.set((float) Math.cos(extraLightOrbit[o + 2]) * extraLightOrbit[o], extraLightOrbit[o + 1],
+                        (float) Math.sin(extraLightOrbit[o + 2]) * extraLightOrbit[o]);
+                clusteredLights.setLight(bottleLights + i, extraLightPos,
+                        extraLightColor[i * 3], extraLightColor[i * 3 + 1], extraLightColor[i * 3 + 2], EXTRA_LIGHT_INTENSITY);
+            }
+            clusteredLights.setLightCount(absorbed ? 0 : bottleLights + extraLights);
+            if (deferred) {
+                clusteredLights.uploadLights(lightUniforms);
+            } else {
+                clusteredLights.setProjection(projection, 0.1f, 100f, width, height);
+                clusteredLights.update(view, lightUniforms);
             }
+            lightUniforms.setShadows(shadowCount, shadowFarPlane);
+            lightUniforms.upload();
 
             if (!absorbed) {
-                for (int li = 0; li < totalLights; li++) {
+                Matrix4f cybShadowM = cyborgShadowTransform.scaling(cyborgScale).rotateY(cyborgAngle);
+                shadowScheduler.setOccluderTransform(cybShadowM);
+                for (int li = 0; li < shadowCount; li++) {
+                    shadowScheduler.updateLight(li, precomputedLightPos[li]);
+                }
+                shadowScheduler.schedule(shadowCount, shadowFaceMasks);
+                for (int li = 0; li < shadowCount; li++) {
+                    shadowMap.clearFaces(li, shadowFaceMasks[li]);
+                }
+
+                shadowMap.bindForWrite();
+                depthCubeShader.use();
+                depthModel.set(cybShadowM);
+                cyborgModel.transformBounds(cybShadowM, casterMin, casterMax);
+                sceneTree.update(cyborgProxy, casterMin, casterMax);
+                casterCenter.set(casterMin).add(casterMax).mul(0.5f);
+                float casterRadius = cyborgModel.getBoundingRadius() * cyborgScale;
+                for (int li = 0; li < shadowCount; li++) {
+                    if (shadowFaceMasks[li] == 0) continue;
                     Vector3f lightPos = precomputedLightPos[li];
-                    PointLightShadowMap sm = shadowMaps[li];
-                    sm.bindForWrite();
-                    glClear(GL_DEPTH_BUFFER_BIT);
-                    depthCubeShader.use();
-                    Matrix4f[] mats = PointLightShadowMap.buildLightSpaceMatrices(lightPos, 0.1f, shadowFarPlane);
-                    try (var stack = stackPush()) {
-                        FloatBuffer fb = stack.mallocFloat(16);
-                        int modelLoc = depthCubeShader.getUniformLocation("uModel");
-                        int lightSpaceLoc = depthCubeShader.getUniformLocation("uLightSpace");
-                        int lightPosLoc = depthCubeShader.getUniformLocation("uLightPos");
-                        int farPlaneLoc = depthCubeShader.getUniformLocation("uFarPlane");
-                        glUniform3f(lightPosLoc, lightPos.x, lightPos.y, lightPos.z);
-                        glUniform1f(farPlaneLoc, shadowFarPlane);
-                        Matrix4f cybM = new Matrix4f().scale(cyborgScale).rotateY(cyborgAngle);
-                        glUniformMatrix4fv(modelLoc, false, cybM.get(fb));
-                        for (int face = 0; face < 6; face++) {
-                            glUniformMatrix4fv(lightSpaceLoc, false, mats[face].get(fb));
-                            cyborgModel.render();
+                    // Skip lights whose shadow range doesn't reach the caster.
+                    casterInRange = false;
+                    sceneTree.querySphere(lightPos.x, lightPos.y, lightPos.z, shadowFarPlane, casterQuery);
+                    if (!casterInRange) continue;
+                    Matrix4f[] mats = PointLightShadowMap.buildLightSpaceMatrices(lightPos, 0.1f, shadowFarPlane, lightSpaceMatrices);
+                    // Faces that can't see the caster stay cleared (empty) and are not drawn into.
+                    int faceMask = shadowFaceMasks[li] & shadowCuller.visibleFaces(mats, casterMin, casterMax);
+                    if (faceMask == 0) continue;
+                    int lod = Model.selectLod(Model.projectedPixels(casterRadius, lightPos.distance(casterCenter),
+                            (float) Math.toRadians(90.0), shadowMap.size), SHADOW_LOD_BIAS);
+                    for (int face = 0; face < 6; face++) {
+                        mats[face].get(face * 16, shadowFaces);
+                    }
+                    depthShadowMatrices.setMatrices(shadowFaces);
+                    depthLight.set(li);
+                    depthLightPos.set(lightPos);
+                    // The geometry shader fans each triangle out to the scheduled faces via gl_Layer;
+                    // each sub-mesh only goes to the faces its own bounds reach.
+                    List<Mesh> cyborgMeshes = cyborgModel.getMeshes();
+                    for (int m = 0; m < cyborgMeshes.size(); m++) {
+                        Mesh mesh = cyborgMeshes.get(m);
+                        int meshMask = faceMask;
+                        if (mesh.hasBounds()) {
+                            mesh.transformBounds(cybShadowM, meshMin, meshMax);
+                            meshMask &= shadowCuller.visibleFaces(mats, meshMin, meshMax);
                         }
+                        if (meshMask == 0) continue;
+                        depthFaceMask.set(meshMask);
+                        mesh.render(lod);
                     }
-                    sm.unbind();
                 }
+                shadowMap.unbind();
                 glViewport(0, 0, width, height);
             }
 
-            shader.use();
-            int projLoc = shader.getUniformLocation("uProjection");
-            int viewLoc = shader.getUniformLocation("uView");
-            int modelLoc = shader.getUniformLocation("uModel");
-            int lightCountLoc = shader.getUniformLocation("uLightCount");
-            int viewPosLoc = shader.getUniformLocation("uViewPos");
-            int ambientLoc = shader.getUniformLocation("uAmbient");
-            int specLoc = shader.getUniformLocation("uSpecularStrength");
-            int shinLoc = shader.getUniformLocation("uShininess");
-            int emissiveLoc = shader.getUniformLocation("uEmissive");
-            int unlitLoc = shader.getUniformLocation("uUnlit");
-            int uReflectLoc = shader.getUniformLocation("uReflect");
-            int uReflectStrengthLoc = shader.getUniformLocation("uReflectStrength");
-            int uGlowLoc = shader.getUniformLocation("uGlow");
-            int shadowEnabledLoc = shader.getUniformLocation("uShadowEnabled");
-            int shadowFarLoc = shader.getUniformLocation("uShadowFarPlane");
-            glUniform1i(shadowEnabledLoc, absorbed ? 0 : 1);
-            glUniform1f(shadowFarLoc, shadowFarPlane);
             if (!absorbed) {
-                int bindCount = Math.min(totalLights, 12);
-                for (int i = 0; i < bindCount; i++) {
-                    glActiveTexture(GL_TEXTURE2 + i);
-                    glBindTexture(GL_TEXTURE_CUBE_MAP, shadowMaps[i].depthCubeTex);
-                    int loc = glGetUniformLocation(shader.id(), "uShadowMap" + i);
-                    glUniform1i(loc, 2 + i);
-                }
+                shadowMap.bindTexture(2);
             }
 
-            try (var stack = stackPush()) {
-                FloatBuffer fb = stack.mallocFloat(16);
-                Matrix4f projection = new Matrix4f().perspective((float) Math.toRadians(60), (float) width / height, 0.1f, 100f);
-                glUniformMatrix4fv(projLoc, false, projection.get(fb));
-                Matrix4f view = camera.getViewMatrix();
-                glUniformMatrix4fv(viewLoc, false, view.get(fb));
-
-                glUniform3f(viewPosLoc, camera.getPosition().x, camera.getPosition().y, camera.getPosition().z);
-                glUniform1f(ambientLoc, 0.03f);
-                glUniform1f(specLoc, 0.7f);
-                glUniform1f(shinLoc, 48.0f);
-
-                glActiveTexture(GL_TEXTURE1);
-                glBindTexture(GL_TEXTURE_CUBE_MAP, 0);
-                skybox.bindTexture(1);
-
-                if(!absorbed) {
-                    glUniform1i(lightCountLoc, totalLights);
-                    for (int i = 0; i < totalLights; i++) {
-                        Vector3f lp = precomputedLightPos[i];
-                        int uPosLoc = glGetUniformLocation(shader.id(), "uLightPos[" + i + "]");
-                        int uColLoc = glGetUniformLocation(shader.id(), "uLightColor[" + i + "]");
-                        glUniform3f(uPosLoc, lp.x, lp.y, lp.z);
-                        glUniform3f(uColLoc, 1.0f, 0.95f, 0.85f);
+            glActiveTexture(GL_TEXTURE1);
+            glBindTexture(GL_TEXTURE_CUBE_MAP, 0);
+            skybox.bindTexture(1);
+            clusteredLights.bind();
+
+            if (absorbed) {
+                reflectStrength += (1.0f - reflectStrength) * (1f - (float) Math.exp(-2.5f * Math.max(0.0001f, deltaTime)));
+            }
+            float frameReflect = absorbed ? Math.min(1.0f, reflectStrength) : 0.0f;
+            float frameGlow = absorbed ? 0.15f : 0.0f;
+            if (deferred) {
+                deferredAmbientShader.use();
+                ambientReflectU.set(absorbed);
+                ambientReflectStrengthU.set(frameReflect);
+                ambientGlowU.set(frameGlow);
+                lightVolumeShader.use();
+                volumeShadowEnabledU.set(!absorbed);
+            } else {
+                shader.use();
+                shadowEnabledU.set(!absorbed);
+                reflectU.set(absorbed);
+                reflectStrengthU.set(frameReflect);
+                glowU.set(frameGlow);
+            }
+            ShaderProgram sceneShader = deferred ? gBufferShader : shader;
+
+            Matrix4f cybM = cyborgTransform.scaling(cyborgScale);
+            float sRot = (orbitSpeedScale - rotationSpeedMin) / (rotationSpeedMax - rotationSpeedMin);
+            if (sRot < 0f) sRot = 0f; if (sRot > 1f) sRot = 1f;
+            sRot = sRot * sRot * (3f - 2f * sRot);
+            float targetOmega = cyborgOmegaMax * sRot;
+            float omegaSmooth = 1f - (float) Math.exp(-4f * Math.max(0.0001f, deltaTime));
+            cyborgOmega += (targetOmega - cyborgOmega) * omegaSmooth;
+            cyborgAngle += cyborgOmega * deltaTime;
+            if (cyborgAngle > Math.PI * 2) cyborgAngle -= (float) (Math.PI * 2);
+            if (cyborgAngle < -Math.PI * 2) cyborgAngle += (float) (Math.PI * 2);
+            cybM.rotateY(cyborgAngle);
+            cyborgModel.transformBounds(cybM, worldMin, worldMax);
+            sceneTree.update(cyborgProxy, worldMin, worldMax);
+            // worldMin/worldMax are reused for the bottles below.
+            cyborgWorldCenter.set(worldMin).add(worldMax).mul(0.5f);
+
+            // Refit moved bottles, then let the tree pick everything inside the view frustum.
+            if (!absorbed) {
+                for (int i = 0; i < bottles.length; i++) {
+                    float spinFreq = 0.8f + 0.25f * (i % bottles.length);
+                    float spin = current * spinFreq;
+
+                    Vector3f lp = (i < bottleLights) ? precomputedLightPos[i] : null;
+                    float angleTotal = (i < bottleLights) ? angleTotals[i] : bottleOrbitAngle[i];
+                    float xPos = (lp != null) ? lp.x : (float)Math.cos(angleTotal) * currentRadius * cTilt; // fallback
+                    float zPos = (lp != null) ? lp.z : (float)Math.sin(angleTotal) * currentRadius;
+                    float yPos = (lp != null) ? lp.y : ((float)Math.cos(angleTotal) * currentRadius) * sTilt + cyborgMidYForLights;
+
+                    Matrix4f m = bottleTransforms[i].identity()
+                            .translate(xPos, yPos, zPos)
+                            .rotateY(-angleTotal)
+                            .rotateX(bottleOrientX[i])
+                            .rotateZ(bottleOrientZ[i])
+                            .scale(bottleScale[i]);
+                    switch (bottleSpinAxis[i]) {
+                        case 0 -> m.rotateY(spin);
+                        case 1 -> m.rotateX(spin);
+                        case 2 -> m.rotateZ(spin);
                     }
-                } else {
-                    glUniform1i(lightCountLoc, 0);
+                    bottles[i].transformBounds(m, worldMin, worldMax);
+                    sceneTree.update(bottleProxy[i], worldMin, worldMax);
                 }
+            }
+            Arrays.fill(bottleVisible, false);
+            cyborgVisible = false;
+            sceneTree.queryFrustum(viewFrustum, visibilityQuery);
+
+            // The tree answers with fattened boxes; the exact test trims what they let through.
+            if (cyborgVisible && cameraCuller.isVisible(cyborgModel, cybM)) {
+                cyborgInstance.clear();
+                cyborgInstance.add(cybM, false, false);
+                cyborgInstance.upload();
+                float cyborgDistance = camera.getPosition().distance(cyborgWorldCenter);
+                int cyborgLod = Model.selectLod(Model.projectedPixels(cyborgModel.getBoundingRadius() * cyborgScale,
+                        cyborgDistance, FOV_Y, height), 0);
+                renderQueue.submit(sceneShader, cyborgModel, cyborgLod, cyborgInstance, cyborgDistance, cameraCuller, cybM);
+            }
 
-                if (!absorbed && orbitSpeedScale >= absorbSpeedMax && currentRadius <= Math.max(0.1f, 0.02f * maxRadius)) {
-                    absorbed = true;
-                    glUniform1i(lightCountLoc, 0);
-                    reflectStrength = 0.0f;
-                    if (cyborgAltTex != null) cyborgModel.setOverrideTexture(cyborgAltTex);
+            if(!absorbed) {
+                for (InstanceBuffer instances : bottleInstances) instances.clear();
+                Arrays.fill(bottleGroupDepth, Float.MAX_VALUE);
+                Arrays.fill(bottleGroupLod, Integer.MAX_VALUE);
+                for (int i = 0; i < bottles.length; i++) {
+                    Matrix4f m = bottleTransforms[i];
+                    if (!bottleVisible[i] || !cameraCuller.isVisible(bottles[i], m)) continue;
+                    int group = bottleGroup[i];
+                    bottleInstances[group].add(m, true, true);
+                    float distance = camera.getPosition().distance(m.m30(), m.m31(), m.m32());
+                    bottleGroupDepth[group] = Math.min(bottleGroupDepth[group], distance);
+                    int lod = Model.selectLod(Model.projectedPixels(bottles[i].getBoundingRadius() * bottleScale[i], distance, FOV_Y, height), 0);
+                    bottleGroupLod[group] = Math.min(bottleGroupLod[group], lod);
                 }
-                if (absorbed && orbitSpeedScale <= absorbSpeedMax && currentRadius >= Math.max(0.1f, 0.02f * maxRadius)) {
-                    absorbed = false;
-                    reflectStrength = 0.0f;
-                    if (cyborgAltTex != null) cyborgModel.setOverrideTexture(cyborgAlbedoTex);
-                }
-                if (absorbed) {
-                    reflectStrength += (1.0f - reflectStrength) * (1f - (float) Math.exp(-2.5f * Math.max(0.0001f, deltaTime)));
-                    glUniform1i(uReflectLoc, 1);
-                    glUniform1f(uReflectStrengthLoc, Math.min(1.0f, reflectStrength));
-                    glUniform1f(uGlowLoc, 0.15f);
-                } else {
-                    glUniform1i(uReflectLoc, 0);
-                    glUniform1f(uReflectStrengthLoc, 0.0f);
-                    glUniform1f(uGlowLoc, 0.0f);
-                }
-
-                glUniform1i(unlitLoc, 0);
-                glUniform1i(emissiveLoc, 0);
-                Matrix4f cybM = new Matrix4f().scale(cyborgScale);
-                float sRot = (orbitSpeedScale - rotationSpeedMin) / (rotationSpeedMax - rotationSpeedMin);
-                if (sRot < 0f) sRot = 0f; if (sRot > 1f) sRot = 1f;
-                sRot = sRot * sRot * (3f - 2f * sRot);
-                float targetOmega = cyborgOmegaMax * sRot;
-                float omegaSmooth = 1f - (float) Math.exp(-4f * Math.max(0.0001f, deltaTime));
-                cyborgOmega += (targetOmega - cyborgOmega) * omegaSmooth;
-                cyborgAngle += cyborgOmega * deltaTime;
-                if (cyborgAngle > Math.PI * 2) cyborgAngle -= (float) (Math.PI * 2);
-                if (cyborgAngle < -Math.PI * 2) cyborgAngle += (float) (Math.PI * 2);
-                cybM.rotateY(cyborgAngle);
-                glUniformMatrix4fv(modelLoc, false, cybM.get(fb));
-                cyborgModel.render();
-
-                if(!absorbed) {
-                    for (int i = 0; i < bottles.length; i++) {
-                        float spinFreq = 0.8f + 0.25f * (i % bottles.length);
-                        float spin = current * spinFreq;
-
-                        Vector3f lp = (i < totalLights) ? precomputedLightPos[i] : null;
-                        float angleTotal = (i < totalLights) ? angleTotals[i] : bottleOrbitAngle[i];
-                        float xPos = (lp != null) ? lp.x : (float)Math.cos(angleTotal) * currentRadius * cTilt; // fallback
-                        float zPos = (lp != null) ? lp.z : (float)Math.sin(angleTotal) * currentRadius;
-                        float yPos = (lp != null) ? lp.y : ((float)Math.cos(angleTotal) * currentRadius) * sTilt + cyborgMidYForLights;
-
-                        glUniform1i(unlitLoc, 1);
-                        glUniform1i(emissiveLoc, 1);
-
-                        Matrix4f m = new Matrix4f()
-                                .translate(xPos, yPos, zPos)
-                                .rotateY(-angleTotal)
-                                .rotateX(bottleOrientX[i])
-                                .rotateZ(bottleOrientZ[i])
-                                .scale(bottleScale[i]);
-                        switch (bottleSpinAxis[i]) {
-                            case 0 -> m.rotateY(spin);
-                            case 1 -> m.rotateX(spin);
-                            case 2 -> m.rotateZ(spin);
-                        }
-
-                        glUniformMatrix4fv(modelLoc, false, m.get(fb));
-                        bottles[i].render();
-                    }
+                for (int g = 0; g < bottleModels.length; g++) {
+                    if (bottleInstances[g].count() == 0) continue;
+                    bottleInstances[g].upload();
+                    renderQueue.submit(sceneShader, bottleModels[g], bottleGroupLod[g], bottleInstances[g], bottleGroupDepth[g]);
                 }
             }
+            if (deferred) {
+                gBuffer.resize(width, height);
+                gBuffer.bindForWrite();
+                drawScene();
+                gBuffer.unbind();
+                glViewport(0, 0, width, height);
+                shadeDeferred(absorbed ? 0 : clusteredLights.lightCount());
+            } else {
+                drawScene();
+            }
+            // Last, so it only fills pixels the scene left at the far plane.
+            drawSkybox();
 
             glfwSwapBuffers(window);
             glfwPollEvents();
         }
     }
 
+    private void drawScene() {
+        if (!depthPrepass) {
+            renderQueue.flush();
+            return;
+        }
+        glColorMask(false, false, false, false);
+        renderQueue.prepass(depthShader);
+        glColorMask(true, true, true, true);
+        glDepthFunc(GL_EQUAL);
+        glDepthMask(false);
+        renderQueue.flush();
+        glDepthMask(true);
+        glDepthFunc(GL_LESS);
+    }
+
+    private void drawSkybox() {
+        glDepthFunc(GL_LEQUAL);
+        skyboxShader.use();
+        skybox.bindTexture(0);
+        skybox.render();
+        glDepthFunc(GL_LESS);
+    }
+
+    // Lights the G-buffer into the default framebuffer, which also receives its depth.
+    private void shadeDeferred(int lights) {
+        gBuffer.bindTextures();
+        glDepthFunc(GL_ALWAYS);
+        deferredAmbientShader.use();
+        gBuffer.drawFullScreen();
+
+        // Far faces of each light's box, kept where they lie behind the surface; the shader
+        // rejects pixels outside the radius. Depth clamp keeps boxes cut by the far plane.
+        glDepthFunc(GL_GEQUAL);
+        glDepthMask(false);
+        glEnable(GL_CULL_FACE);
+        glCullFace(GL_FRONT);
+        glEnable(GL_DEPTH_CLAMP);
+        glEnable(GL_BLEND);
+        glBlendFunc(GL_ONE, GL_ONE);
+        lightVolumeShader.use();
+        lightVolume.render(lights);
+        glDisable(GL_BLEND);
+        glDisable(GL_DEPTH_CLAMP);
+        glCullFace(GL_BACK);
+        glDisable(GL_CULL_FACE);
+        glDepthMask(true);
+        glDepthFunc(GL_LESS);
+    }
+
     private void processInput() {
         boolean forward = glfwGetKey(window, GLFW_KEY_W) == GLFW_PRESS;
         boolean back = glfwGetKey(window, GLFW_KEY_S) == GLFW_PRESS;
@@ -457,21 +777,47 @@ public class ModelViewer {
         if (orbitSpeedScale < -20f) orbitSpeedScale = -20f;
         if (orbitSpeedScale > 1000.0f) orbitSpeedScale = 1000.0f;
 
+        boolean deferredKey = glfwGetKey(window, GLFW_KEY_G) == GLFW_PRESS;
+        if (deferredKey && !deferredKeyDown) {
+            deferred = !deferred;
+            updateTitle();
+        }
+        deferredKeyDown = deferredKey;
+        boolean prepassKey = glfwGetKey(window, GLFW_KEY_P) == GLFW_PRESS;
+        if (prepassKey && !prepassKeyDown) {
+            depthPrepass = !depthPrepass;
+            updateTitle();
+        }
+        prepassKeyDown = prepassKey;
+
         if (glfwGetKey(window, GLFW_KEY_ESCAPE) == GLFW_PRESS) glfwSetWindowShouldClose(window, true);
     }
 
     private void cleanup() {
         if (bottles != null) for (Model m : bottles) if (m != null) m.delete();
         if (cyborgModel != null) cyborgModel.delete();
+        if (cyborgInstance != null) cyborgInstance.delete();
+        if (bottleInstances != null) for (InstanceBuffer b : bottleInstances) b.delete();
+        if (cyborgAltTex != null) cyborgAltTex.delete();
+        if (cyborgAlbedoTex != null) cyborgAlbedoTex.delete();
         shader.delete();
         if (skybox != null) skybox.delete();
         if (skyboxShader != null) skyboxShader.delete();
+        if (depthCubeShader != null) depthCubeShader.delete();
+        if (shadowMap != null) shadowMap.delete();
+        if (geometryArena != null) geometryArena.delete();
+        renderQueue.delete();
+        if (frameUniforms != null) frameUniforms.delete();
+        if (lightUniforms != null) lightUniforms.delete();
+        if (clusteredLights != null) clusteredLights.delete();
+        if (gBuffer != null) gBuffer.delete();
+        if (lightVolume != null) lightVolume.delete();
+        if (gBufferShader != null) gBufferShader.delete();
+        if (deferredAmbientShader != null) deferredAmbientShader.delete();
+        if (lightVolumeShader != null) lightVolumeShader.delete();
+        if (depthShader != null) depthShader.delete();
+        if (shadowFaces != null) memFree(shadowFaces);
         glfwDestroyWindow(window);
         glfwTerminate();
-        if (cyborgAltTex != null) cyborgAltTex.delete();
-        if (depthCubeShader != null) depthCubeShader.delete();
-        if (shadowMaps != null) {
-            for (PointLightShadowMap sm : shadowMaps) if (sm != null) sm.delete();
-        }
     }
-}
+}
\ No newline at end of file
@@ -0,0 +1,393 @@
+package com.example.graphics;
+
+import org.joml.FrustumIntersection;
+import org.joml.Intersectionf;
+import org.joml.Vector3fc;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Dynamic bounding volume hierarchy over world AABBs, for culling and picking among many
+ * objects. Leaves store a fattened box (grown by {@code margin}) so objects that move a little
+ * each frame, like the orbiting bottles, only need re-inserting once they leave it; internal
+ * nodes are kept balanced with AVL-style rotations. Proxies are int handles; each carries a
+ * caller-chosen int payload that queries report.
+ */
+public class AabbTree {
+    private static final int NULL = -1;
+
+    private final float margin;
+    // Node storage as parallel arrays: box (6 floats), tree links, height, payload.
+    private float[] boxes = new float[16 * 6];
+    private int[] parent = new int[16];
+    private int[] left = new int[16];
+    private int[] right = new int[16];
+    private int[] height = new int[16];
+    private int[] payload = new int[16];
+    private int nodeCount;
+    private int freeList = NULL;
+    private int root = NULL;
+    // Traversal stack shared by the queries; not thread-safe.
+    private int[] stack = new int[64];
+
+    public AabbTree(float margin) {
+        this.margin = margin;
+        initFree(0);
+    }
+
+    public int insert(Vector3fc min, Vector3fc max, int data) {
+        int leaf = allocate();
+        setBox(leaf, min.x() - margin, min.y() - margin, min.z() - margin, max.x() + margin, max.y() + margin, max.z() + margin);
+        payload[leaf] = data;
+        height[leaf] = 0;
+        insertLeaf(leaf);
+        return leaf;
+    }
+
+    public void remove(int proxy) {
+        removeLeaf(proxy);
+        release(proxy);
+    }
+
+    /**
+     * Updates a proxy's box. Returns true if the tree changed; false when the new box still fits
+     * inside the fattened one, which is the common case for small per-frame motion.
+     */
+    public boolean update(int proxy, Vector3fc min, Vector3fc max) {
+        int b = proxy * 6;
+        if (boxes[b] <= min.x() && boxes[b + 1] <= min.y() && boxes[b + 2] <= min.z()
+                && boxes[b + 3] >= max.x() && boxes[b + 4] >= max.y() && boxes[b + 5] >= max.z()) {
+            return false;
+        }
+        removeLeaf(proxy);
+        setBox(proxy, min.x() - margin, min.y() - margin, min.z() - margin, max.x() + margin, max.y() + margin, max.z() + margin);
+        insertLeaf(proxy);
+        return true;
+    }
+
+    public int payload(int proxy) { return payload[proxy]; }
+
+    // Reports the payload of every proxy whose fattened box is at least partly inside the frustum.
+    public void queryFrustum(FrustumIntersection frustum, IntConsumer visitor) {
+        if (root == NULL) return;
+        int top = push(0, root);
+        while (top > 0) {
+            int node = stack[--top];
+            int b = node * 6;
+            int result = frustum.intersectAab(boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3], boxes[b + 4], boxes[b + 5]);
+            // Anything other than INSIDE/INTERSECT is the index of the plane that rejected the box.
+            if (result != FrustumIntersection.INSIDE && result != FrustumIntersection.INTERSECT) continue;
+            if (result == FrustumIntersection.INSIDE) {
+                top = reportAll(node, top, visitor);
+            } else if (isLeaf(node)) {
+                visitor.accept(payload[node]);
+            } else {
+                top = push(top, left[node]);
+                top = push(top, right[node]);
+            }
+        }
+    }
+
+    // Reports the payload of every proxy whose fattened box touches the sphere, e.g. casters within a light's range.
+    public void querySphere(float cx, float cy, float cz, float radius, IntConsumer visitor) {
+        if (root == NULL) return;
+        float r2 = radius * radius;
+        int top = push(0, root);
+        while (top > 0) {
+            int node = stack[--top];
+            int b = node * 6;
+            if (!Intersectionf.testAabSphere(boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3], boxes[b + 4], boxes[b + 5], cx, cy, cz, r2)) continue;
+            if (isLeaf(node)) {
+                visitor.accept(payload[node]);
+            } else {
+                top = push(top, left[node]);
+                top = push(top, right[node]);
+            }
+        }
+    }
+
+    /**
+     * Returns the payload of the proxy whose box the ray enters first, or -1. Only boxes are
+     * tested, so callers wanting triangle-exact picking should refine the hit themselves.
+     */
+    public int raycast(Vector3fc origin, Vector3fc dir, float maxDistance) {
+        if (root == NULL) return -1;
+        float ox = origin.x(), oy = origin.y(), oz = origin.z();
+        float dx = dir.x(), dy = dir.y(), dz = dir.z();
+        float best = maxDistance;
+        int hit = -1;
+        int top = push(0, root);
+        while (top > 0) {
+            int node = stack[--top];
+            float t = rayEntry(node, ox, oy, oz, dx, dy, dz);
+            if (t < 0.0f || t > best) continue;
+            if (isLeaf(node)) {
+                best = t;
+                hit = payload[node];
+            } else {
+                top = push(top, left[node]);
+                top = push(top, right[node]);
+            }
+        }
+        return hit;
+    }
+
+    public int size() { return nodeCount == 0 ? 0 : (nodeCount + 1) / 2; }
+
+    public int height() { return root == NULL ? 0 : height[root]; }
+
+    // Entry distance along the ray (0 when starting inside), or -1 on a miss.
+    private float rayEntry(int node, float ox, float oy, float oz, float dx, float dy, float dz) {
+        int b = node * 6;
+        float tmin = 0.0f;
+        float tmax = Float.POSITIVE_INFINITY;
+        for (int axis = 0; axis < 3; axis++) {
+            float o = axis == 0 ? ox : axis == 1 ? oy : oz;
+            float d = axis == 0 ? dx : axis == 1 ? dy : dz;
+            float lo = boxes[b + axis];
+            float hi = boxes[b + 3 + axis];
+            if (Math.abs(d) < 1e-12f) {
+                if (o < lo || o > hi) return -1.0f;
+                continue;
+            }
+            float inv = 1.0f / d;
+            float t0 = (lo - o) * inv;
+            float t1 = (hi - o) * inv;
+            if (t0 > t1) { float tmp = t0; t0 = t1; t1 = tmp; }
+            tmin = Math.max(tmin, t0);
+            tmax = Math.min(tmax, t1);
+            if (tmin > tmax) return -1.0f;
+        }
+        return tmin;
+    }
+
+    private int reportAll(int subtree, int top, IntConsumer visitor) {
+        // Reuses the stack above the current top for the inner traversal.
+        int base = top;
+        top = push(top, subtree);
+        while (top > base) {
+            int node = stack[--top];
+            if (isLeaf(node)) {
+                visitor.accept(payload[node]);
+            } else {
+                top = push(top, left[node]);
+                top = push(top, right[node]);
+            }
+        }
+        return top;
+    }
+
+    private int push(int top, int node) {
+        if (top == stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+        stack[top] = node;
+        return top + 1;
+    }
+
+    private boolean isLeaf(int node) {
+        return left[node] == NULL;
+    }
+
+    private void insertLeaf(int leaf) {
+        if (root == NULL) {
+            root = leaf;
+            parent[leaf] = NULL;
+            return;
+        }
+
+        // Descend towards the sibling whose surface area grows least (branch and bound heuristic).
+        int lb = leaf * 6;
+        int node = root;
+        while (!isLeaf(node)) {
+            float area = area(node);
+            float combined = combinedArea(node, leaf);
+            float cost = 2.0f * combined;
+            float inheritance = 2.0f * (combined - area);
+            float costLeft = descendCost(left[node], lb, inheritance);
+            float costRight = descendCost(right[node], lb, inheritance);
+            if (cost < costLeft && cost < costRight) break;
+            node = costLeft < costRight ? left[node] : right[node];
+        }
+
+        int sibling = node;
+        int oldParent = parent[sibling];
+        int newParent = allocate();
+        parent[newParent] = oldParent;
+        payload[newParent] = -1;
+        setUnion(newParent, sibling, leaf);
+        height[newParent] = height[sibling] + 1;
+        left[newParent] = sibling;
+        right[newParent] = leaf;
+        parent[sibling] = newParent;
+        parent[leaf] = newParent;
+        if (oldParent == NULL) {
+            root = newParent;
+        } else if (left[oldParent] == sibling) {
+            left[oldParent] = newParent;
+        } else {
+            right[oldParent] = newParent;
+        }
+        refit(parent[leaf]);
+    }
+
+    private float descendCost(int child, int lb, float inheritance) {
+        int cb = child * 6;
+        float minX = Math.min(boxes[cb], boxes[lb]), minY = Math.min(boxes[cb + 1], boxes[lb + 1]), minZ = Math.min(boxes[cb + 2], boxes[lb + 2]);
+        float maxX = Math.max(boxes[cb + 3], boxes[lb + 3]), maxY = Math.max(boxes[cb + 4], boxes[lb + 4]), maxZ = Math.max(boxes[cb + 5], boxes[lb + 5]);
+        float unionArea = surface(maxX - minX, maxY - minY, maxZ - minZ);
+        return isLeaf(child) ? unionArea + inheritance : unionArea - area(child) + inheritance;
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL;
+            return;
+        }
+        int p = parent[leaf];
+        int grandParent = parent[p];
+        int sibling = left[p] == leaf ? right[p] : left[p];
+        if (grandParent == NULL) {
+            root = sibling;
+            parent[sibling] = NULL;
+        } else {
+            if (left[grandParent] == p) left[grandParent] = sibling;
+            else right[grandParent] = sibling;
+            parent[sibling] = grandParent;
+            refit(grandParent);
+        }
+        release(p);
+    }
+
+    // Walks up from node, rebalancing and recomputing boxes and heights.
+    private void refit(int node) {
+        while (node != NULL) {
+            node = balance(node);
+            int l = left[node];
+            int r = right[node];
+            height[node] = 1 + Math.max(height[l], height[r]);
+            setUnion(node, l, r);
+            node = parent[node];
+        }
+    }
+
+    // Rotates node's taller child up if the subtree heights differ by more than one; returns the subtree root.
+    private int balance(int a) {
+        if (isLeaf(a) || height[a] < 2) return a;
+        int b = left[a];
+        int c = right[a];
+        int diff = height[c] - height[b];
+        if (diff > 1) return rotate(a, c, true);
+        if (diff < -1) return rotate(a, b, false);
+        return a;
+    }
+
+    // Promotes child (a's taller side) above a.
+    private int rotate(int a, int child, boolean childIsRight) {
+        int f = left[child];
+        int g = right[child];
+        parent[child] = parent[a];
+        parent[a] = child;
+        left[child] = a;
+        int ap = parent[child];
+        if (ap == NULL) root = child;
+        else if (left[ap] == a) left[ap] = child;
+        else right[ap] = child;
+
+        int keep;
+        int moved;
+        if (height[f] > height[g]) {
+            keep = f;
+            moved = g;
+        } else {
+            keep = g;
+            moved = f;
+        }
+        right[child] = keep;
+        if (childIsRight) {
+            right[a] = moved;
+        } else {
+            left[a] = moved;
+        }
+        parent[moved] = a;
+        setUnion(a, left[a], right[a]);
+        height[a] = 1 + Math.max(height[left[a]], height[right[a]]);
+        setUnion(child, a, keep);
+        height[child] = 1 + Math.max(height[a], height[keep]);
+        return child;
+    }
+
+    private void setBox(int node, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int b = node * 6;
+        boxes[b] = minX;
+        boxes[b + 1] = minY;
+        boxes[b + 2] = minZ;
+        boxes[b + 3] = maxX;
+        boxes[b + 4] = maxY;
+        boxes[b + 5] = maxZ;
+    }
+
+    private void setUnion(int node, int a, int c) {
+        int ab = a * 6;
+        int cb = c * 6;
+        setBox(node,
+                Math.min(boxes[ab], boxes[cb]), Math.min(boxes[ab + 1], boxes[cb + 1]), Math.min(boxes[ab + 2], boxes[cb + 2]),
+                Math.max(boxes[ab + 3], boxes[cb + 3]), Math.max(boxes[ab + 4], boxes[cb + 4]), Math.max(boxes[ab + 5], boxes[cb + 5]));
+    }
+
+    private float area(int node) {
+        int b = node * 6;
+        return surface(boxes[b + 3] - boxes[b], boxes[b + 4] - boxes[b + 1], boxes[b + 5] - boxes[b + 2]);
+    }
+
+    private float combinedArea(int a, int c) {
+        int ab = a * 6;
+        int cb = c * 6;
+        return surface(
+                Math.max(boxes[ab + 3], boxes[cb + 3]) - Math.min(boxes[ab], boxes[cb]),
+                Math.max(boxes[ab + 4], boxes[cb + 4]) - Math.min(boxes[ab + 1], boxes[cb + 1]),
+                Math.max(boxes[ab + 5], boxes[cb + 5]) - Math.min(boxes[ab + 2], boxes[cb + 2]));
+    }
+
+    private static float surface(float x, float y, float z) {
+        return 2.0f * (x * y + y * z + z * x);
+    }
+
+    private int allocate() {
+        if (freeList == NULL) {
+            int capacity = parent.length * 2;
+            boxes = Arrays.copyOf(boxes, capacity * 6);
+            parent = Arrays.copyOf(parent, capacity);
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
+            height = Arrays.copyOf(height, capacity);
+            payload = Arrays.copyOf(payload, capacity);
+            initFree(capacity / 2);
+        }
+        int node = freeList;
+        freeList = parent[node];
+        parent[node] = NULL;
+        left[node] = NULL;
+        right[node] = NULL;
+        height[node] = 0;
+        nodeCount++;
+        return node;
+    }
+
+    private void release(int node) {
+        parent[node] = freeList;
+        height[node] = -1;
+        freeList = node;
+        nodeCount--;
+    }
+
+    // Threads nodes [from, capacity) onto the free list through the parent links.
+    private void initFree(int from) {
+        for (int i = from; i < parent.length - 1; i++) {
+            parent[i] = i + 1;
+            height[i] = -1;
+        }
+        parent[parent.length - 1] = freeList;
+        height[parent.length - 1] = -1;
+        freeList = from;
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.graphics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads models and textures in parallel: Assimp import and STB decode run on a worker pool,
+ * while the resulting GL uploads are queued and executed by {@link #awaitAll()} on the
+ * thread that owns the GL context. Requests go through an {@link AssetRegistry}, so a
+ * resource that is already loaded (or loading) is shared instead of imported again.
+ */
+public class AssetLoader implements AutoCloseable {
+    // Queued once everything pending has settled, so awaitAll can block on the queue alone.
+    private static final Runnable SETTLED = () -> { };
+    private final AssetRegistry registry;
+    private final ExecutorService workers;
+    private final BlockingQueue<Runnable> uploads = new LinkedBlockingQueue<>();
+    private final Executor contextThread = uploads::add;
+    private final List<CompletableFuture<?>> pending = new ArrayList<>();
+    private VertexFormat vertexFormat = VertexFormat.STANDARD;
+    private GeometryArena arena;
+
+    public AssetLoader() {
+        this(new AssetRegistry());
+    }
+
+    public AssetLoader(AssetRegistry registry) {
+        this(registry, Runtime.getRuntime().availableProcessors());
+    }
+
+    public AssetLoader(AssetRegistry registry, int threads) {
+        this.registry = registry;
+        AtomicInteger counter = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "asset-loader-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Layout used for models requested after this call.
+    public void setVertexFormat(VertexFormat format) {
+        this.vertexFormat = format;
+    }
+
+    // Models requested after this call are sub-allocated from the arena, in the arena's vertex format.
+    public void setGeometryArena(GeometryArena arena) {
+        this.arena = arena;
+    }
+
+    // Must be called on the GL context thread, like every other request method.
+    public CompletableFuture<Texture> loadTexture(String resourcePath) {
+        return track(registry.acquire("texture:" + resourcePath, () -> {
+            CompletableFuture<ImageData> image = CompletableFuture.supplyAsync(() -> Texture.decode(resourcePath), workers);
+            return image.thenApplyAsync(data -> {
+                try {
+                    return new Texture(data);
+                } finally {
+                    data.free();
+                }
+            }, contextThread);
+        }));
+    }
+
+    public CompletableFuture<Model> loadModel(String objResourcePath, String textureResourcePath) {
+        GeometryArena target = arena;
+        VertexFormat format = target != null ? target.format() : vertexFormat;
+        String layout = target != null ? "arena@" + System.identityHashCode(target) : format.toString();
+        return track(registry.acquire("model:" + layout + ":" + objResourcePath + "|" + textureResourcePath, () -> {
+            CompletableFuture<Texture> texture = loadTexture(textureResourcePath);
+            String geometryKey = "geometry:" + layout + ":" + objResourcePath;
+            CompletableFuture<Model> geometry = registry.lookup(geometryKey);
+            if (geometry != null) {
+                // Same OBJ with another texture: share the uploaded meshes instead of importing again.
+                return releaseOnFailure(geometry.thenCombine(texture, Model::withTexture), texture);
+            }
+            CompletableFuture<ModelData> data = CompletableFuture.supplyAsync(() -> ModelLoader.importModel(objResourcePath), workers);
+            CompletableFuture<Model> model = data.thenCombineAsync(texture,
+                    (d, t) -> target != null ? ModelLoader.createModel(d, t, target) : ModelLoader.createModel(d, t, format), contextThread);
+            registry.put(geometryKey, model);
+            return releaseOnFailure(model, texture);
+        }));
+    }
+
+    // A model that fails to load never takes over its texture, so the texture is released here, on the context thread.
+    private CompletableFuture<Model> releaseOnFailure(CompletableFuture<Model> model, CompletableFuture<Texture> texture) {
+        return model.whenCompleteAsync((m, error) -> {
+            if (error != null) texture.thenAccept(Texture::delete);
+        }, contextThread);
+    }
+
+    // Must be called on the GL context thread; runs queued uploads until every submitted asset is ready.
+    public void awaitAll() {
+        CompletableFuture<Void> all = CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]));
+        all.whenComplete((result, error) -> uploads.add(SETTLED));
+        try {
+            for (Runnable upload = uploads.take(); upload != SETTLED; upload = uploads.take()) upload.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while loading assets", e);
+        }
+        pending.clear();
+        all.join();
+    }
+
+    private <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+        pending.add(future);
+        return future;
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.graphics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Hands out shared, reference-counted assets keyed by resource path. Every caller of
+ * {@link #acquire} owns one reference and releases it with the asset's {@code delete()};
+ * once the last reference is gone the next request loads the asset again.
+ * Not thread-safe: use it from the GL context thread only.
+ */
+public class AssetRegistry {
+    private final Map<String, CompletableFuture<? extends RefCounted>> entries = new HashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public <T extends RefCounted> CompletableFuture<T> acquire(String key, Supplier<CompletableFuture<T>> loader) {
+        CompletableFuture<T> existing = (CompletableFuture<T>) entries.get(key);
+        if (existing != null && isUsable(existing)) {
+            return existing.thenApply(asset -> {
+                asset.retain();
+                return asset;
+            });
+        }
+        CompletableFuture<T> created = loader.get();
+        entries.put(key, created);
+        return created;
+    }
+
+    // Returns the pending or live asset registered under key without taking a reference, or null.
+    @SuppressWarnings("unchecked")
+    public <T extends RefCounted> CompletableFuture<T> lookup(String key) {
+        CompletableFuture<T> existing = (CompletableFuture<T>) entries.get(key);
+        return existing != null && isUsable(existing) ? existing : null;
+    }
+
+    public void put(String key, CompletableFuture<? extends RefCounted> asset) {
+        entries.put(key, asset);
+    }
+
+    private static boolean isUsable(CompletableFuture<? extends RefCounted> future) {
+        if (!future.isDone()) return true;
+        if (future.isCompletedExceptionally()) return false;
+        return future.join().isAlive();
+    }
+}
@@ -8,15 +8,21 @@ public class Camera {
     private float yaw = -90f;
     private float pitch = 0f;
 
+    // Scratch vectors, so per-frame calls allocate nothing.
+    private final Vector3f front = new Vector3f();
+    private final Vector3f rightVec = new Vector3f();
+    private final Vector3f center = new Vector3f();
+    private static final Vector3f UP = new Vector3f(0, 1, 0);
+
     public Matrix4f getViewMatrix() {
-        Vector3f front = new Vector3f(
-                (float)Math.cos(Math.toRadians(yaw)) * (float)Math.cos(Math.toRadians(pitch)),
-                (float)Math.sin(Math.toRadians(pitch)),
-                (float)Math.sin(Math.toRadians(yaw)) * (float)Math.cos(Math.toRadians(pitch))
-        ).normalize();
-        Vector3f up = new Vector3f(0,1,0);
-        Vector3f center = new Vector3f(position).add(front);
-        return new Matrix4f().lookAt(position, center, up);
+        return getViewMatrix(new Matrix4f());
+    }
+
+    // Writes the view matrix into dest and returns it.
+    public Matrix4f getViewMatrix(Matrix4f dest) {
+        updateFront();
+        center.set(position).add(front);
+        return dest.setLookAt(position, center, UP);
     }
 
     public void processKeyboard(
@@ -30,18 +36,22 @@ public class Camera {
             float deltaTime) {
         float speed = 2.5f * deltaTime;
         if(shift) speed*=2;
-        Vector3f front = new Vector3f(
+        updateFront();
+        front.cross(UP, rightVec).normalize();
+        if (forward) position.fma(speed, front);
+        if (back) position.fma(-speed, front);
+        if (left) position.fma(-speed, rightVec);
+        if (right) position.fma(speed, rightVec);
+        if(up) position.y += speed;
+        if(down) position.y -= speed;
+    }
+
+    private void updateFront() {
+        front.set(
                 (float)Math.cos(Math.toRadians(yaw)) * (float)Math.cos(Math.toRadians(pitch)),
                 (float)Math.sin(Math.toRadians(pitch)),
                 (float)Math.sin(Math.toRadians(yaw)) * (float)Math.cos(Math.toRadians(pitch))
         ).normalize();
-        Vector3f rightVec = new Vector3f(front).cross(new Vector3f(0,1,0)).normalize();
-        if (forward) position.add(new Vector3f(front).mul(speed));
-        if (back) position.sub(new Vector3f(front).mul(speed));
-        if (left) position.sub(new Vector3f(rightVec).mul(speed));
-        if (right) position.add(new Vector3f(rightVec).mul(speed));
-        if(up) position.add(new Vector3f(0,1,0).mul(speed));
-        if(down) position.sub(new Vector3f(0,1,0).mul(speed));
     }
 
     public void processMouse(float xoffset, float yoffset) {
@@ -0,0 +1,382 @@
+package com.example.graphics;
+
+import org.joml.Matrix4fc;
+import org.joml.Vector3fc;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.lwjgl.opengl.GL11.glBindTexture;
+import static org.lwjgl.opengl.GL11.glDeleteTextures;
+import static org.lwjgl.opengl.GL11.glGenTextures;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.GL_R16UI;
+import static org.lwjgl.opengl.GL30.GL_RG32UI;
+import static org.lwjgl.opengl.GL30.GL_RGBA32F;
+import static org.lwjgl.opengl.GL31.GL_TEXTURE_BUFFER;
+import static org.lwjgl.opengl.GL31.glTexBuffer;
+import static org.lwjgl.system.MemoryUtil.*;
+
+/**
+ * Clustered forward lighting: point lights get a finite radius, are binned on the CPU into
+ * view-space froxels ({@link #TILES_X} x {@link #TILES_Y} screen tiles times {@link #SLICES}
+ * exponential depth slices), and basic.frag walks only the lights of its fragment's cluster.
+ *
+ * <p>Three texture buffers carry the result, bound at {@link #LIGHT_DATA_UNIT} and the next two
+ * units: light data (position + radius, color + intensity; two RGBA32F texels per light), the
+ * cluster grid (offset and count into the index list; RG32UI per cluster) and the light index
+ * list (R16UI). Depth slices are binned in parallel on persistent worker threads once there are
+ * enough lights to be worth it.
+ */
+public class ClusteredLights {
+    public static final int MAX_LIGHTS = 4096;
+    public static final int TILES_X = 16;
+    public static final int TILES_Y = 9;
+    public static final int SLICES = 24;
+    // Lights beyond this in one cluster are dropped; see takeOverflowCount.
+    public static final int MAX_LIGHTS_PER_CLUSTER = 64;
+    public static final int LIGHT_DATA_UNIT = 3;
+    public static final int CLUSTER_GRID_UNIT = 4;
+    public static final int LIGHT_INDEX_UNIT = 5;
+
+    // Must match basic.frag: attenuation = 1 / (1 + LINEAR * d + QUADRATIC * d^2), faded to zero at the radius.
+    public static final float ATTENUATION_LINEAR = 0.09f;
+    public static final float ATTENUATION_QUADRATIC = 0.032f;
+    // Intensity times attenuation below which a light no longer counts.
+    public static final float CUTOFF = 0.05f;
+
+    private static final int CLUSTERS = TILES_X * TILES_Y * SLICES;
+    private static final int TILES = TILES_X * TILES_Y;
+    private static final int FLOATS_PER_LIGHT = 8;
+    private static final int PARALLEL_MIN_LIGHTS = 64;
+
+    // Lights as set by the caller: world position, radius, color, intensity.
+    private final float[] lights = new float[MAX_LIGHTS * FLOATS_PER_LIGHT];
+    private int lightCount;
+
+    // Per light, refreshed by update: view-space centre and the cluster ranges it can touch.
+    private final float[] viewCenter = new float[MAX_LIGHTS * 3];
+    private final int[] lightRange = new int[MAX_LIGHTS * 6];
+    private final boolean[] lightActive = new boolean[MAX_LIGHTS];
+
+    // View-space AABB of every cluster (min xyz, max xyz), rebuilt when the projection changes.
+    private final float[] clusterBounds = new float[CLUSTERS * 6];
+    private float p00, p11, near, far;
+    private int width, height;
+
+    // Binning output per slice, a fixed slot of MAX_LIGHTS_PER_CLUSTER entries per tile, merged
+    // into the index list afterwards.
+    private final short[][] sliceIndices = new short[SLICES][TILES * MAX_LIGHTS_PER_CLUSTER];
+    private final int[] clusterCount = new int[CLUSTERS];
+    private final int[] sliceOverflow = new int[SLICES];
+    private int overflow;
+
+    private final FloatBuffer lightData = memAllocFloat(MAX_LIGHTS * FLOATS_PER_LIGHT);
+    private final IntBuffer gridData = memAllocInt(CLUSTERS * 2);
+    private final ShortBuffer indexData = memAllocShort(CLUSTERS * MAX_LIGHTS_PER_CLUSTER);
+    private final int[] buffers = new int[3];
+    private final int[] textures = new int[3];
+
+    // Workers wait for generation to change, bin their slices and count pending down; the
+    // last one wakes the caller. Park/unpark keeps the handoff allocation-free.
+    private final Thread[] workers;
+    private final int participants;
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile int generation;
+    private volatile Thread caller;
+    private volatile boolean closed;
+
+    // threads: extra binning threads besides the caller; 0 bins everything on the calling thread.
+    public ClusteredLights(int threads) {
+        participants = Math.max(0, threads) + 1;
+        workers = new Thread[participants - 1];
+        for (int w = 1; w < participants; w++) {
+            int worker = w;
+            Thread t = new Thread(() -> workerLoop(worker), "light-binner-" + w);
+            t.setDaemon(true);
+            workers[w - 1] = t;
+            t.start();
+        }
+    }
+
+    // Created on first upload, when a GL context is guaranteed to be current.
+    private void createBuffers() {
+        int[] formats = { GL_RGBA32F, GL_RG32UI, GL_R16UI };
+        long[] sizes = { (long) lightData.capacity() * Float.BYTES, (long) gridData.capacity() * Integer.BYTES, (long) indexData.capacity() * Short.BYTES };
+        for (int i = 0; i < 3; i++) {
+            buffers[i] = glGenBuffers();
+            glBindBuffer(GL_TEXTURE_BUFFER, buffers[i]);
+            glBufferData(GL_TEXTURE_BUFFER, sizes[i], GL_STREAM_DRAW);
+            textures[i] = glGenTextures();
+            glBindTexture(GL_TEXTURE_BUFFER, textures[i]);
+            glTexBuffer(GL_TEXTURE_BUFFER, formats[i], buffers[i]);
+        }
+        glBindTexture(GL_TEXTURE_BUFFER, 0);
+        glBindBuffer(GL_TEXTURE_BUFFER, 0);
+    }
+
+    // Distance at which a light of the given intensity falls below CUTOFF.
+    public static float radiusFor(float intensity) {
+        float c = 1.0f - intensity / CUTOFF;
+        if (c >= 0.0f) return 0.0f;
+        float a = ATTENUATION_QUADRATIC, b = ATTENUATION_LINEAR;
+        return (float) ((-b + Math.sqrt(b * b - 4.0f * a * c)) / (2.0f * a));
+    }
+
+    // color is the light's tint (as used for specular), intensity scales the whole contribution.
+    public void setLight(int index, Vector3fc position, float r, float g, float b, float intensity) {
+        if (index < 0 || index >= MAX_LIGHTS) throw new IndexOutOfBoundsException("Light " + index + " of " + MAX_LIGHTS);
+        int o = index * FLOATS_PER_LIGHT;
+        lights[o] = position.x();
+        lights[o + 1] = position.y();
+        lights[o + 2] = position.z();
+        lights[o + 3] = radiusFor(intensity);
+        lights[o + 4] = r;
+        lights[o + 5] = g;
+        lights[o + 6] = b;
+        lights[o + 7] = intensity;
+    }
+
+    public void setLightCount(int count) {
+        lightCount = Math.max(0, Math.min(count, MAX_LIGHTS));
+    }
+
+    public int lightCount() { return lightCount; }
+
+    // Symmetric perspective projection of the pass, with its clip planes and the viewport size.
+    public void setProjection(Matrix4fc projection, float nearPlane, float farPlane, int viewportWidth, int viewportHeight) {
+        if (projection.m00() == p00 && projection.m11() == p11 && nearPlane == near && farPlane == far
+                && viewportWidth == width && viewportHeight == height) {
+            return;
+        }
+        p00 = projection.m00();
+        p11 = projection.m11();
+        near = nearPlane;
+        far = farPlane;
+        width = viewportWidth;
+        height = viewportHeight;
+        for (int z = 0; z < SLICES; z++) {
+            float d0 = sliceDepth(z), d1 = sliceDepth(z + 1);
+            for (int y = 0; y < TILES_Y; y++) {
+                float ny0 = -1.0f + 2.0f * y / TILES_Y, ny1 = -1.0f + 2.0f * (y + 1) / TILES_Y;
+                for (int x = 0; x < TILES_X; x++) {
+                    float nx0 = -1.0f + 2.0f * x / TILES_X, nx1 = -1.0f + 2.0f * (x + 1) / TILES_X;
+                    int o = ((z * TILES_Y + y) * TILES_X + x) * 6;
+                    // The frustum slab widens with depth, so x/y extremes sit on the near or far face.
+                    clusterBounds[o] = Math.min(nx0 * d0, nx0 * d1) / p00;
+                    clusterBounds[o + 1] = Math.min(ny0 * d0, ny0 * d1) / p11;
+                    clusterBounds[o + 2] = -d1;
+                    clusterBounds[o + 3] = Math.max(nx1 * d0, nx1 * d1) / p00;
+                    clusterBounds[o + 4] = Math.max(ny1 * d0, ny1 * d1) / p11;
+                    clusterBounds[o + 5] = -d0;
+                }
+            }
+        }
+    }
+
+    private float sliceDepth(int slice) {
+        return near * (float) Math.pow(far / near, slice / (double) SLICES);
+    }
+
+    private int sliceOf(float depth) {
+        int slice = (int) Math.floor(Math.log(depth / near) / Math.log(far / near) * SLICES);
+        return Math.max(0, Math.min(SLICES - 1, slice));
+    }
+
+    /**
+     * Bins the lights against the view, uploads the three buffers and writes the counts and
+     * cluster parameters into uniforms (which the caller still uploads).
+     */
+    public void update(Matrix4fc view, LightUniforms uniforms) {
+        int indexCount = bin(view);
+
+        uploadLights(uniforms);
+        upload(1, memAddress(gridData), (long) gridData.capacity() * Integer.BYTES, (long) gridData.capacity() * Integer.BYTES);
+        upload(2, memAddress(indexData, 0), (long) indexCount * Short.BYTES, (long) indexData.capacity() * Short.BYTES);
+
+        float logRatio = (float) Math.log(far / near);
+        uniforms.setClusters(TILES_X, TILES_Y, SLICES, (float) width / TILES_X, (float) height / TILES_Y,
+                SLICES / logRatio, -SLICES * (float) Math.log(near) / logRatio);
+    }
+
+    // CPU part of update: fills the cluster grid and index list and returns the index count.
+    int bin(Matrix4fc view) {
+        for (int i = 0; i < lightCount; i++) prepareLight(i, view);
+
+        if (participants > 1 && lightCount >= PARALLEL_MIN_LIGHTS) {
+            caller = Thread.currentThread();
+            pending.set(workers.length);
+            generation++;
+            for (Thread worker : workers) LockSupport.unpark(worker);
+            binSlices(0);
+            while (pending.get() != 0) LockSupport.park(this);
+        } else {
+            for (int z = 0; z < SLICES; z++) binSlice(z);
+        }
+
+        // Merge the per-slice lists into one index list and make offsets absolute.
+        indexData.clear();
+        overflow = 0;
+        for (int z = 0; z < SLICES; z++) {
+            overflow += sliceOverflow[z];
+            for (int t = 0; t < TILES; t++) {
+                int c = z * TILES + t;
+                gridData.put(c * 2, indexData.position());
+                gridData.put(c * 2 + 1, clusterCount[c]);
+                indexData.put(sliceIndices[z], t * MAX_LIGHTS_PER_CLUSTER, clusterCount[c]);
+            }
+        }
+        return indexData.position();
+    }
+
+    // Offset into the index list and light count of a cluster (slice-major, then row, then column) after bin.
+    int clusterOffset(int cluster) { return gridData.get(cluster * 2); }
+    int clusterLightCount(int cluster) { return gridData.get(cluster * 2 + 1); }
+    int lightIndex(int i) { return indexData.get(i); }
+
+    /**
+     * Uploads only the light data and count, for passes that need no cluster lists (the
+     * deferred light volumes index the light buffer by instance).
+     */
+    public void uploadLights(LightUniforms uniforms) {
+        for (int i = 0; i < lightCount; i++) {
+            int o = i * FLOATS_PER_LIGHT;
+            for (int f = 0; f < FLOATS_PER_LIGHT; f++) lightData.put(o + f, lights[o + f]);
+        }
+        upload(0, memAddress(lightData), (long) lightCount * FLOATS_PER_LIGHT * Float.BYTES, (long) lightData.capacity() * Float.BYTES);
+        uniforms.setLightCount(lightCount);
+    }
+
+    // Orphans the buffer store like UniformBuffer, then writes the used part.
+    private void upload(int buffer, long address, long bytes, long capacity) {
+        if (buffers[0] == 0) createBuffers();
+        glBindBuffer(GL_TEXTURE_BUFFER, buffers[buffer]);
+        glBufferData(GL_TEXTURE_BUFFER, capacity, GL_STREAM_DRAW);
+        if (bytes > 0) nglBufferSubData(GL_TEXTURE_BUFFER, 0, bytes, address);
+        glBindBuffer(GL_TEXTURE_BUFFER, 0);
+    }
+
+    private void prepareLight(int i, Matrix4fc view) {
+        int o = i * FLOATS_PER_LIGHT;
+        float wx = lights[o], wy = lights[o + 1], wz = lights[o + 2], r = lights[o + 3];
+        float cx = view.m00() * wx + view.m10() * wy + view.m20() * wz + view.m30();
+        float cy = view.m01() * wx + view.m11() * wy + view.m21() * wz + view.m31();
+        float cz = view.m02() * wx + view.m12() * wy + view.m22() * wz + view.m32();
+        viewCenter[i * 3] = cx;
+        viewCenter[i * 3 + 1] = cy;
+        viewCenter[i * 3 + 2] = cz;
+
+        float dmin = -cz - r, dmax = -cz + r;
+        lightActive[i] = r > 0.0f && dmax >= near && dmin <= far;
+        if (!lightActive[i]) return;
+        int[] range = lightRange;
+        range[i * 6 + 4] = sliceOf(Math.max(dmin, near));
+        range[i * 6 + 5] = sliceOf(Math.min(dmax, far));
+        if (dmin <= near) {
+            // Crosses the near plane: its projection is unbounded, so take every tile.
+            range[i * 6] = 0;
+            range[i * 6 + 1] = TILES_X - 1;
+            range[i * 6 + 2] = 0;
+            range[i * 6 + 3] = TILES_Y - 1;
+            return;
+        }
+        // The sphere's view-space box projects inside the hull of its corners.
+        float x0 = Math.min((cx - r) / dmin, (cx - r) / dmax) * p00;
+        float x1 = Math.max((cx + r) / dmin, (cx + r) / dmax) * p00;
+        float y0 = Math.min((cy - r) / dmin, (cy - r) / dmax) * p11;
+        float y1 = Math.max((cy + r) / dmin, (cy + r) / dmax) * p11;
+        range[i * 6] = tile(x0, TILES_X);
+        range[i * 6 + 1] = tile(x1, TILES_X);
+        range[i * 6 + 2] = tile(y0, TILES_Y);
+        range[i * 6 + 3] = tile(y1, TILES_Y);
+        if (x1 < -1.0f || x0 > 1.0f || y1 < -1.0f || y0 > 1.0f) lightActive[i] = false;
+    }
+
+    private static int tile(float ndc, int tiles) {
+        return Math.max(0, Math.min(tiles - 1, (int) Math.floor((ndc + 1.0f) * 0.5f * tiles)));
+    }
+
+    private void workerLoop(int worker) {
+        int seen = 0;
+        while (!closed) {
+            if (generation == seen) {
+                LockSupport.park(this);
+                continue;
+            }
+            seen = generation;
+            binSlices(worker);
+            if (pending.decrementAndGet() == 0) LockSupport.unpark(caller);
+        }
+    }
+
+    private void binSlices(int participant) {
+        for (int z = participant; z < SLICES; z += participants) binSlice(z);
+    }
+
+    // Writes the lists of one depth slice into sliceIndices[z], visiting only the tiles each
+    // light's screen box covers. Lights go in ascending index order, so shadowed ones come first.
+    private void binSlice(int z) {
+        short[] out = sliceIndices[z];
+        int dropped = 0;
+        for (int c = z * TILES; c < (z + 1) * TILES; c++) clusterCount[c] = 0;
+        for (int i = 0; i < lightCount; i++) {
+            int r = i * 6;
+            if (!lightActive[i] || z < lightRange[r + 4] || z > lightRange[r + 5]) continue;
+            float radius = lights[i * FLOATS_PER_LIGHT + 3];
+            float cx = viewCenter[i * 3], cy = viewCenter[i * 3 + 1], cz = viewCenter[i * 3 + 2];
+            for (int y = lightRange[r + 2]; y <= lightRange[r + 3]; y++) {
+                for (int x = lightRange[r]; x <= lightRange[r + 1]; x++) {
+                    int t = y * TILES_X + x;
+                    int c = z * TILES + t;
+                    int b = c * 6;
+                    float dx = Math.max(clusterBounds[b] - cx, Math.max(0.0f, cx - clusterBounds[b + 3]));
+                    float dy = Math.max(clusterBounds[b + 1] - cy, Math.max(0.0f, cy - clusterBounds[b + 4]));
+                    float dz = Math.max(clusterBounds[b + 2] - cz, Math.max(0.0f, cz - clusterBounds[b + 5]));
+                    if (dx * dx + dy * dy + dz * dz > radius * radius) continue;
+                    if (clusterCount[c] == MAX_LIGHTS_PER_CLUSTER) {
+                        dropped++;
+                        continue;
+                    }
+                    out[t * MAX_LIGHTS_PER_CLUSTER + clusterCount[c]++] = (short) i;
+                }
+            }
+        }
+        sliceOverflow[z] = dropped;
+    }
+
+    // Light/cluster pairs dropped by the last update because a cluster was full.
+    public int takeOverflowCount() {
+        int n = overflow;
+        overflow = 0;
+        return n;
+    }
+
+    // Binds the three buffers to their units; do this before drawing with basic.frag.
+    public void bind() {
+        if (buffers[0] == 0) createBuffers();
+        for (int i = 0; i < 3; i++) {
+            glActiveTexture(GL_TEXTURE0 + LIGHT_DATA_UNIT + i);
+            glBindTexture(GL_TEXTURE_BUFFER, textures[i]);
+        }
+        glActiveTexture(GL_TEXTURE0);
+    }
+
+    public void delete() {
+        closed = true;
+        for (Thread worker : workers) LockSupport.unpark(worker);
+        if (buffers[0] != 0) {
+            for (int i = 0; i < 3; i++) {
+                glDeleteTextures(textures[i]);
+                glDeleteBuffers(buffers[i]);
+            }
+        }
+        memFree(lightData);
+        memFree(gridData);
+        memFree(indexData);
+    }
+}
@@ -46,7 +46,7 @@ public class CubeMapTexture {
                 IntBuffer w = stack.mallocInt(1);
                 IntBuffer h = stack.mallocInt(1);
                 IntBuffer comp = stack.mallocInt(1);
-                STBImage.stbi_set_flip_vertically_on_load(false);
+                STBImage.stbi_set_flip_vertically_on_load_thread(0);
                 ByteBuffer image = STBImage.stbi_load_from_memory(imageBuffer, w, h, comp, 0);
                 if (image == null) return null;
                 int channels = comp.get(0);
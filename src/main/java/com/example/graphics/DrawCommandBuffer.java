@@ -0,0 +1,83 @@
+package com.example.graphics;
+
+import org.lwjgl.opengl.GL;
+
+import java.nio.IntBuffer;
+
+import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL32.glDrawElementsInstancedBaseVertex;
+import static org.lwjgl.opengl.GL40.GL_DRAW_INDIRECT_BUFFER;
+import static org.lwjgl.opengl.GL43.glMultiDrawElementsIndirect;
+import static org.lwjgl.system.MemoryUtil.memAllocInt;
+import static org.lwjgl.system.MemoryUtil.memFree;
+import static org.lwjgl.system.MemoryUtil.memRealloc;
+
+/**
+ * Batches draws of {@link GeometryArena} meshes into DrawElementsIndirectCommand records and
+ * submits them with one glMultiDrawElementsIndirect where GL 4.3 / ARB_multi_draw_indirect is
+ * available, otherwise one glDrawElementsInstancedBaseVertex per command. Every command starts
+ * at instance 0, since GL 3.3 has no base instance; meshes in one batch share an InstanceBuffer.
+ */
+public class DrawCommandBuffer {
+    private static final int INTS_PER_COMMAND = 5;
+
+    private final boolean indirect;
+    private final int buffer;
+    private IntBuffer commands;
+    private int count;
+
+    public DrawCommandBuffer(int initialCapacity) {
+        indirect = supportsIndirect();
+        commands = memAllocInt(Math.max(1, initialCapacity) * INTS_PER_COMMAND);
+        buffer = indirect ? glGenBuffers() : 0;
+    }
+
+    public static boolean supportsIndirect() {
+        return !Boolean.getBoolean("modelloader.noIndirect") && GL.getCapabilities().glMultiDrawElementsIndirect != 0L;
+    }
+
+    public boolean isIndirect() { return indirect; }
+
+    // Draws count indices from start (relative to the mesh's first index) of an arena mesh.
+    public void add(Mesh mesh, int start, int indexCount, int instanceCount) {
+        if ((count + 1) * INTS_PER_COMMAND > commands.capacity()) {
+            commands = memRealloc(commands, commands.capacity() * 2);
+        }
+        int base = count * INTS_PER_COMMAND;
+        commands.put(base, indexCount);
+        commands.put(base + 1, instanceCount);
+        commands.put(base + 2, mesh.firstIndex() + start);
+        commands.put(base + 3, mesh.baseVertex());
+        commands.put(base + 4, 0);
+        count++;
+    }
+
+    public int size() { return count; }
+
+    // Draws and clears all commands; expects the arena VAO and its instance attributes to be bound.
+    public void submit() {
+        if (count == 0) return;
+        if (indirect) {
+            glBindBuffer(GL_DRAW_INDIRECT_BUFFER, buffer);
+            glBufferData(GL_DRAW_INDIRECT_BUFFER, (long) commands.capacity() * Integer.BYTES, GL_STREAM_DRAW);
+            glBufferSubData(GL_DRAW_INDIRECT_BUFFER, 0, commands.limit(count * INTS_PER_COMMAND));
+            commands.clear();
+            glMultiDrawElementsIndirect(GL_TRIANGLES, GL_UNSIGNED_SHORT, 0L, count, 0);
+            glBindBuffer(GL_DRAW_INDIRECT_BUFFER, 0);
+        } else {
+            for (int c = 0; c < count; c++) {
+                int base = c * INTS_PER_COMMAND;
+                glDrawElementsInstancedBaseVertex(GL_TRIANGLES, commands.get(base), GL_UNSIGNED_SHORT,
+                        (long) commands.get(base + 2) * Short.BYTES, commands.get(base + 1), commands.get(base + 3));
+            }
+        }
+        count = 0;
+    }
+
+    public void delete() {
+        if (buffer != 0) glDeleteBuffers(buffer);
+        memFree(commands);
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.graphics;
+
+import org.joml.Matrix4fc;
+import org.joml.Vector3fc;
+
+/**
+ * CPU side of the std140 {@code Frame} block (view, projection, camera position) declared
+ * in basic.vert, basic.frag and skybox.vert.
+ */
+public class FrameUniforms {
+    public static final String BLOCK = "Frame";
+    public static final int BINDING = 0;
+
+    private static final int VIEW = 0;
+    private static final int PROJECTION = 64;
+    private static final int VIEW_POS = 128;
+    private static final int SIZE = 144;
+
+    private final UniformBuffer buffer = new UniformBuffer(BINDING, SIZE);
+
+    public void update(Matrix4fc view, Matrix4fc projection, Vector3fc viewPos) {
+        buffer.putMatrix(VIEW, view);
+        buffer.putMatrix(PROJECTION, projection);
+        buffer.putVec4(VIEW_POS, viewPos.x(), viewPos.y(), viewPos.z(), 1.0f);
+        buffer.upload();
+    }
+
+    public void delete() {
+        buffer.delete();
+    }
+}
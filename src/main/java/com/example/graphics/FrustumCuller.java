@@ -0,0 +1,128 @@
+package com.example.graphics;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4fc;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import org.joml.Vector4fc;
+
+/**
+ * Tests world-space bounding boxes against a view-projection frustum. Model bounds are
+ * transformed into a world AABB first, so a box that passes may still be off screen, but one
+ * that fails can never be visible. Meshlet clusters are additionally tested against their
+ * normal cone from the eye position recovered from the view-projection.
+ */
+public class FrustumCuller {
+    private final FrustumIntersection frustum = new FrustumIntersection();
+    private final FrustumIntersection faceFrustum = new FrustumIntersection();
+    private final Vector3f worldMin = new Vector3f();
+    private final Vector3f worldMax = new Vector3f();
+    private final Vector3f scratch = new Vector3f();
+    private final Vector3f eye = new Vector3f();
+    private int tested;
+    private int culled;
+
+    public FrustumCuller set(Matrix4fc viewProjection) {
+        frustum.set(viewProjection, false);
+        viewProjection.origin(eye);
+        return this;
+    }
+
+    public boolean isVisible(Model model, Matrix4fc transform) {
+        model.transformBounds(transform, worldMin, worldMax);
+        return isVisible(worldMin, worldMax);
+    }
+
+    // Bounding sphere first as the cheap reject, then the transformed AABB; meshes without bounds always pass.
+    public boolean isVisible(Mesh mesh, Matrix4fc transform) {
+        if (!mesh.hasBounds()) return true;
+        Vector4fc s = mesh.getSphere();
+        transform.transformPosition(s.x(), s.y(), s.z(), scratch);
+        float cx = scratch.x, cy = scratch.y, cz = scratch.z;
+        transform.getScale(scratch);
+        float radius = s.w() * Math.max(scratch.x, Math.max(scratch.y, scratch.z));
+        tested++;
+        boolean visible = frustum.testSphere(cx, cy, cz, radius);
+        if (visible) {
+            mesh.transformBounds(transform, worldMin, worldMax);
+            visible = frustum.testAab(worldMin, worldMax);
+        }
+        if (!visible) culled++;
+        return visible;
+    }
+
+    /**
+     * Writes the clusters that may be visible under the transform into outRanges as
+     * (first index, index count) pairs relative to LOD 0, merging clusters that are adjacent in
+     * the index buffer, and returns the number of pairs. outRanges needs room for 2 * count().
+     * The cone test assumes a uniform scale, like the sphere test.
+     */
+    public int visibleMeshlets(Meshlets meshlets, Matrix4fc transform, int[] outRanges) {
+        transform.getScale(scratch);
+        float scale = Math.max(scratch.x, Math.max(scratch.y, scratch.z));
+        int pairs = 0;
+        int end = -1;
+        for (int m = 0; m < meshlets.count(); m++) {
+            transform.transformPosition(meshlets.centerX(m), meshlets.centerY(m), meshlets.centerZ(m), scratch);
+            float cx = scratch.x, cy = scratch.y, cz = scratch.z;
+            float radius = meshlets.radius(m) * scale;
+            tested++;
+            boolean visible = frustum.testSphere(cx, cy, cz, radius);
+            if (visible && meshlets.cutoff(m) < 1.0f) {
+                transform.transformDirection(meshlets.axisX(m), meshlets.axisY(m), meshlets.axisZ(m), scratch).normalize();
+                float dx = cx - eye.x, dy = cy - eye.y, dz = cz - eye.z;
+                float along = dx * scratch.x + dy * scratch.y + dz * scratch.z;
+                visible = along < meshlets.cutoff(m) * (float) Math.sqrt(dx * dx + dy * dy + dz * dz) + radius;
+            }
+            if (!visible) {
+                culled++;
+                continue;
+            }
+            int first = meshlets.first(m);
+            if (first == end) {
+                outRanges[pairs * 2 - 1] += meshlets.indexCount(m);
+            } else {
+                outRanges[pairs * 2] = first;
+                outRanges[pairs * 2 + 1] = meshlets.indexCount(m);
+                pairs++;
+            }
+            end = first + meshlets.indexCount(m);
+        }
+        return pairs;
+    }
+
+    public boolean isVisible(Vector3fc min, Vector3fc max) {
+        tested++;
+        boolean visible = frustum.testAab(min, max);
+        if (!visible) culled++;
+        return visible;
+    }
+
+    /**
+     * Returns a face bitmask (bit f = face f) of the cube faces whose frustum intersects the
+     * world box, given the six face view-projections from PointLightShadowMap.buildLightSpaceMatrices.
+     */
+    public int visibleFaces(Matrix4fc[] faceViewProjections, Vector3fc min, Vector3fc max) {
+        int mask = 0;
+        for (int face = 0; face < faceViewProjections.length; face++) {
+            faceFrustum.set(faceViewProjections[face], false);
+            tested++;
+            if (faceFrustum.testAab(min, max)) mask |= 1 << face;
+            else culled++;
+        }
+        return mask;
+    }
+
+    // Boxes tested and rejected since the last call, for profiling.
+    public int takeTestedCount() {
+        int n = tested;
+        tested = 0;
+        return n;
+    }
+
+    public int takeCulledCount() {
+        int n = culled;
+        culled = 0;
+        return n;
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.graphics;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL14.GL_DEPTH_COMPONENT24;
+import static org.lwjgl.opengl.GL20.glDrawBuffers;
+import static org.lwjgl.opengl.GL30.*;
+
+/**
+ * Render targets of the deferred path, filled by gbuffer.frag: albedo (rgb) with the emissive
+ * flag in alpha, world normal (xyz) with the unlit flag in w, world position (xyz) with w = 1
+ * wherever geometry was drawn, and a depth texture. The lighting passes read them back from
+ * {@link #ALBEDO_UNIT} and the following three units.
+ */
+public class GBuffer {
+    public static final int ALBEDO_UNIT = 6;
+    public static final int NORMAL_UNIT = 7;
+    public static final int POSITION_UNIT = 8;
+    public static final int DEPTH_UNIT = 9;
+
+    private static final int[] INTERNAL_FORMATS = { GL_RGBA8, GL_RGBA16F, GL_RGBA32F };
+    private static final int[] TYPES = { GL_UNSIGNED_BYTE, GL_HALF_FLOAT, GL_FLOAT };
+    private static final int[] COLOR_UNITS = { ALBEDO_UNIT, NORMAL_UNIT, POSITION_UNIT };
+
+    private final int fbo;
+    private final int[] colors = new int[3];
+    private final int depth;
+    // Empty VAO for the full-screen triangle, whose corners come from gl_VertexID.
+    private final int fullScreenVao;
+    private int width, height;
+
+    public GBuffer(int width, int height) {
+        fbo = glGenFramebuffers();
+        for (int i = 0; i < colors.length; i++) colors[i] = glGenTextures();
+        depth = glGenTextures();
+        fullScreenVao = glGenVertexArrays();
+        allocate(width, height);
+
+        glBindFramebuffer(GL_FRAMEBUFFER, fbo);
+        for (int i = 0; i < colors.length; i++) {
+            glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0 + i, GL_TEXTURE_2D, colors[i], 0);
+        }
+        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_TEXTURE_2D, depth, 0);
+        glDrawBuffers(new int[] { GL_COLOR_ATTACHMENT0, GL_COLOR_ATTACHMENT1, GL_COLOR_ATTACHMENT2 });
+        int status = glCheckFramebufferStatus(GL_FRAMEBUFFER);
+        if (status != GL_FRAMEBUFFER_COMPLETE) {
+            throw new RuntimeException("G-buffer framebuffer incomplete: status=" + status);
+        }
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+    }
+
+    private void allocate(int width, int height) {
+        this.width = width;
+        this.height = height;
+        for (int i = 0; i < colors.length; i++) {
+            glBindTexture(GL_TEXTURE_2D, colors[i]);
+            glTexImage2D(GL_TEXTURE_2D, 0, INTERNAL_FORMATS[i], width, height, 0, GL_RGBA, TYPES[i], (ByteBuffer) null);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        }
+        glBindTexture(GL_TEXTURE_2D, depth);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_DEPTH_COMPONENT24, width, height, 0, GL_DEPTH_COMPONENT, GL_FLOAT, (ByteBuffer) null);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        glBindTexture(GL_TEXTURE_2D, 0);
+    }
+
+    // Reallocates the targets when the viewport size changed.
+    public void resize(int width, int height) {
+        if (width != this.width || height != this.height) allocate(width, height);
+    }
+
+    // Binds and clears the targets for the geometry pass.
+    public void bindForWrite() {
+        glBindFramebuffer(GL_FRAMEBUFFER, fbo);
+        glViewport(0, 0, width, height);
+        glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
+        glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+    }
+
+    public void unbind() {
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+    }
+
+    public void bindTextures() {
+        for (int i = 0; i < colors.length; i++) {
+            glActiveTexture(GL_TEXTURE0 + COLOR_UNITS[i]);
+            glBindTexture(GL_TEXTURE_2D, colors[i]);
+        }
+        glActiveTexture(GL_TEXTURE0 + DEPTH_UNIT);
+        glBindTexture(GL_TEXTURE_2D, depth);
+        glActiveTexture(GL_TEXTURE0);
+    }
+
+    public void drawFullScreen() {
+        glBindVertexArray(fullScreenVao);
+        glDrawArrays(GL_TRIANGLES, 0, 3);
+        glBindVertexArray(0);
+    }
+
+    public void delete() {
+        glDeleteFramebuffers(fbo);
+        glDeleteTextures(colors);
+        glDeleteTextures(depth);
+        glDeleteVertexArrays(fullScreenVao);
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.graphics;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.*;
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
+import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
+import static org.lwjgl.system.MemoryUtil.memAllocFloat;
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+/**
+ * One VBO/EBO pair shared by many meshes of the same {@link VertexFormat}, behind a single VAO.
+ * Meshes sub-allocate vertex and index ranges from free lists and are drawn with a base vertex,
+ * so switching between them needs no rebinding and a run of them can go out in one
+ * {@link DrawCommandBuffer} submission. Indices are 16-bit and relative to the mesh's first
+ * vertex; meshes with more than 65536 vertices don't fit and get their own buffers instead.
+ * Both buffers grow on demand by copying into a larger store.
+ *
+ * <p>Positions are also kept in a separate tightly packed VBO behind a second VAO, so depth-only
+ * passes fetch 12 bytes per vertex instead of the full interleaved vertex.
+ */
+public class GeometryArena {
+    public static final int MAX_MESH_VERTICES = 0x10000;
+    private static final int POSITION_STRIDE = 3 * Float.BYTES;
+
+    private final VertexFormat format;
+    private final int vao;
+    private final int depthVao;
+    private int vbo;
+    private int positionVbo;
+    private int ebo;
+    private final RangeAllocator vertices;
+    private final RangeAllocator indices;
+    // Instance buffer whose attributes are currently wired into the VAO.
+    private InstanceBuffer attachedInstances;
+    private InstanceBuffer depthAttachedInstances;
+
+    public GeometryArena(VertexFormat format, int vertexCapacity, int indexCapacity) {
+        this.format = format;
+        this.vertices = new RangeAllocator(vertexCapacity);
+        this.indices = new RangeAllocator(indexCapacity);
+        vao = glGenVertexArrays();
+        depthVao = glGenVertexArrays();
+        vbo = createBuffer((long) vertexCapacity * format.stride());
+        positionVbo = createBuffer((long) vertexCapacity * POSITION_STRIDE);
+        ebo = createBuffer((long) indexCapacity * Short.BYTES);
+        bindLayout();
+    }
+
+    public VertexFormat format() { return format; }
+
+    public boolean accepts(int vertexCount) {
+        return vertexCount <= MAX_MESH_VERTICES;
+    }
+
+    int vao() { return vao; }
+    int depthVao() { return depthVao; }
+
+    /**
+     * Copies a mesh into the arena and returns {baseVertex, firstIndex}. The source buffers
+     * are left untouched.
+     */
+    int[] upload(FloatBuffer vertexData, IntBuffer indexData) {
+        int vertexCount = vertexData.remaining() / MeshData.FLOATS_PER_VERTEX;
+        int indexCount = indexData.remaining();
+        if (!accepts(vertexCount)) throw new IllegalArgumentException("Mesh has " + vertexCount + " vertices, arena limit is " + MAX_MESH_VERTICES);
+
+        int baseVertex = vertices.allocate(vertexCount);
+        if (baseVertex < 0) {
+            growVertices(vertexCount);
+            baseVertex = vertices.allocate(vertexCount);
+        }
+        int firstIndex = indices.allocate(indexCount);
+        if (firstIndex < 0) {
+            growIndices(indexCount);
+            firstIndex = indices.allocate(indexCount);
+        }
+
+        ByteBuffer encoded = format.encode(vertexData);
+        glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        glBufferSubData(GL_ARRAY_BUFFER, (long) baseVertex * format.stride(), encoded);
+        memFree(encoded);
+        FloatBuffer positions = memAllocFloat(vertexCount * 3);
+        int src = vertexData.position();
+        for (int i = 0; i < vertexCount; i++) {
+            int base = src + i * MeshData.FLOATS_PER_VERTEX;
+            positions.put(i * 3, vertexData.get(base));
+            positions.put(i * 3 + 1, vertexData.get(base + 1));
+            positions.put(i * 3 + 2, vertexData.get(base + 2));
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, positionVbo);
+        glBufferSubData(GL_ARRAY_BUFFER, (long) baseVertex * POSITION_STRIDE, positions);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        memFree(positions);
+
+        ShortBuffer narrow = Mesh.narrowIndices(indexData);
+        glBindVertexArray(vao);
+        glBufferSubData(GL_ELEMENT_ARRAY_BUFFER, (long) firstIndex * Short.BYTES, narrow);
+        memFree(narrow);
+        return new int[]{baseVertex, firstIndex};
+    }
+
+    void free(int baseVertex, int vertexCount, int firstIndex, int indexCount) {
+        vertices.free(baseVertex, vertexCount);
+        indices.free(firstIndex, indexCount);
+    }
+
+    // Expects the arena VAO to be bound.
+    void attachInstances(InstanceBuffer instances) {
+        if (attachedInstances == instances) return;
+        instances.setupAttributes();
+        attachedInstances = instances;
+    }
+
+    // Same as attachInstances for the position-only VAO, which must be bound.
+    void attachDepthInstances(InstanceBuffer instances) {
+        if (depthAttachedInstances == instances) return;
+        instances.setupAttributes();
+        depthAttachedInstances = instances;
+    }
+
+    public int usedVertices() { return vertices.used(); }
+    public int usedIndices() { return indices.used(); }
+
+    private void growVertices(int needed) {
+        int old = vertices.capacity();
+        int capacity = Math.max(old * 2, old + needed);
+        vbo = copyToLarger(vbo, (long) old * format.stride(), (long) capacity * format.stride());
+        positionVbo = copyToLarger(positionVbo, (long) old * POSITION_STRIDE, (long) capacity * POSITION_STRIDE);
+        vertices.grow(capacity);
+        bindLayout();
+    }
+
+    private void growIndices(int needed) {
+        int old = indices.capacity();
+        int capacity = Math.max(old * 2, old + needed);
+        ebo = copyToLarger(ebo, (long) old * Short.BYTES, (long) capacity * Short.BYTES);
+        indices.grow(capacity);
+        bindLayout();
+    }
+
+    private static int createBuffer(long bytes) {
+        int buffer = glGenBuffers();
+        glBindBuffer(GL_COPY_WRITE_BUFFER, buffer);
+        glBufferData(GL_COPY_WRITE_BUFFER, Math.max(bytes, 1), GL_STATIC_DRAW);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+        return buffer;
+    }
+
+    private static int copyToLarger(int buffer, long oldBytes, long newBytes) {
+        int larger = createBuffer(newBytes);
+        glBindBuffer(GL_COPY_READ_BUFFER, buffer);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, larger);
+        if (oldBytes > 0) glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, 0, 0, oldBytes);
+        glBindBuffer(GL_COPY_READ_BUFFER, 0);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+        glDeleteBuffers(buffer);
+        return larger;
+    }
+
+    // Points the VAOs at the current buffers; needed again after any of them is reallocated.
+    private void bindLayout() {
+        glBindVertexArray(vao);
+        glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        format.setupAttributes();
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, ebo);
+
+        glBindVertexArray(depthVao);
+        glBindBuffer(GL_ARRAY_BUFFER, positionVbo);
+        glEnableVertexAttribArray(0);
+        glVertexAttribPointer(0, 3, GL_FLOAT, false, POSITION_STRIDE, 0);
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, ebo);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    public void delete() {
+        glDeleteVertexArrays(vao);
+        glDeleteVertexArrays(depthVao);
+        glDeleteBuffers(vbo);
+        glDeleteBuffers(positionVbo);
+        glDeleteBuffers(ebo);
+    }
+}
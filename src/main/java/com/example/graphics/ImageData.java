@@ -0,0 +1,24 @@
+package com.example.graphics;
+
+import org.lwjgl.stb.STBImage;
+
+import java.nio.ByteBuffer;
+
+// Decoded RGBA8 pixels owned by STB, kept off the GL thread until upload.
+public class ImageData {
+    private final int width;
+    private final int height;
+    private final ByteBuffer pixels;
+
+    public ImageData(int width, int height, ByteBuffer pixels) {
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public ByteBuffer getPixels() { return pixels; }
+
+    public void free() { STBImage.stbi_image_free(pixels); }
+}
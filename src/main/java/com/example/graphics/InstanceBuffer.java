@@ -0,0 +1,106 @@
+package com.example.graphics;
+
+import org.joml.Matrix3f;
+import org.joml.Matrix4fc;
+
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
+import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
+import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
+import static org.lwjgl.system.MemoryUtil.memAllocFloat;
+import static org.lwjgl.system.MemoryUtil.memFree;
+import static org.lwjgl.system.MemoryUtil.memRealloc;
+
+/**
+ * Per-instance data for {@link Mesh#renderInstanced}: a model matrix, a parameter vector
+ * (x = emissive, y = unlit) and the normal matrix per instance, read by basic.vert at attribute
+ * locations 3-6, 7 and 8-10. The normal matrix is computed here once per instance rather than
+ * per vertex in the shader. Fill it with {@link #add} each frame, then {@link #upload()} before
+ * drawing.
+ */
+public class InstanceBuffer {
+    public static final int FLOATS_PER_INSTANCE = 29;
+    // Locations 3..6 hold the matrix columns, 7 the parameters, 8..10 the normal matrix columns.
+    public static final int MODEL_LOCATION = 3;
+    public static final int PARAMS_LOCATION = 7;
+    public static final int NORMAL_LOCATION = 8;
+
+    private static final int STRIDE = FLOATS_PER_INSTANCE * Float.BYTES;
+
+    // Created on first use by GL, so instances can be filled without a context.
+    private int vbo;
+    private FloatBuffer data;
+    private int count;
+    private final Matrix3f normal = new Matrix3f();
+
+    public InstanceBuffer(int initialCapacity) {
+        data = memAllocFloat(Math.max(1, initialCapacity) * FLOATS_PER_INSTANCE);
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    public void add(Matrix4fc model, boolean emissive, boolean unlit) {
+        int base = count * FLOATS_PER_INSTANCE;
+        if (base + FLOATS_PER_INSTANCE > data.capacity()) {
+            data = memRealloc(data, data.capacity() * 2);
+        }
+        model.get(base, data);
+        data.put(base + 16, emissive ? 1.0f : 0.0f);
+        data.put(base + 17, unlit ? 1.0f : 0.0f);
+        data.put(base + 18, 0.0f);
+        data.put(base + 19, 0.0f);
+        // Inverse transpose of the upper 3x3; JOML skips the inverse for orthonormal matrices.
+        model.normal(normal).get(base + 20, data);
+        count++;
+    }
+
+    public int count() { return count; }
+
+    // One float of an added instance, at offset within its FLOATS_PER_INSTANCE.
+    float get(int instance, int offset) { return data.get(instance * FLOATS_PER_INSTANCE + offset); }
+
+    private int vbo() {
+        if (vbo == 0) vbo = glGenBuffers();
+        return vbo;
+    }
+
+    // Orphans the previous contents so in-flight draws keep their copy.
+    public void upload() {
+        glBindBuffer(GL_ARRAY_BUFFER, vbo());
+        glBufferData(GL_ARRAY_BUFFER, (long) data.capacity() * Float.BYTES, GL_STREAM_DRAW);
+        glBufferSubData(GL_ARRAY_BUFFER, 0, data.limit(count * FLOATS_PER_INSTANCE));
+        data.clear();
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    // Expects the target VAO to be bound.
+    void setupAttributes() {
+        glBindBuffer(GL_ARRAY_BUFFER, vbo());
+        for (int column = 0; column < 4; column++) {
+            int location = MODEL_LOCATION + column;
+            glEnableVertexAttribArray(location);
+            glVertexAttribPointer(location, 4, GL_FLOAT, false, STRIDE, (long) column * 4 * Float.BYTES);
+            glVertexAttribDivisor(location, 1);
+        }
+        glEnableVertexAttribArray(PARAMS_LOCATION);
+        glVertexAttribPointer(PARAMS_LOCATION, 4, GL_FLOAT, false, STRIDE, 16 * Float.BYTES);
+        glVertexAttribDivisor(PARAMS_LOCATION, 1);
+        for (int column = 0; column < 3; column++) {
+            int location = NORMAL_LOCATION + column;
+            glEnableVertexAttribArray(location);
+            glVertexAttribPointer(location, 3, GL_FLOAT, false, STRIDE, (long) (20 + column * 3) * Float.BYTES);
+            glVertexAttribDivisor(location, 1);
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    public void delete() {
+        if (vbo != 0) glDeleteBuffers(vbo);
+        memFree(data);
+    }
+}
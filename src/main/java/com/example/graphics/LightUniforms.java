@@ -0,0 +1,45 @@
+package com.example.graphics;
+
+/**
+ * CPU side of the std140 {@code Lights} block declared in basic.frag and depth_cube.frag:
+ * light and shadow counts, the shadow far plane and the cluster grid layout. The lights
+ * themselves live in {@link ClusteredLights}' texture buffers.
+ */
+public class LightUniforms {
+    public static final String BLOCK = "Lights";
+    public static final int BINDING = 1;
+
+    private static final int LIGHT_COUNT = 0;
+    private static final int SHADOW_COUNT = 4;
+    private static final int SHADOW_FAR_PLANE = 8;
+    private static final int CLUSTER_DIMS = 16;
+    private static final int CLUSTER_PARAMS = 32;
+    private static final int SIZE = 48;
+
+    private final UniformBuffer buffer = new UniformBuffer(BINDING, SIZE);
+
+    public void setLightCount(int count) {
+        buffer.putInt(LIGHT_COUNT, count);
+    }
+
+    public void setShadows(int shadowCount, float farPlane) {
+        buffer.putInt(SHADOW_COUNT, shadowCount);
+        buffer.putFloat(SHADOW_FAR_PLANE, farPlane);
+    }
+
+    // Tile size in pixels; a fragment's slice is floor(log(viewDepth) * sliceScale + sliceBias).
+    public void setClusters(int tilesX, int tilesY, int slices, float tileWidth, float tileHeight, float sliceScale, float sliceBias) {
+        buffer.putInt(CLUSTER_DIMS, tilesX);
+        buffer.putInt(CLUSTER_DIMS + 4, tilesY);
+        buffer.putInt(CLUSTER_DIMS + 8, slices);
+        buffer.putVec4(CLUSTER_PARAMS, tileWidth, tileHeight, sliceScale, sliceBias);
+    }
+
+    public void upload() {
+        buffer.upload(SIZE);
+    }
+
+    public void delete() {
+        buffer.delete();
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.graphics;
+
+import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_BYTE;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.glDrawElementsInstanced;
+import static org.lwjgl.system.MemoryStack.stackPush;
+
+/**
+ * Unit box drawn once per light by the deferred lighting pass; light_volume.vert scales
+ * instance {@code i} to light {@code i}'s radius. Faces wind counter-clockwise seen from
+ * outside, so culling front faces leaves the far side of each box.
+ */
+public class LightVolume {
+    private final int vao;
+    private final int vbo;
+    private final int ebo;
+
+    private static final float[] CORNERS = {
+            -1f, -1f, -1f,
+             1f, -1f, -1f,
+            -1f,  1f, -1f,
+             1f,  1f, -1f,
+            -1f, -1f,  1f,
+             1f, -1f,  1f,
+            -1f,  1f,  1f,
+             1f,  1f,  1f
+    };
+
+    private static final byte[] INDICES = {
+            0, 2, 1,  1, 2, 3, // -Z
+            4, 5, 6,  5, 7, 6, // +Z
+            0, 4, 2,  2, 4, 6, // -X
+            1, 3, 5,  3, 7, 5, // +X
+            0, 1, 4,  1, 5, 4, // -Y
+            2, 6, 3,  3, 6, 7  // +Y
+    };
+
+    public LightVolume() {
+        vao = glGenVertexArrays();
+        vbo = glGenBuffers();
+        ebo = glGenBuffers();
+        glBindVertexArray(vao);
+        glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        glBufferData(GL_ARRAY_BUFFER, CORNERS, GL_STATIC_DRAW);
+        glEnableVertexAttribArray(0);
+        glVertexAttribPointer(0, 3, GL_FLOAT, false, 3 * Float.BYTES, 0);
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, ebo);
+        try (var stack = stackPush()) {
+            glBufferData(GL_ELEMENT_ARRAY_BUFFER, stack.bytes(INDICES), GL_STATIC_DRAW);
+        }
+        glBindVertexArray(0);
+    }
+
+    public void render(int lights) {
+        if (lights <= 0) return;
+        glBindVertexArray(vao);
+        glDrawElementsInstanced(GL_TRIANGLES, INDICES.length, GL_UNSIGNED_BYTE, 0, lights);
+        glBindVertexArray(0);
+    }
+
+    public void delete() {
+        glDeleteBuffers(ebo);
+        glDeleteBuffers(vbo);
+        glDeleteVertexArrays(vao);
+    }
+}
@@ -1,58 +1,242 @@
 package com.example.graphics;
 
+import org.joml.Matrix4fc;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import org.joml.Vector4f;
+import org.joml.Vector4fc;
+
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 
 import static org.lwjgl.opengl.GL15.*;
 import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.glDrawElementsInstanced;
+import static org.lwjgl.opengl.GL32.glDrawElementsBaseVertex;
+import static org.lwjgl.opengl.GL32.glDrawElementsInstancedBaseVertex;
 import static org.lwjgl.system.MemoryUtil.*;
 
-public class Mesh {
+public class Mesh extends RefCounted {
     private final int vao;
     private final int vbo;
     private final int ebo;
+    private final int indexCount;
+    private final int indexType;
+    // Set for meshes living in a GeometryArena: vao is the arena's and vbo/ebo are 0.
+    private final GeometryArena arena;
     private final int vertexCount;
+    private final int baseVertex;
+    private final int firstIndex;
+    // Instance buffer whose attributes are currently wired into the VAO.
+    private InstanceBuffer attachedInstances;
+    // Object-space bounds; an unset (empty) box never culls, see hasBounds.
+    private final Vector3f boundsMin = new Vector3f(Float.NEGATIVE_INFINITY);
+    private final Vector3f boundsMax = new Vector3f(Float.POSITIVE_INFINITY);
+    private final Vector4f sphere = new Vector4f(0, 0, 0, Float.POSITIVE_INFINITY);
+    // LOD l draws lodCounts[l] indices starting lodStarts[l] into the mesh's index range; level 0 is the full mesh.
+    private int[] lodStarts;
+    private int[] lodCounts;
+    // Clusters of LOD 0 for per-cluster culling; null for meshes imported without them.
+    private Meshlets meshlets;
 
     public Mesh(float[] vertices, int[] indices) {
-        this.vertexCount = indices.length;
+        this(memAllocFloat(vertices.length).put(vertices).flip(), memAllocInt(indices.length).put(indices).flip(), VertexFormat.STANDARD, true);
+    }
+
+    // Uploads the buffers as they are; the caller keeps ownership of the memory.
+    public Mesh(FloatBuffer vertices, IntBuffer indices) {
+        this(vertices, indices, VertexFormat.STANDARD, false);
+    }
+
+    public Mesh(FloatBuffer vertices, IntBuffer indices, VertexFormat format) {
+        this(vertices, indices, format, false);
+    }
+
+    // Sub-allocates the mesh from the arena (in the arena's format); the caller keeps ownership of the memory.
+    public Mesh(GeometryArena arena, FloatBuffer vertices, IntBuffer indices) {
+        this.arena = arena;
+        this.indexCount = indices.remaining();
+        this.vertexCount = vertices.remaining() / MeshData.FLOATS_PER_VERTEX;
+        int[] placement = arena.upload(vertices, indices);
+        this.baseVertex = placement[0];
+        this.firstIndex = placement[1];
+        this.indexType = GL_UNSIGNED_SHORT;
+        this.vao = arena.vao();
+        this.vbo = 0;
+        this.ebo = 0;
+        setLods(new int[] { indexCount });
+    }
+
+    private Mesh(FloatBuffer vertices, IntBuffer indices, VertexFormat format, boolean freeAfterUpload) {
+        this.arena = null;
+        this.baseVertex = 0;
+        this.firstIndex = 0;
+        this.indexCount = indices.remaining();
+        this.vertexCount = vertices.remaining() / MeshData.FLOATS_PER_VERTEX;
         vao = glGenVertexArrays();
         glBindVertexArray(vao);
 
         vbo = glGenBuffers();
         glBindBuffer(GL_ARRAY_BUFFER, vbo);
-        FloatBuffer vb = memAllocFloat(vertices.length);
-        vb.put(vertices).flip();
-        glBufferData(GL_ARRAY_BUFFER, vb, GL_STATIC_DRAW);
-        memFree(vb);
+        if (format == VertexFormat.STANDARD) {
+            glBufferData(GL_ARRAY_BUFFER, vertices, GL_STATIC_DRAW);
+        } else {
+            ByteBuffer encoded = format.encode(vertices);
+            glBufferData(GL_ARRAY_BUFFER, encoded, GL_STATIC_DRAW);
+            memFree(encoded);
+        }
 
         ebo = glGenBuffers();
         glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, ebo);
-        IntBuffer ib = memAllocInt(indices.length);
-        ib.put(indices).flip();
-        glBufferData(GL_ELEMENT_ARRAY_BUFFER, ib, GL_STATIC_DRAW);
-        memFree(ib);
-
-        int stride = 8 * Float.BYTES;
-        glEnableVertexAttribArray(0);
-        glVertexAttribPointer(0, 3, GL_FLOAT, false, stride, 0);
-        glEnableVertexAttribArray(1);
-        glVertexAttribPointer(1, 3, GL_FLOAT, false, stride, 3 * Float.BYTES);
-        glEnableVertexAttribArray(2);
-        glVertexAttribPointer(2, 2, GL_FLOAT, false, stride, 6 * Float.BYTES);
+        // Every index fits in 16 bits when there are at most 65536 vertices.
+        if (vertexCount <= 0x10000) {
+            indexType = GL_UNSIGNED_SHORT;
+            ShortBuffer narrow = narrowIndices(indices);
+            glBufferData(GL_ELEMENT_ARRAY_BUFFER, narrow, GL_STATIC_DRAW);
+            memFree(narrow);
+        } else {
+            indexType = GL_UNSIGNED_INT;
+            glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
+        }
+
+        if (freeAfterUpload) {
+            memFree(vertices);
+            memFree(indices);
+        }
+
+        format.setupAttributes();
 
         glBindVertexArray(0);
+        setLods(new int[] { indexCount });
     }
 
+    // Copies indices known to be below 65536 into a new MemoryUtil buffer of shorts.
+    static ShortBuffer narrowIndices(IntBuffer indices) {
+        int count = indices.remaining();
+        ShortBuffer narrow = memAllocShort(count);
+        int src = indices.position();
+        for (int i = 0; i < count; i++) narrow.put(i, (short) indices.get(src + i));
+        return narrow;
+    }
+
+    /**
+     * Splits the uploaded index range into LOD levels stored back to back, finest first, with the
+     * given index counts. They must add up to the mesh's index count.
+     */
+    public void setLods(int[] counts) {
+        int total = 0;
+        int[] starts = new int[counts.length];
+        for (int l = 0; l < counts.length; l++) {
+            starts[l] = total;
+            total += counts[l];
+        }
+        if (counts.length == 0 || total != indexCount) {
+            throw new IllegalArgumentException("LOD index counts add up to " + total + ", mesh has " + indexCount);
+        }
+        lodStarts = starts;
+        lodCounts = counts.clone();
+    }
+
+    public int lodLevels() { return lodCounts.length; }
+
+    public void setMeshlets(Meshlets meshlets) { this.meshlets = meshlets; }
+
+    public Meshlets meshlets() { return meshlets; }
+
+    // Leaves the VAO bound; every other VAO user binds its own before drawing or editing buffers.
     public void render() {
+        render(0);
+    }
+
+    // Draws the given LOD, clamped to the coarsest level available.
+    public void render(int lod) {
         glBindVertexArray(vao);
-        glDrawElements(GL_TRIANGLES, vertexCount, GL_UNSIGNED_INT, 0);
-        glBindVertexArray(0);
+        draw(lod);
+    }
+
+    // One draw for every instance in the buffer; the instance attributes are attached on first use.
+    public void renderInstanced(InstanceBuffer instances) {
+        glBindVertexArray(vao);
+        drawInstanced(instances, 0);
+    }
+
+    public void setBounds(Vector3fc min, Vector3fc max, Vector4fc boundingSphere) {
+        boundsMin.set(min);
+        boundsMax.set(max);
+        sphere.set(boundingSphere);
+    }
+
+    public boolean hasBounds() {
+        return Float.isFinite(sphere.w);
+    }
+
+    public Vector3fc getBoundsMin() { return boundsMin; }
+    public Vector3fc getBoundsMax() { return boundsMax; }
+    public Vector4fc getSphere() { return sphere; }
+
+    // World-space AABB enclosing the mesh bounds under the given transform.
+    public void transformBounds(Matrix4fc transform, Vector3f outMin, Vector3f outMax) {
+        transform.transformAab(boundsMin, boundsMax, outMin, outMax);
+    }
+
+    int vao() { return vao; }
+    // VAO for depth-only passes: the arena's position-only one, or the regular VAO for standalone meshes.
+    int depthVao() { return arena != null ? arena.depthVao() : vao; }
+    GeometryArena arena() { return arena; }
+    int baseVertex() { return baseVertex; }
+    // First index of the mesh within the arena's EBO (0 for standalone meshes).
+    int firstIndex() { return firstIndex; }
+    int clampLod(int lod) { return Math.max(0, Math.min(lod, lodCounts.length - 1)); }
+    // Start (relative to the mesh's first index) and index count of a clamped LOD.
+    int lodStart(int lod) { return lodStarts[clampLod(lod)]; }
+    int indexCount(int lod) { return lodCounts[clampLod(lod)]; }
+
+    private long indexOffset(int start) {
+        return (long) (firstIndex + start) * (indexType == GL_UNSIGNED_SHORT ? Short.BYTES : Integer.BYTES);
+    }
+
+    // The draw* methods expect this mesh's VAO to be bound already, see RenderQueue.
+    void draw(int lod) {
+        drawRange(lodStart(lod), indexCount(lod));
+    }
+
+    // Draws count indices from start, relative to the mesh's first index; used for LODs and meshlet ranges.
+    void drawRange(int start, int count) {
+        if (arena != null) {
+            glDrawElementsBaseVertex(GL_TRIANGLES, count, indexType, indexOffset(start), baseVertex);
+        } else {
+            glDrawElements(GL_TRIANGLES, count, indexType, indexOffset(start));
+        }
+    }
+
+    void drawInstanced(InstanceBuffer instances, int lod) {
+        drawInstancedRange(instances, lodStart(lod), indexCount(lod));
+    }
+
+    void drawInstancedRange(InstanceBuffer instances, int start, int count) {
+        if (instances.count() == 0) return;
+        if (arena != null) {
+            arena.attachInstances(instances);
+            glDrawElementsInstancedBaseVertex(GL_TRIANGLES, count, indexType, indexOffset(start), instances.count(), baseVertex);
+            return;
+        }
+        if (attachedInstances != instances) {
+            instances.setupAttributes();
+            attachedInstances = instances;
+        }
+        glDrawElementsInstanced(GL_TRIANGLES, count, indexType, indexOffset(start), instances.count());
     }
 
     public void delete() {
+        if (!release()) return;
+        if (arena != null) {
+            arena.free(baseVertex, vertexCount, firstIndex, indexCount);
+            return;
+        }
         glDeleteVertexArrays(vao);
         glDeleteBuffers(vbo);
         glDeleteBuffers(ebo);
     }
 }
-
@@ -0,0 +1,194 @@
+package com.example.graphics;
+
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import org.joml.Vector4f;
+import org.joml.Vector4fc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import static org.lwjgl.system.MemoryUtil.memAllocInt;
+
+/**
+ * On-disk binary cache of imported meshes, keyed by the resource path and validated
+ * against a SHA-256 of the source file and the import flags.
+ *
+ * Layout (little endian): magic, version, hash[32], meshCount, boundsMin xyz, boundsMax xyz,
+ * then per mesh: vertexCount, indexCount, boundsMin xyz, boundsMax xyz, sphere xyzr,
+ * vertexCount * 8 floats, indexCount ints, lodCount, then per LOD: indexCount, indexCount ints,
+ * then meshletCount and per meshlet: first index, index count, sphere xyzr, cone axis xyz, cutoff.
+ */
+public class MeshCache {
+    private static final int MAGIC = 0x4D534843; // "MSHC"
+    // Only the source bytes and the import flags are hashed, so bump this whenever the layout or
+    // anything else that shapes the cached meshes changes, including the settings of any processing
+    // that runs after import.
+    private static final int VERSION = 4;
+    private static final int HASH_BYTES = 32;
+    private static final int HEADER_BYTES = 4 + 4 + HASH_BYTES + 4 + 6 * Float.BYTES;
+    private static final int MESH_HEADER_BYTES = 4 + 4 + 10 * Float.BYTES + 4 + 4;
+    private static final int MESHLET_BYTES = 2 * Integer.BYTES + Meshlets.FLOATS_PER_BOUNDS * Float.BYTES;
+
+    private static final boolean ENABLED = !Boolean.getBoolean("modelloader.noCache");
+    private static final boolean NATIVE_LE = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+    private static final Path CACHE_DIR = Paths.get(System.getProperty("modelloader.cacheDir", "build/mesh-cache"));
+
+    public static byte[] hash(ByteBuffer source, int importFlags) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(source.duplicate());
+            digest.update(ByteBuffer.allocate(4).putInt(importFlags).flip());
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Returns null on a miss, a stale hash or an unreadable file; the caller falls back to Assimp.
+    public static ModelData read(String resourcePath, byte[] hash) {
+        if (!ENABLED) return null;
+        Path file = cacheFile(resourcePath);
+        if (!Files.isRegularFile(file)) return null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) return null;
+            byte[] stored = new byte[HASH_BYTES];
+            buf.get(stored);
+            if (!Arrays.equals(stored, hash)) return null;
+
+            int meshCount = buf.getInt();
+            Vector3f min = new Vector3f(buf.getFloat(), buf.getFloat(), buf.getFloat());
+            Vector3f max = new Vector3f(buf.getFloat(), buf.getFloat(), buf.getFloat());
+            ModelData data = new ModelData();
+            for (int i = 0; i < meshCount; i++) {
+                int vertexCount = buf.getInt();
+                int indexCount = buf.getInt();
+                Vector3f meshMin = new Vector3f(buf.getFloat(), buf.getFloat(), buf.getFloat());
+                Vector3f meshMax = new Vector3f(buf.getFloat(), buf.getFloat(), buf.getFloat());
+                Vector4f sphere = new Vector4f(buf.getFloat(), buf.getFloat(), buf.getFloat(), buf.getFloat());
+
+                // Hand out views of the mapping itself, so the upload reads straight from the page cache.
+                FloatBuffer vertices = slice(buf, vertexCount * MeshData.FLOATS_PER_VERTEX * Float.BYTES).asFloatBuffer();
+                IntBuffer indices = slice(buf, indexCount * Integer.BYTES).asIntBuffer();
+                MeshData mesh = NATIVE_LE ? MeshData.wrap(vertices, indices) : copy(vertices, indices);
+                mesh.setBounds(meshMin, meshMax, sphere);
+                int lodCount = buf.getInt();
+                for (int lod = 0; lod < lodCount; lod++) {
+                    IntBuffer lodIndices = slice(buf, buf.getInt() * Integer.BYTES).asIntBuffer();
+                    mesh.addLod(NATIVE_LE ? lodIndices : memAllocInt(lodIndices.remaining()).put(lodIndices).flip());
+                }
+                int meshletCount = buf.getInt();
+                if (meshletCount > 0) {
+                    int[] ranges = new int[meshletCount * 2];
+                    float[] bounds = new float[meshletCount * Meshlets.FLOATS_PER_BOUNDS];
+                    for (int m = 0; m < meshletCount; m++) {
+                        ranges[m * 2] = buf.getInt();
+                        ranges[m * 2 + 1] = buf.getInt();
+                        for (int f = 0; f < Meshlets.FLOATS_PER_BOUNDS; f++) bounds[m * Meshlets.FLOATS_PER_BOUNDS + f] = buf.getFloat();
+                    }
+                    mesh.setMeshlets(new Meshlets(ranges, bounds, indexCount / 3));
+                }
+                data.addMesh(mesh);
+            }
+            data.setBounds(min, max);
+            return data;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring unreadable mesh cache " + file + ": " + e);
+            return null;
+        }
+    }
+
+    public static void write(String resourcePath, byte[] hash, ModelData data) {
+        if (!ENABLED) return;
+        long size = HEADER_BYTES;
+        for (MeshData mesh : data.getMeshes()) {
+            size += MESH_HEADER_BYTES + (long) mesh.getVertices().remaining() * Float.BYTES + (long) mesh.getIndexCount() * Integer.BYTES;
+            for (IntBuffer lod : mesh.getLods()) size += 4 + (long) lod.remaining() * Integer.BYTES;
+            if (mesh.getMeshlets() != null) size += (long) mesh.getMeshlets().count() * MESHLET_BYTES;
+        }
+        if (size > Integer.MAX_VALUE) return;
+
+        ByteBuffer buf = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC).putInt(VERSION).put(hash).putInt(data.getMeshes().size());
+        Vector3f min = data.getBoundsMin();
+        Vector3f max = data.getBoundsMax();
+        buf.putFloat(min.x).putFloat(min.y).putFloat(min.z);
+        buf.putFloat(max.x).putFloat(max.y).putFloat(max.z);
+        for (MeshData mesh : data.getMeshes()) {
+            buf.putInt(mesh.getVertexCount()).putInt(mesh.getIndexCount());
+            Vector3fc meshMin = mesh.getBoundsMin();
+            Vector3fc meshMax = mesh.getBoundsMax();
+            Vector4fc sphere = mesh.getSphere();
+            buf.putFloat(meshMin.x()).putFloat(meshMin.y()).putFloat(meshMin.z());
+            buf.putFloat(meshMax.x()).putFloat(meshMax.y()).putFloat(meshMax.z());
+            buf.putFloat(sphere.x()).putFloat(sphere.y()).putFloat(sphere.z()).putFloat(sphere.w());
+            buf.asFloatBuffer().put(mesh.getVertices().duplicate());
+            buf.position(buf.position() + mesh.getVertices().remaining() * Float.BYTES);
+            buf.asIntBuffer().put(mesh.getIndices().duplicate());
+            buf.position(buf.position() + mesh.getIndexCount() * Integer.BYTES);
+            buf.putInt(mesh.getLods().size());
+            for (IntBuffer lod : mesh.getLods()) {
+                buf.putInt(lod.remaining());
+                buf.asIntBuffer().put(lod.duplicate());
+                buf.position(buf.position() + lod.remaining() * Integer.BYTES);
+            }
+            Meshlets meshlets = mesh.getMeshlets();
+            buf.putInt(meshlets != null ? meshlets.count() : 0);
+            if (meshlets != null) {
+                int[] ranges = meshlets.ranges();
+                float[] bounds = meshlets.bounds();
+                for (int m = 0; m < meshlets.count(); m++) {
+                    buf.putInt(ranges[m * 2]).putInt(ranges[m * 2 + 1]);
+                    for (int f = 0; f < Meshlets.FLOATS_PER_BOUNDS; f++) buf.putFloat(bounds[m * Meshlets.FLOATS_PER_BOUNDS + f]);
+                }
+            }
+        }
+        buf.flip();
+
+        Path file = cacheFile(resourcePath);
+        Path tmp = null;
+        try {
+            Files.createDirectories(file.getParent());
+            // Write to a sibling and move into place so a crash never leaves a truncated cache behind.
+            tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while (buf.hasRemaining()) channel.write(buf);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Failed to write mesh cache " + file + ": " + e);
+            if (tmp != null) tmp.toFile().delete();
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buf, int bytes) {
+        ByteBuffer slice = buf.slice().limit(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        buf.position(buf.position() + bytes);
+        return slice;
+    }
+
+    // GL reads vertex data in native order, so big-endian hosts get a converted copy instead of the mapping.
+    private static MeshData copy(FloatBuffer vertices, IntBuffer indices) {
+        MeshData mesh = MeshData.allocate(vertices.remaining() / MeshData.FLOATS_PER_VERTEX, indices.remaining());
+        mesh.getVertices().put(vertices).flip();
+        mesh.getIndices().put(indices).flip();
+        return mesh;
+    }
+
+    private static Path cacheFile(String resourcePath) {
+        return CACHE_DIR.resolve(resourcePath.replaceAll("[^A-Za-z0-9._-]", "_") + ".mesh");
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.graphics;
+
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import org.joml.Vector4f;
+import org.joml.Vector4fc;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.system.MemoryUtil.*;
+
+// Interleaved vertices (position, normal, uv) and indices in native memory, ready for glBufferData.
+// Coarser LODs are extra index lists over the same vertices, finest first.
+public class MeshData {
+    public static final int FLOATS_PER_VERTEX = 8;
+
+    private final FloatBuffer vertices;
+    private final IntBuffer indices;
+    private final boolean owned;
+    private final Vector3f boundsMin = new Vector3f();
+    private final Vector3f boundsMax = new Vector3f();
+    // Bounding sphere: xyz = centre, w = radius.
+    private final Vector4f sphere = new Vector4f();
+    private final List<IntBuffer> lods = new ArrayList<>();
+    private Meshlets meshlets;
+
+    private MeshData(FloatBuffer vertices, IntBuffer indices, boolean owned) {
+        this.vertices = vertices;
+        this.indices = indices;
+        this.owned = owned;
+    }
+
+    // Buffers come from MemoryUtil and are released by free().
+    public static MeshData allocate(int vertexCount, int indexCount) {
+        return new MeshData(memAllocFloat(vertexCount * FLOATS_PER_VERTEX), memAllocInt(indexCount), true);
+    }
+
+    // Views into memory owned elsewhere (e.g. a mapped cache file); free() leaves them alone.
+    public static MeshData wrap(FloatBuffer vertices, IntBuffer indices) {
+        return new MeshData(vertices, indices, false);
+    }
+
+    public FloatBuffer getVertices() { return vertices; }
+    public IntBuffer getIndices() { return indices; }
+
+    public Vector3fc getBoundsMin() { return boundsMin; }
+    public Vector3fc getBoundsMax() { return boundsMax; }
+    public Vector4fc getSphere() { return sphere; }
+
+    // Sets the AABB and derives a sphere around its centre that encloses every vertex.
+    public void setBounds(Vector3fc min, Vector3fc max) {
+        float cx = (min.x() + max.x()) * 0.5f;
+        float cy = (min.y() + max.y()) * 0.5f;
+        float cz = (min.z() + max.z()) * 0.5f;
+        float maxDistSq = 0.0f;
+        int base = vertices.position();
+        int count = getVertexCount();
+        for (int i = 0; i < count; i++) {
+            int v = base + i * FLOATS_PER_VERTEX;
+            float dx = vertices.get(v) - cx;
+            float dy = vertices.get(v + 1) - cy;
+            float dz = vertices.get(v + 2) - cz;
+            maxDistSq = Math.max(maxDistSq, dx * dx + dy * dy + dz * dz);
+        }
+        setBounds(min, max, new Vector4f(cx, cy, cz, (float) Math.sqrt(maxDistSq)));
+    }
+
+    public void setBounds(Vector3fc min, Vector3fc max, Vector4fc sphere) {
+        this.boundsMin.set(min);
+        this.boundsMax.set(max);
+        this.sphere.set(sphere);
+    }
+
+    // Index list for the next coarser LOD; freed with this mesh when it is owned.
+    public void addLod(IntBuffer lodIndices) {
+        lods.add(lodIndices);
+    }
+
+    public List<IntBuffer> getLods() { return lods; }
+
+    public void setMeshlets(Meshlets meshlets) { this.meshlets = meshlets; }
+    public Meshlets getMeshlets() { return meshlets; }
+
+    public int getVertexCount() { return vertices.remaining() / FLOATS_PER_VERTEX; }
+    public int getIndexCount() { return indices.remaining(); }
+
+    public void free() {
+        if (!owned) return;
+        memFree(vertices);
+        memFree(indices);
+        for (IntBuffer lod : lods) memFree(lod);
+    }
+}
@@ -0,0 +1,343 @@
+package com.example.graphics;
+
+import java.util.Arrays;
+
+/**
+ * Pure-Java triangle and vertex reordering on plain arrays, for meshes that come from Assimp or
+ * from anywhere else. Vertices are interleaved {@link MeshData#FLOATS_PER_VERTEX} floats.
+ *
+ * <ul>
+ * <li>{@link #optimizeVertexCache} reorders triangles for the post-transform cache (Forsyth's
+ * linear-speed algorithm with an LRU cache of {@link #CACHE_SIZE}).</li>
+ * <li>{@link #optimizeOverdraw} then splits that order into clusters at cache restarts and sorts
+ * the clusters so outward-facing ones on the hull come first, which cuts overdraw while each
+ * cluster keeps its cache-friendly order.</li>
+ * <li>{@link #optimizeVertexFetch} renumbers vertices in first-use order so fetches walk memory
+ * linearly.</li>
+ * </ul>
+ *
+ * {@link #acmr} and {@link #atvr} measure the result against a FIFO cache of
+ * {@link #ANALYZE_CACHE_SIZE}, the usual model of fixed-function post-transform caches.
+ */
+public class MeshOptimizer {
+    public static final int CACHE_SIZE = 32;
+    public static final int ANALYZE_CACHE_SIZE = 16;
+
+    private static final float CACHE_DECAY_POWER = 1.5f;
+    private static final float LAST_TRIANGLE_SCORE = 0.75f;
+    private static final float VALENCE_BOOST_SCALE = 2.0f;
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+    // Scores per cache position and per remaining valence, precomputed.
+    private static final float[] CACHE_SCORES = new float[CACHE_SIZE];
+    private static final float[] VALENCE_SCORES = new float[64];
+
+    static {
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            CACHE_SCORES[i] = i < 3 ? LAST_TRIANGLE_SCORE
+                    : (float) Math.pow(1.0f - (i - 3) / (float) (CACHE_SIZE - 3), CACHE_DECAY_POWER);
+        }
+        for (int i = 1; i < VALENCE_SCORES.length; i++) {
+            VALENCE_SCORES[i] = VALENCE_BOOST_SCALE * (float) Math.pow(i, -VALENCE_BOOST_POWER);
+        }
+    }
+
+    // Reorders all triangles of indices in place.
+    public static void optimizeVertexCache(int[] indices, int vertexCount) {
+        optimizeVertexCache(indices, 0, indices.length, vertexCount);
+    }
+
+    /**
+     * Reorders the triangles in indices[offset, offset + count) in place, leaving the rest of the
+     * array alone; used to tidy each meshlet range without moving triangles between ranges.
+     */
+    public static void optimizeVertexCache(int[] indices, int offset, int count, int vertexCount) {
+        int triangleCount = count / 3;
+        if (triangleCount < 2) return;
+
+        // Work on dense local vertex ids, so small ranges of a large mesh stay cheap.
+        int[] unique = Arrays.copyOfRange(indices, offset, offset + triangleCount * 3);
+        Arrays.sort(unique);
+        int uniqueCount = 0;
+        for (int i = 0; i < unique.length; i++) {
+            if (i == 0 || unique[i] != unique[i - 1]) unique[uniqueCount++] = unique[i];
+        }
+        int[] tris = new int[triangleCount * 3];
+        for (int i = 0; i < tris.length; i++) tris[i] = Arrays.binarySearch(unique, 0, uniqueCount, indices[offset + i]);
+
+        int[] remaining = new int[uniqueCount];
+        for (int v : tris) remaining[v]++;
+        int[] adjacencyStart = new int[uniqueCount + 1];
+        for (int v = 0; v < uniqueCount; v++) adjacencyStart[v + 1] = adjacencyStart[v] + remaining[v];
+        int[] adjacency = new int[tris.length];
+        int[] fill = Arrays.copyOf(adjacencyStart, uniqueCount);
+        for (int i = 0; i < tris.length; i++) adjacency[fill[tris[i]]++] = i / 3;
+
+        float[] vertexScore = new float[uniqueCount];
+        for (int v = 0; v < uniqueCount; v++) vertexScore[v] = vertexScore(-1, remaining[v]);
+        float[] triangleScore = new float[triangleCount];
+        for (int t = 0; t < triangleCount; t++) {
+            triangleScore[t] = vertexScore[tris[t * 3]] + vertexScore[tris[t * 3 + 1]] + vertexScore[tris[t * 3 + 2]];
+        }
+        boolean[] emitted = new boolean[triangleCount];
+
+        int[] cache = new int[CACHE_SIZE + 3];
+        int[] nextCache = new int[CACHE_SIZE + 3];
+        int cacheCount = 0;
+        int[] out = new int[tris.length];
+        int written = 0;
+        int fallback = 0;
+        int best = bestTriangle(triangleScore, emitted, 0);
+
+        while (best >= 0) {
+            emitted[best] = true;
+            int a = tris[best * 3], b = tris[best * 3 + 1], c = tris[best * 3 + 2];
+            out[written++] = a;
+            out[written++] = b;
+            out[written++] = c;
+
+            // New LRU order: the triangle's vertices in front, then the previous contents.
+            int nextCount = 0;
+            nextCache[nextCount++] = a;
+            if (b != a) nextCache[nextCount++] = b;
+            if (c != a && c != b) nextCache[nextCount++] = c;
+            for (int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                if (v != a && v != b && v != c) nextCache[nextCount++] = v;
+            }
+            for (int k = 0; k < 3; k++) {
+                // Once per corner, so degenerate triangles drop every adjacency entry they own.
+                int v = tris[best * 3 + k];
+                remaining[v]--;
+                // Drop the triangle from the vertex's live list so scores only count pending ones.
+                for (int j = adjacencyStart[v]; j < adjacencyStart[v] + remaining[v] + 1; j++) {
+                    if (adjacency[j] == best) {
+                        adjacency[j] = adjacency[adjacencyStart[v] + remaining[v]];
+                        break;
+                    }
+                }
+            }
+            int[] swap = cache;
+            cache = nextCache;
+            nextCache = swap;
+            cacheCount = nextCount;
+
+            // Rescore everything that was or is in the cache and pick the best triangle among its neighbours.
+            best = -1;
+            float bestScore = -1.0f;
+            for (int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                int position = i < CACHE_SIZE ? i : -1;
+                float score = vertexScore(position, remaining[v]);
+                float delta = score - vertexScore[v];
+                vertexScore[v] = score;
+                for (int j = adjacencyStart[v]; j < adjacencyStart[v] + remaining[v]; j++) {
+                    int t = adjacency[j];
+                    triangleScore[t] += delta;
+                    if (triangleScore[t] > bestScore) {
+                        bestScore = triangleScore[t];
+                        best = t;
+                    }
+                }
+            }
+            if (cacheCount > CACHE_SIZE) cacheCount = CACHE_SIZE;
+            if (best < 0) {
+                while (fallback < triangleCount && emitted[fallback]) fallback++;
+                best = bestTriangle(triangleScore, emitted, fallback);
+            }
+        }
+
+        for (int i = 0; i < out.length; i++) indices[offset + i] = unique[out[i]];
+    }
+
+    private static float vertexScore(int cachePosition, int remaining) {
+        if (remaining == 0) return -1.0f;
+        float score = cachePosition >= 0 ? CACHE_SCORES[cachePosition] : 0.0f;
+        return score + VALENCE_SCORES[Math.min(remaining, VALENCE_SCORES.length - 1)];
+    }
+
+    // Highest-scoring pending triangle from start on; only hit after a cache restart.
+    private static int bestTriangle(float[] triangleScore, boolean[] emitted, int start) {
+        int best = -1;
+        float bestScore = -Float.MAX_VALUE;
+        for (int t = start; t < emitted.length; t++) {
+            if (!emitted[t] && triangleScore[t] > bestScore) {
+                bestScore = triangleScore[t];
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Sorts cache-optimized triangles to reduce overdraw. The order is split wherever a
+     * triangle misses the cache on all three vertices; clusters facing outward from the mesh
+     * centroid (largest dot of their offset and average normal) go first, so they occlude the
+     * rest under a depth test. Cluster contents keep their order, so cache efficiency barely moves.
+     */
+    public static void optimizeOverdraw(int[] indices, float[] vertices) {
+        int triangleCount = indices.length / 3;
+        if (triangleCount < 2) return;
+
+        int[] clusterStart = new int[triangleCount + 1];
+        int clusterCount = 0;
+        FifoCache cache = new FifoCache(ANALYZE_CACHE_SIZE, vertices.length / MeshData.FLOATS_PER_VERTEX);
+        for (int t = 0; t < triangleCount; t++) {
+            int misses = cache.access(indices[t * 3]) + cache.access(indices[t * 3 + 1]) + cache.access(indices[t * 3 + 2]);
+            if (t == 0 || misses == 3) clusterStart[clusterCount++] = t;
+        }
+        clusterStart[clusterCount] = triangleCount;
+        if (clusterCount < 2) return;
+
+        double mx = 0, my = 0, mz = 0, totalArea = 0;
+        float[] centroid = new float[clusterCount * 3];
+        float[] normal = new float[clusterCount * 3];
+        float[] n = new float[4];
+        for (int cl = 0; cl < clusterCount; cl++) {
+            double cx = 0, cy = 0, cz = 0, area = 0;
+            for (int t = clusterStart[cl]; t < clusterStart[cl + 1]; t++) {
+                int a = indices[t * 3] * MeshData.FLOATS_PER_VERTEX;
+                int b = indices[t * 3 + 1] * MeshData.FLOATS_PER_VERTEX;
+                int c = indices[t * 3 + 2] * MeshData.FLOATS_PER_VERTEX;
+                areaNormal(vertices, a, b, c, n);
+                float triangleArea = n[3];
+                cx += (vertices[a] + vertices[b] + vertices[c]) / 3.0 * triangleArea;
+                cy += (vertices[a + 1] + vertices[b + 1] + vertices[c + 1]) / 3.0 * triangleArea;
+                cz += (vertices[a + 2] + vertices[b + 2] + vertices[c + 2]) / 3.0 * triangleArea;
+                normal[cl * 3] += n[0] * triangleArea;
+                normal[cl * 3 + 1] += n[1] * triangleArea;
+                normal[cl * 3 + 2] += n[2] * triangleArea;
+                area += triangleArea;
+            }
+            mx += cx;
+            my += cy;
+            mz += cz;
+            totalArea += area;
+            double inv = area > 0 ? 1.0 / area : 0.0;
+            centroid[cl * 3] = (float) (cx * inv);
+            centroid[cl * 3 + 1] = (float) (cy * inv);
+            centroid[cl * 3 + 2] = (float) (cz * inv);
+        }
+        if (totalArea <= 0) return;
+        mx /= totalArea;
+        my /= totalArea;
+        mz /= totalArea;
+
+        // Sort by descending key; the cluster index in the low bits keeps the sort stable.
+        long[] order = new long[clusterCount];
+        for (int cl = 0; cl < clusterCount; cl++) {
+            float nx = normal[cl * 3], ny = normal[cl * 3 + 1], nz = normal[cl * 3 + 2];
+            float len = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            float key = len > 0 ? ((centroid[cl * 3] - (float) mx) * nx + (centroid[cl * 3 + 1] - (float) my) * ny
+                    + (centroid[cl * 3 + 2] - (float) mz) * nz) / len : 0.0f;
+            order[cl] = ((long) sortableBits(-key) << 32) | cl;
+        }
+        Arrays.sort(order);
+
+        int[] source = indices.clone();
+        int written = 0;
+        for (long entry : order) {
+            int cl = (int) entry;
+            int from = clusterStart[cl] * 3;
+            int length = (clusterStart[cl + 1] - clusterStart[cl]) * 3;
+            System.arraycopy(source, from, indices, written, length);
+            written += length;
+        }
+    }
+
+    // Int that orders like the float value when compared as a signed int.
+    private static int sortableBits(float value) {
+        int bits = Float.floatToIntBits(value);
+        return bits >= 0 ? bits : bits ^ 0x7FFFFFFF;
+    }
+
+    // Unit normal into n[0..2] and triangle area into n[3].
+    private static void areaNormal(float[] vertices, int a, int b, int c, float[] n) {
+        float ex = vertices[b] - vertices[a], ey = vertices[b + 1] - vertices[a + 1], ez = vertices[b + 2] - vertices[a + 2];
+        float fx = vertices[c] - vertices[a], fy = vertices[c + 1] - vertices[a + 1], fz = vertices[c + 2] - vertices[a + 2];
+        float nx = ey * fz - ez * fy, ny = ez * fx - ex * fz, nz = ex * fy - ey * fx;
+        float len = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (len > 0) {
+            n[0] = nx / len;
+            n[1] = ny / len;
+            n[2] = nz / len;
+        } else {
+            n[0] = n[1] = n[2] = 0.0f;
+        }
+        n[3] = len * 0.5f;
+    }
+
+    /**
+     * Renumbers vertices in order of first use by indices, permuting vertices to match and
+     * rewriting indices plus every extra index list (e.g. LODs) over the same vertices.
+     * Unreferenced vertices move to the end. Returns the number of referenced vertices.
+     */
+    public static int optimizeVertexFetch(float[] vertices, int[] indices, int[]... extraIndices) {
+        int vertexCount = vertices.length / MeshData.FLOATS_PER_VERTEX;
+        int[] remap = new int[vertexCount];
+        Arrays.fill(remap, -1);
+        int next = 0;
+        for (int index : indices) {
+            if (remap[index] < 0) remap[index] = next++;
+        }
+        int referenced = next;
+        for (int v = 0; v < vertexCount; v++) {
+            if (remap[v] < 0) remap[v] = next++;
+        }
+
+        float[] source = vertices.clone();
+        for (int v = 0; v < vertexCount; v++) {
+            System.arraycopy(source, v * MeshData.FLOATS_PER_VERTEX, vertices, remap[v] * MeshData.FLOATS_PER_VERTEX, MeshData.FLOATS_PER_VERTEX);
+        }
+        for (int i = 0; i < indices.length; i++) indices[i] = remap[indices[i]];
+        for (int[] list : extraIndices) {
+            for (int i = 0; i < list.length; i++) list[i] = remap[list[i]];
+        }
+        return referenced;
+    }
+
+    // Average cache miss ratio: transformed vertices per triangle; 0.5 is the ideal for large grids, 3 the worst.
+    public static float acmr(int[] indices, int vertexCount) {
+        return indices.length < 3 ? 0.0f : misses(indices, vertexCount) / (float) (indices.length / 3);
+    }
+
+    // Average transform to vertex ratio: transformed vertices per referenced vertex; 1.0 is ideal.
+    public static float atvr(int[] indices, int vertexCount) {
+        boolean[] seen = new boolean[vertexCount];
+        int unique = 0;
+        for (int index : indices) {
+            if (!seen[index]) {
+                seen[index] = true;
+                unique++;
+            }
+        }
+        return unique == 0 ? 0.0f : misses(indices, vertexCount) / (float) unique;
+    }
+
+    private static int misses(int[] indices, int vertexCount) {
+        FifoCache cache = new FifoCache(ANALYZE_CACHE_SIZE, vertexCount);
+        int misses = 0;
+        for (int index : indices) misses += cache.access(index);
+        return misses;
+    }
+
+    // A vertex stays cached until size newer misses have entered after it.
+    private static final class FifoCache {
+        private final int size;
+        // Miss counter value when each vertex last entered the cache; old enough means evicted.
+        private final int[] insertedAt;
+        private int clock;
+
+        FifoCache(int size, int vertexCount) {
+            this.size = size;
+            insertedAt = new int[vertexCount];
+            Arrays.fill(insertedAt, Integer.MIN_VALUE / 2);
+        }
+
+        // 1 on a miss (the vertex is transformed and enters the cache), 0 on a hit.
+        int access(int vertex) {
+            if (clock - insertedAt[vertex] < size) return 0;
+            insertedAt[vertex] = clock++;
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.example.graphics;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.lwjgl.system.MemoryUtil.memAllocInt;
+
+/**
+ * Quadric error metric simplification producing LOD index buffers over an unchanged vertex
+ * buffer, so every level of a mesh shares the same vertices on the GPU.
+ *
+ * <p>Collapses run on welded positions (vertices that differ only in normal or uv share a
+ * position), always onto the existing endpoint with the lower error. A collapsed corner is
+ * redirected to the vertex at the target position whose normal and uv are closest, which keeps
+ * seams plausible without inventing new vertices. Each pass sorts candidate edges by cost and
+ * collapses the cheapest ones whose neighbourhoods don't overlap, rejecting collapses that
+ * would flip a triangle; boundary edges carry extra quadrics so open borders hold their shape.
+ */
+public class MeshSimplifier {
+    private static final float BOUNDARY_WEIGHT = 10.0f;
+    private static final float MIN_NORMAL_DOT = 0.2f;
+
+    private final FloatBuffer vertices;
+    private final int base;
+    private final int vertexCount;
+    // Welded position id per vertex, and the vertices of each position (CSR).
+    private final int[] positionOf;
+    private final int[] positionVertexStart;
+    private final int[] positionVertices;
+    private final int positionCount;
+
+    public MeshSimplifier(FloatBuffer vertices) {
+        this.vertices = vertices;
+        this.base = vertices.position();
+        this.vertexCount = vertices.remaining() / MeshData.FLOATS_PER_VERTEX;
+        this.positionOf = new int[vertexCount];
+
+        Map<Position, Integer> ids = new HashMap<>();
+        for (int v = 0; v < vertexCount; v++) {
+            Position key = new Position(Float.floatToIntBits(px(v)), Float.floatToIntBits(py(v)), Float.floatToIntBits(pz(v)));
+            Integer id = ids.putIfAbsent(key, ids.size());
+            positionOf[v] = id != null ? id : ids.size() - 1;
+        }
+        positionCount = ids.size();
+
+        positionVertexStart = new int[positionCount + 1];
+        for (int v = 0; v < vertexCount; v++) positionVertexStart[positionOf[v] + 1]++;
+        for (int p = 0; p < positionCount; p++) positionVertexStart[p + 1] += positionVertexStart[p];
+        positionVertices = new int[vertexCount];
+        int[] fill = Arrays.copyOf(positionVertexStart, positionCount);
+        for (int v = 0; v < vertexCount; v++) positionVertices[fill[positionOf[v]]++] = v;
+    }
+
+    private record Position(int x, int y, int z) {}
+
+    /**
+     * Simplifies towards targetIndexCount indices (a multiple of 3), stopping early once the
+     * cheapest remaining collapse would move the surface by more than maxError (object-space
+     * units). Returns a new MemoryUtil buffer the caller must free.
+     */
+    public IntBuffer simplify(IntBuffer indices, int targetIndexCount, float maxError) {
+        int[] tris = new int[indices.remaining()];
+        indices.duplicate().get(tris);
+        int triangleCount = tris.length / 3;
+        int targetTriangles = Math.max(1, targetIndexCount / 3);
+        float maxCost = maxError * maxError;
+
+        double[] quadrics = computeQuadrics(tris, triangleCount);
+        int[] positionRemap = new int[positionCount];
+        int[] vertexRemap = new int[vertexCount];
+
+        while (triangleCount > targetTriangles) {
+            for (int p = 0; p < positionCount; p++) positionRemap[p] = p;
+            int collapsed = collapsePass(tris, triangleCount, targetTriangles, quadrics, positionRemap, maxCost);
+            if (collapsed == 0) break;
+            Arrays.fill(vertexRemap, -1);
+            triangleCount = applyRemap(tris, triangleCount, positionRemap, vertexRemap);
+        }
+
+        IntBuffer out = memAllocInt(triangleCount * 3);
+        out.put(tris, 0, triangleCount * 3).flip();
+        return out;
+    }
+
+    private int collapsePass(int[] tris, int triangleCount, int targetTriangles, double[] quadrics, int[] positionRemap, float maxCost) {
+        // Triangles around each position (CSR), for flip checks and locking.
+        int[] adjStart = new int[positionCount + 1];
+        for (int i = 0; i < triangleCount * 3; i++) adjStart[positionOf[tris[i]] + 1]++;
+        for (int p = 0; p < positionCount; p++) adjStart[p + 1] += adjStart[p];
+        int[] adj = new int[triangleCount * 3];
+        int[] fill = Arrays.copyOf(adjStart, positionCount);
+        for (int t = 0; t < triangleCount; t++) {
+            for (int c = 0; c < 3; c++) adj[fill[positionOf[tris[t * 3 + c]]]++] = t;
+        }
+
+        // Unique position edges, each with its cheaper collapse direction.
+        Set<Long> seen = new HashSet<>(triangleCount * 2);
+        int[] edgeFrom = new int[triangleCount * 3];
+        int[] edgeTo = new int[triangleCount * 3];
+        long[] order = new long[triangleCount * 3];
+        int edgeCount = 0;
+        for (int t = 0; t < triangleCount; t++) {
+            for (int c = 0; c < 3; c++) {
+                int a = positionOf[tris[t * 3 + c]];
+                int b = positionOf[tris[t * 3 + (c + 1) % 3]];
+                if (a == b) continue;
+                long key = a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+                if (!seen.add(key)) continue;
+                float costAB = cost(quadrics, a, b);
+                float costBA = cost(quadrics, b, a);
+                boolean ab = costAB <= costBA;
+                float cost = Math.max(0.0f, ab ? costAB : costBA);
+                edgeFrom[edgeCount] = ab ? a : b;
+                edgeTo[edgeCount] = ab ? b : a;
+                // Non-negative float bits sort like the values; the low half carries the edge index.
+                order[edgeCount] = ((long) Float.floatToIntBits(cost) << 32) | edgeCount;
+                edgeCount++;
+            }
+        }
+        Arrays.sort(order, 0, edgeCount);
+
+        boolean[] locked = new boolean[positionCount];
+        int collapsed = 0;
+        int remaining = triangleCount;
+        for (int e = 0; e < edgeCount && remaining > targetTriangles; e++) {
+            float cost = Float.intBitsToFloat((int) (order[e] >>> 32));
+            if (cost > maxCost) break;
+            int edge = (int) order[e];
+            int from = edgeFrom[edge];
+            int to = edgeTo[edge];
+            if (locked[from] || locked[to]) continue;
+            if (flips(tris, adj, adjStart, from, to)) continue;
+
+            positionRemap[from] = to;
+            for (int q = 0; q < 10; q++) quadrics[to * 10 + q] += quadrics[from * 10 + q];
+            for (int i = adjStart[from]; i < adjStart[from + 1]; i++) {
+                int t = adj[i];
+                boolean hasTo = false;
+                for (int c = 0; c < 3; c++) {
+                    int p = positionOf[tris[t * 3 + c]];
+                    locked[p] = true;
+                    if (p == to) hasTo = true;
+                }
+                if (hasTo) remaining--;
+            }
+            collapsed++;
+        }
+        return collapsed;
+    }
+
+    // True if moving position from onto to would turn any surviving triangle around from over.
+    private boolean flips(int[] tris, int[] adj, int[] adjStart, int from, int to) {
+        float tx = px(firstOf(to)), ty = py(firstOf(to)), tz = pz(firstOf(to));
+        for (int i = adjStart[from]; i < adjStart[from + 1]; i++) {
+            int t = adj[i];
+            int a = tris[t * 3], b = tris[t * 3 + 1], c = tris[t * 3 + 2];
+            int pa = positionOf[a], pb = positionOf[b], pc = positionOf[c];
+            if (pa == to || pb == to || pc == to) continue; // collapses away
+            float[] before = normal(px(a), py(a), pz(a), px(b), py(b), pz(b), px(c), py(c), pz(c));
+            float ax = pa == from ? tx : px(a), ay = pa == from ? ty : py(a), az = pa == from ? tz : pz(a);
+            float bx = pb == from ? tx : px(b), by = pb == from ? ty : py(b), bz = pb == from ? tz : pz(b);
+            float cx = pc == from ? tx : px(c), cy = pc == from ? ty : py(c), cz = pc == from ? tz : pz(c);
+            float[] after = normal(ax, ay, az, bx, by, bz, cx, cy, cz);
+            float lenBefore = (float) Math.sqrt(before[0] * before[0] + before[1] * before[1] + before[2] * before[2]);
+            float lenAfter = (float) Math.sqrt(after[0] * after[0] + after[1] * after[1] + after[2] * after[2]);
+            if (lenAfter == 0.0f) return true;
+            if (lenBefore == 0.0f) continue;
+            float dot = (before[0] * after[0] + before[1] * after[1] + before[2] * after[2]) / (lenBefore * lenAfter);
+            if (dot < MIN_NORMAL_DOT) return true;
+        }
+        return false;
+    }
+
+    // Rewrites corners of collapsed positions, then drops triangles that became degenerate.
+    private int applyRemap(int[] tris, int triangleCount, int[] positionRemap, int[] vertexRemap) {
+        int out = 0;
+        for (int t = 0; t < triangleCount; t++) {
+            int a = remapVertex(tris[t * 3], positionRemap, vertexRemap);
+            int b = remapVertex(tris[t * 3 + 1], positionRemap, vertexRemap);
+            int c = remapVertex(tris[t * 3 + 2], positionRemap, vertexRemap);
+            int pa = positionOf[a], pb = positionOf[b], pc = positionOf[c];
+            if (pa == pb || pb == pc || pa == pc) continue;
+            tris[out * 3] = a;
+            tris[out * 3 + 1] = b;
+            tris[out * 3 + 2] = c;
+            out++;
+        }
+        return out;
+    }
+
+    private int remapVertex(int v, int[] positionRemap, int[] vertexRemap) {
+        int target = positionRemap[positionOf[v]];
+        if (target == positionOf[v]) return v;
+        if (vertexRemap[v] >= 0) return vertexRemap[v];
+        int best = -1;
+        float bestDistance = Float.POSITIVE_INFINITY;
+        for (int i = positionVertexStart[target]; i < positionVertexStart[target + 1]; i++) {
+            int candidate = positionVertices[i];
+            float d = attributeDistance(v, candidate);
+            if (d < bestDistance) {
+                bestDistance = d;
+                best = candidate;
+            }
+        }
+        vertexRemap[v] = best;
+        return best;
+    }
+
+    private float attributeDistance(int a, int b) {
+        int oa = base + a * MeshData.FLOATS_PER_VERTEX;
+        int ob = base + b * MeshData.FLOATS_PER_VERTEX;
+        float d = 0.0f;
+        for (int k = 3; k < MeshData.FLOATS_PER_VERTEX; k++) {
+            float diff = vertices.get(oa + k) - vertices.get(ob + k);
+            d += diff * diff;
+        }
+        return d;
+    }
+
+    // Symmetric 4x4 quadric per position, stored as its 10 upper-triangle entries.
+    private double[] computeQuadrics(int[] tris, int triangleCount) {
+        double[] q = new double[positionCount * 10];
+        Map<Long, Integer> edgeUse = new HashMap<>(triangleCount * 2);
+        for (int t = 0; t < triangleCount; t++) {
+            for (int c = 0; c < 3; c++) {
+                int a = positionOf[tris[t * 3 + c]];
+                int b = positionOf[tris[t * 3 + (c + 1) % 3]];
+                long key = a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+                edgeUse.merge(key, 1, Integer::sum);
+            }
+        }
+        for (int t = 0; t < triangleCount; t++) {
+            int a = tris[t * 3], b = tris[t * 3 + 1], c = tris[t * 3 + 2];
+            float[] n = normal(px(a), py(a), pz(a), px(b), py(b), pz(b), px(c), py(c), pz(c));
+            double len = Math.sqrt(n[0] * n[0] + n[1] * n[1] + n[2] * n[2]);
+            if (len == 0.0) continue;
+            // Area-weighted plane: |n| is twice the triangle area.
+            double area = len * 0.5;
+            double nx = n[0] / len, ny = n[1] / len, nz = n[2] / len;
+            double d = -(nx * px(a) + ny * py(a) + nz * pz(a));
+            for (int corner = 0; corner < 3; corner++) {
+                addPlane(q, positionOf[tris[t * 3 + corner]], nx, ny, nz, d, area);
+            }
+
+            // Border edges get a plane through the edge, perpendicular to the face.
+            for (int e = 0; e < 3; e++) {
+                int v0 = tris[t * 3 + e];
+                int v1 = tris[t * 3 + (e + 1) % 3];
+                int p0 = positionOf[v0], p1 = positionOf[v1];
+                long key = p0 < p1 ? ((long) p0 << 32) | p1 : ((long) p1 << 32) | p0;
+                if (edgeUse.get(key) != 1) continue;
+                double ex = px(v1) - px(v0), ey = py(v1) - py(v0), ez = pz(v1) - pz(v0);
+                double bx = ey * nz - ez * ny, by = ez * nx - ex * nz, bz = ex * ny - ey * nx;
+                double bl = Math.sqrt(bx * bx + by * by + bz * bz);
+                if (bl == 0.0) continue;
+                bx /= bl; by /= bl; bz /= bl;
+                double bd = -(bx * px(v0) + by * py(v0) + bz * pz(v0));
+                double weight = BOUNDARY_WEIGHT * (ex * ex + ey * ey + ez * ez);
+                addPlane(q, p0, bx, by, bz, bd, weight);
+                addPlane(q, p1, bx, by, bz, bd, weight);
+            }
+        }
+        return q;
+    }
+
+    private static void addPlane(double[] q, int p, double a, double b, double c, double d, double w) {
+        int o = p * 10;
+        q[o] += w * a * a;     q[o + 1] += w * a * b; q[o + 2] += w * a * c; q[o + 3] += w * a * d;
+        q[o + 4] += w * b * b; q[o + 5] += w * b * c; q[o + 6] += w * b * d;
+        q[o + 7] += w * c * c; q[o + 8] += w * c * d;
+        q[o + 9] += w * d * d;
+    }
+
+    // Error of moving position from onto position to, under the combined quadric.
+    private float cost(double[] q, int from, int to) {
+        int v = firstOf(to);
+        double x = px(v), y = py(v), z = pz(v);
+        int a = from * 10, b = to * 10;
+        double q0 = q[a] + q[b], q1 = q[a + 1] + q[b + 1], q2 = q[a + 2] + q[b + 2], q3 = q[a + 3] + q[b + 3];
+        double q4 = q[a + 4] + q[b + 4], q5 = q[a + 5] + q[b + 5], q6 = q[a + 6] + q[b + 6];
+        double q7 = q[a + 7] + q[b + 7], q8 = q[a + 8] + q[b + 8], q9 = q[a + 9] + q[b + 9];
+        double e = q0 * x * x + 2 * q1 * x * y + 2 * q2 * x * z + 2 * q3 * x
+                + q4 * y * y + 2 * q5 * y * z + 2 * q6 * y
+                + q7 * z * z + 2 * q8 * z
+                + q9;
+        // Quadrics are area weighted; normalise so the cost reads as a squared distance.
+        double weight = q0 + q4 + q7;
+        return (float) (weight > 0.0 ? e / weight : e);
+    }
+
+    private static float[] normal(float ax, float ay, float az, float bx, float by, float bz, float cx, float cy, float cz) {
+        float ux = bx - ax, uy = by - ay, uz = bz - az;
+        float vx = cx - ax, vy = cy - ay, vz = cz - az;
+        return new float[]{uy * vz - uz * vy, uz * vx - ux * vz, ux * vy - uy * vx};
+    }
+
+    private int firstOf(int position) {
+        return positionVertices[positionVertexStart[position]];
+    }
+
+    private float px(int v) { return vertices.get(base + v * MeshData.FLOATS_PER_VERTEX); }
+    private float py(int v) { return vertices.get(base + v * MeshData.FLOATS_PER_VERTEX + 1); }
+    private float pz(int v) { return vertices.get(base + v * MeshData.FLOATS_PER_VERTEX + 2); }
+}
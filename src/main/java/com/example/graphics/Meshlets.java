@@ -0,0 +1,241 @@
+package com.example.graphics;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Splits a mesh's full-detail index list into clusters of consecutive triangles (at most
+ * {@link #MAX_VERTICES} vertices and {@link #MAX_TRIANGLES} triangles each) and records a
+ * bounding sphere and normal cone per cluster, so the CPU can drop clusters that are off screen
+ * or entirely back-facing. Clusters grow greedily across shared vertices, and the index buffer is
+ * reordered so each one is a contiguous range.
+ */
+public class Meshlets {
+    public static final int MAX_VERTICES = 64;
+    public static final int MAX_TRIANGLES = 124;
+    // Once a cluster has a few triangles it stops growing into ones facing further than this from
+    // its average normal, which keeps cones narrow enough to be cullable.
+    private static final float MIN_CONE_DOT = 0.7f;
+    private static final int MIN_CONE_TRIANGLES = 16;
+    static final int FLOATS_PER_BOUNDS = 8;
+
+    private final int count;
+    // First index and index count per cluster, relative to the start of LOD 0.
+    private final int[] ranges;
+    // Per cluster: sphere xyz, radius, cone axis xyz, cone cutoff.
+    private final float[] bounds;
+    private final int triangleCount;
+
+    private record Position(int x, int y, int z) {}
+
+    // ranges and bounds as laid out above, e.g. read back from the mesh cache.
+    Meshlets(int[] ranges, float[] bounds, int triangleCount) {
+        this.count = ranges.length / 2;
+        this.ranges = ranges;
+        this.bounds = bounds;
+        this.triangleCount = triangleCount;
+    }
+
+    /**
+     * Groups the triangles of indices into clusters and reorders the buffer in place so each
+     * cluster is a contiguous run, which keeps every cluster drawable as one index range.
+     */
+    public static Meshlets build(FloatBuffer vertices, IntBuffer indices) {
+        int vbase = vertices.position();
+        int ibase = indices.position();
+        int triangles = indices.remaining() / 3;
+        int vertexCount = vertices.remaining() / MeshData.FLOATS_PER_VERTEX;
+        int[] tris = new int[triangles * 3];
+        indices.duplicate().get(tris);
+
+        // Triangles around each welded position (CSR), so clusters also grow across uv and normal seams.
+        int[] positionOf = new int[vertexCount];
+        Map<Position, Integer> ids = new HashMap<>();
+        for (int v = 0; v < vertexCount; v++) {
+            int p = vbase + v * MeshData.FLOATS_PER_VERTEX;
+            Position key = new Position(Float.floatToIntBits(vertices.get(p)), Float.floatToIntBits(vertices.get(p + 1)), Float.floatToIntBits(vertices.get(p + 2)));
+            Integer id = ids.putIfAbsent(key, ids.size());
+            positionOf[v] = id != null ? id : ids.size() - 1;
+        }
+        int positionCount = ids.size();
+        int[] adjacencyStart = new int[positionCount + 1];
+        for (int index : tris) adjacencyStart[positionOf[index] + 1]++;
+        for (int p = 0; p < positionCount; p++) adjacencyStart[p + 1] += adjacencyStart[p];
+        int[] adjacency = new int[tris.length];
+        int[] fill = Arrays.copyOf(adjacencyStart, positionCount);
+        for (int i = 0; i < tris.length; i++) adjacency[fill[positionOf[tris[i]]]++] = i / 3;
+
+        float[] normals = new float[triangles * 3];
+        boolean[] hasNormal = new boolean[triangles];
+        float[] n = new float[3];
+        for (int t = 0; t < triangles; t++) {
+            hasNormal[t] = triangleNormal(vertices, vbase, tris[t * 3], tris[t * 3 + 1], tris[t * 3 + 2], n);
+            normals[t * 3] = n[0];
+            normals[t * 3 + 1] = n[1];
+            normals[t * 3 + 2] = n[2];
+        }
+
+        boolean[] used = new boolean[triangles];
+        // stamp[v] == current cluster id marks v as part of it.
+        int[] stamp = new int[vertexCount];
+        Arrays.fill(stamp, -1);
+        int[] clusterVertices = new int[MAX_VERTICES];
+        int[] ranges = new int[64];
+        int count = 0;
+        int written = 0;
+        int seed = 0;
+
+        while (written < triangles * 3) {
+            while (used[seed]) seed++;
+            int vertexTotal = 0;
+            int clusterTriangles = 0;
+            float ax = 0, ay = 0, az = 0;
+            int first = written;
+            int next = seed;
+            while (next >= 0) {
+                used[next] = true;
+                for (int k = 0; k < 3; k++) {
+                    int v = tris[next * 3 + k];
+                    if (stamp[v] != count) {
+                        stamp[v] = count;
+                        clusterVertices[vertexTotal++] = v;
+                    }
+                    indices.put(ibase + written++, v);
+                }
+                if (hasNormal[next]) {
+                    ax += normals[next * 3];
+                    ay += normals[next * 3 + 1];
+                    az += normals[next * 3 + 2];
+                }
+                if (++clusterTriangles == MAX_TRIANGLES) break;
+
+                // Grow through shared vertices: fewest new vertices first, then the normal
+                // closest to the cluster's average.
+                float axisLen = (float) Math.sqrt(ax * ax + ay * ay + az * az);
+                float bestScore = Float.POSITIVE_INFINITY;
+                next = -1;
+                for (int i = 0; i < vertexTotal; i++) {
+                    int p = positionOf[clusterVertices[i]];
+                    for (int a = adjacencyStart[p]; a < adjacencyStart[p + 1]; a++) {
+                        int t = adjacency[a];
+                        if (used[t]) continue;
+                        int added = 0;
+                        for (int k = 0; k < 3; k++) {
+                            int w = tris[t * 3 + k];
+                            if (stamp[w] != count && (k < 1 || w != tris[t * 3]) && (k < 2 || w != tris[t * 3 + 1])) added++;
+                        }
+                        if (vertexTotal + added > MAX_VERTICES) continue;
+                        float dot = 1.0f;
+                        if (hasNormal[t] && axisLen > 0) {
+                            dot = (ax * normals[t * 3] + ay * normals[t * 3 + 1] + az * normals[t * 3 + 2]) / axisLen;
+                        }
+                        if (clusterTriangles >= MIN_CONE_TRIANGLES && dot < MIN_CONE_DOT) continue;
+                        float score = added + (1.0f - dot);
+                        if (score < bestScore) {
+                            bestScore = score;
+                            next = t;
+                        }
+                    }
+                }
+            }
+            if (count * 2 + 2 > ranges.length) ranges = Arrays.copyOf(ranges, ranges.length * 2);
+            ranges[count * 2] = first;
+            ranges[count * 2 + 1] = written - first;
+            count++;
+        }
+
+        float[] bounds = new float[count * FLOATS_PER_BOUNDS];
+        for (int m = 0; m < count; m++) {
+            computeBounds(vertices, vbase, indices, ibase + ranges[m * 2], ranges[m * 2 + 1], bounds, m * FLOATS_PER_BOUNDS);
+        }
+        return new Meshlets(Arrays.copyOf(ranges, count * 2), bounds, triangles);
+    }
+
+    private static void computeBounds(FloatBuffer vertices, int vbase, IntBuffer indices, int first, int indexCount, float[] out, int o) {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < indexCount; i++) {
+            int v = vbase + indices.get(first + i) * MeshData.FLOATS_PER_VERTEX;
+            float x = vertices.get(v), y = vertices.get(v + 1), z = vertices.get(v + 2);
+            minX = Math.min(minX, x); minY = Math.min(minY, y); minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x); maxY = Math.max(maxY, y); maxZ = Math.max(maxZ, z);
+        }
+        float cx = (minX + maxX) * 0.5f, cy = (minY + maxY) * 0.5f, cz = (minZ + maxZ) * 0.5f;
+        float radiusSq = 0;
+        for (int i = 0; i < indexCount; i++) {
+            int v = vbase + indices.get(first + i) * MeshData.FLOATS_PER_VERTEX;
+            float dx = vertices.get(v) - cx, dy = vertices.get(v + 1) - cy, dz = vertices.get(v + 2) - cz;
+            radiusSq = Math.max(radiusSq, dx * dx + dy * dy + dz * dz);
+        }
+
+        float[] n = new float[3];
+        float ax = 0, ay = 0, az = 0;
+        for (int i = 0; i < indexCount; i += 3) {
+            if (!triangleNormal(vertices, vbase, indices.get(first + i), indices.get(first + i + 1), indices.get(first + i + 2), n)) continue;
+            ax += n[0];
+            ay += n[1];
+            az += n[2];
+        }
+        float len = (float) Math.sqrt(ax * ax + ay * ay + az * az);
+        float cutoff = 1.0f;
+        if (len > 0) {
+            ax /= len;
+            ay /= len;
+            az /= len;
+            float minDot = 1.0f;
+            for (int i = 0; i < indexCount; i += 3) {
+                if (!triangleNormal(vertices, vbase, indices.get(first + i), indices.get(first + i + 1), indices.get(first + i + 2), n)) continue;
+                minDot = Math.min(minDot, ax * n[0] + ay * n[1] + az * n[2]);
+            }
+            // Cone half-angle acos(minDot); the cluster is back-facing from anywhere within
+            // 90 degrees minus that of the axis. Cones of 90 degrees or wider never cull.
+            if (minDot > 0) cutoff = (float) Math.sqrt(1.0 - minDot * minDot);
+        }
+
+        out[o] = cx;
+        out[o + 1] = cy;
+        out[o + 2] = cz;
+        out[o + 3] = (float) Math.sqrt(radiusSq);
+        out[o + 4] = ax;
+        out[o + 5] = ay;
+        out[o + 6] = az;
+        out[o + 7] = cutoff;
+    }
+
+    // Unit face normal (counter-clockwise winding) into out; false for degenerate triangles.
+    private static boolean triangleNormal(FloatBuffer vertices, int vbase, int a, int b, int c, float[] out) {
+        int pa = vbase + a * MeshData.FLOATS_PER_VERTEX;
+        int pb = vbase + b * MeshData.FLOATS_PER_VERTEX;
+        int pc = vbase + c * MeshData.FLOATS_PER_VERTEX;
+        float ex = vertices.get(pb) - vertices.get(pa), ey = vertices.get(pb + 1) - vertices.get(pa + 1), ez = vertices.get(pb + 2) - vertices.get(pa + 2);
+        float fx = vertices.get(pc) - vertices.get(pa), fy = vertices.get(pc + 1) - vertices.get(pa + 1), fz = vertices.get(pc + 2) - vertices.get(pa + 2);
+        float nx = ey * fz - ez * fy, ny = ez * fx - ex * fz, nz = ex * fy - ey * fx;
+        float len = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (!(len > 0)) return false;
+        out[0] = nx / len;
+        out[1] = ny / len;
+        out[2] = nz / len;
+        return true;
+    }
+
+    public int count() { return count; }
+    public int triangleCount() { return triangleCount; }
+
+    int[] ranges() { return ranges; }
+    float[] bounds() { return bounds; }
+
+    public int first(int meshlet) { return ranges[meshlet * 2]; }
+    public int indexCount(int meshlet) { return ranges[meshlet * 2 + 1]; }
+
+    public float centerX(int meshlet) { return bounds[meshlet * FLOATS_PER_BOUNDS]; }
+    public float centerY(int meshlet) { return bounds[meshlet * FLOATS_PER_BOUNDS + 1]; }
+    public float centerZ(int meshlet) { return bounds[meshlet * FLOATS_PER_BOUNDS + 2]; }
+    public float radius(int meshlet) { return bounds[meshlet * FLOATS_PER_BOUNDS + 3]; }
+    public float axisX(int meshlet) { return bounds[meshlet * FLOATS_PER_BOUNDS + 4]; }
+    public float axisY(int meshlet) { return bounds[meshlet * FLOATS_PER_BOUNDS + 5]; }
+    public float axisZ(int meshlet) { return bounds[meshlet * FLOATS_PER_BOUNDS + 6]; }
+    public float cutoff(int meshlet) { return bounds[meshlet * FLOATS_PER_BOUNDS + 7]; }
+}
@@ -1,11 +1,16 @@
 package com.example.graphics;
 
+import org.joml.Matrix4fc;
 import org.joml.Vector3f;
 
 import java.util.List;
 import java.util.ArrayList;
 
-public class Model {
+public class Model extends RefCounted {
+    // On-screen height (pixels) of the bounding sphere below which the model drops to LOD 1;
+    // every further halving of that size goes one level coarser.
+    public static final float LOD_REFERENCE_PIXELS = 400.0f;
+
     private final List<Mesh> meshes = new ArrayList<>();
     private final Texture texture;
     private Texture overrideTexture;
@@ -17,15 +22,66 @@ public class Model {
 
     public void addMesh(Mesh mesh) { meshes.add(mesh); }
 
+    public List<Mesh> getMeshes() { return meshes; }
+
+    // The texture render() binds: the override if set, otherwise the model's own.
+    public Texture currentTexture() { return overrideTexture != null ? overrideTexture : texture; }
+
     public void render() {
-        Texture toBind = (overrideTexture != null) ? overrideTexture : texture;
-        toBind.bind(0);
+        currentTexture().bind(0);
         for (Mesh mesh : meshes) {
             mesh.render();
         }
     }
 
+    // Like render(), but skips meshes the culler rejects under the given model transform.
+    public void render(FrustumCuller culler, Matrix4fc transform) {
+        currentTexture().bind(0);
+        for (Mesh mesh : meshes) {
+            if (culler.isVisible(mesh, transform)) mesh.render();
+        }
+    }
+
+    // Level for a model covering screenPixels, pushed bias levels coarser; meshes clamp it to what they have.
+    public static int selectLod(float screenPixels, int bias) {
+        if (!(screenPixels < LOD_REFERENCE_PIXELS)) return Math.max(0, bias);
+        int lod = 1 + (int) Math.floor(Math.log(LOD_REFERENCE_PIXELS / Math.max(screenPixels, 1e-3f)) / Math.log(2.0));
+        return Math.max(0, lod + bias);
+    }
+
+    // Approximate projected diameter in pixels of a sphere seen through a perspective projection.
+    public static float projectedPixels(float radius, float distance, float fovY, int viewportHeight) {
+        if (distance <= radius) return Float.POSITIVE_INFINITY;
+        return radius / (distance * (float) Math.tan(fovY * 0.5f)) * viewportHeight;
+    }
+
+    // Object-space radius of the sphere around the bounds' centre.
+    public float getBoundingRadius() {
+        return boundsMax.distance(boundsMin) * 0.5f;
+    }
+
+    // Draws every instance in the buffer with one call per mesh.
+    public void renderInstanced(InstanceBuffer instances) {
+        if (instances.count() == 0) return;
+        currentTexture().bind(0);
+        for (Mesh mesh : meshes) {
+            mesh.renderInstanced(instances);
+        }
+    }
+
+    // Returns a model drawing the same (shared) meshes with another texture; takes ownership of the texture reference.
+    public Model withTexture(Texture other) {
+        Model model = new Model(other);
+        for (Mesh m : meshes) {
+            m.retain();
+            model.addMesh(m);
+        }
+        model.setBounds(boundsMin, boundsMax);
+        return model;
+    }
+
     public void delete() {
+        if (!release()) return;
         for (Mesh m : meshes) m.delete();
         texture.delete();
         if(overrideTexture!=null) overrideTexture.delete();
@@ -39,6 +95,11 @@ public class Model {
     public Vector3f getBoundsMin() { return new Vector3f(boundsMin); }
     public Vector3f getBoundsMax() { return new Vector3f(boundsMax); }
 
+    // World-space AABB enclosing the model bounds under the given transform.
+    public void transformBounds(Matrix4fc transform, Vector3f outMin, Vector3f outMax) {
+        transform.transformAab(boundsMin, boundsMax, outMin, outMax);
+    }
+
 
     public float getMaxExtent() {
         float sx = Math.abs(boundsMax.x - boundsMin.x);
@@ -48,6 +109,8 @@ public class Model {
     }
 
     public void setOverrideTexture(Texture tex) {
+        if (tex != null) tex.retain();
+        if (overrideTexture != null) overrideTexture.delete();
         this.overrideTexture = tex;
     }
 }
\ No newline at end of file
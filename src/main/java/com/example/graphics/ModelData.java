@@ -0,0 +1,29 @@
+package com.example.graphics;
+
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// CPU-side result of an import: mesh data and bounds, not yet uploaded to GL.
+public class ModelData {
+    private final List<MeshData> meshes = new ArrayList<>();
+    private final Vector3f boundsMin = new Vector3f(Float.POSITIVE_INFINITY);
+    private final Vector3f boundsMax = new Vector3f(Float.NEGATIVE_INFINITY);
+
+    public void addMesh(MeshData mesh) { meshes.add(mesh); }
+
+    public List<MeshData> getMeshes() { return meshes; }
+
+    public Vector3f getBoundsMin() { return boundsMin; }
+    public Vector3f getBoundsMax() { return boundsMax; }
+
+    public void setBounds(Vector3f min, Vector3f max) {
+        boundsMin.set(min);
+        boundsMax.set(max);
+    }
+
+    public void free() {
+        for (MeshData mesh : meshes) mesh.free();
+    }
+}
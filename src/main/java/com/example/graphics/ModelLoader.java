@@ -4,22 +4,183 @@ import org.joml.Vector3f;
 import org.lwjgl.PointerBuffer;
 import org.lwjgl.assimp.*;
 
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
-import java.util.ArrayList;
-import java.util.List;
 
 import static org.lwjgl.assimp.Assimp.*;
+import static org.lwjgl.system.MemoryUtil.*;
 
 public class ModelLoader {
+    // Triangle and vertex order come from MeshOptimizer rather than aiProcess_ImproveCacheLocality.
+    static final int IMPORT_FLAGS =
+            aiProcess_Triangulate | aiProcess_GenNormals | aiProcess_JoinIdenticalVertices;
+
+    // LOD chain: each level aims for half the triangles of the previous one, with an error budget
+    // that doubles per level as a fraction of the model's diagonal.
+    public static final int MAX_LODS = 4;
+    private static final float LOD_ERROR = 0.01f;
+    private static final int LOD_MIN_TRIANGLES = 64;
+
+    // Meshes at least this dense are split into meshlet clusters at import; the property turns
+    // per-cluster culling off at load time without invalidating the cache.
+    private static final int MESHLET_MIN_TRIANGLES = 1024;
+    private static final boolean MESHLET_CULLING = !Boolean.getBoolean("modelloader.noMeshlets");
+
     public static Model loadObjWithTexture(String objResourcePath, String textureResourcePath) {
-        AIScene scene = aiImportFileFromMemory(Utils.ioResourceToByteBuffer(objResourcePath),
-                aiProcess_Triangulate | aiProcess_GenNormals | aiProcess_JoinIdenticalVertices | aiProcess_ImproveCacheLocality,
-                (String) null);
+        ModelData data = importModel(objResourcePath);
+        Texture texture = new Texture(textureResourcePath);
+        return createModel(data, texture);
+    }
+
+    // CPU-only part of loading: served from MeshCache when the source hash matches, otherwise via Assimp.
+    public static ModelData importModel(String objResourcePath) {
+        ByteBuffer source = Utils.ioResourceToByteBuffer(objResourcePath);
+        try {
+            byte[] hash = MeshCache.hash(source, IMPORT_FLAGS);
+            ModelData data = MeshCache.read(objResourcePath, hash);
+            if (data == null) {
+                data = importWithAssimp(source);
+                optimize(data);
+                MeshCache.write(objResourcePath, hash, data);
+            }
+            return data;
+        } finally {
+            memFree(source);
+        }
+    }
+
+    // Assimp output as is, bypassing the cache and the optimize stage; for tools comparing the two.
+    public static ModelData importRaw(String objResourcePath) {
+        ByteBuffer source = Utils.ioResourceToByteBuffer(objResourcePath);
+        try {
+            return importWithAssimp(source);
+        } finally {
+            memFree(source);
+        }
+    }
+
+    /**
+     * Import-time processing of freshly extracted meshes, in place: vertex cache, overdraw and
+     * vertex fetch ordering, then meshlet clusters for dense meshes (each re-sorted for the cache),
+     * then the LOD chain. The meshes must own their buffers, as importWithAssimp's do.
+     */
+    public static void optimize(ModelData data) {
+        float diagonal = data.getBoundsMax().distance(data.getBoundsMin());
+        for (MeshData mesh : data.getMeshes()) {
+            optimizeOrder(mesh);
+            // Clustering reorders LOD 0, so it runs before the coarser levels are derived from it.
+            if (mesh.getIndexCount() / 3 >= MESHLET_MIN_TRIANGLES) {
+                Meshlets meshlets = Meshlets.build(mesh.getVertices(), mesh.getIndices());
+                for (int m = 0; m < meshlets.count(); m++) {
+                    optimizeVertexCache(mesh.getIndices(), meshlets.first(m), meshlets.indexCount(m), mesh.getVertexCount());
+                }
+                mesh.setMeshlets(meshlets);
+            }
+            generateLods(mesh, diagonal);
+        }
+    }
+
+    private static void optimizeOrder(MeshData mesh) {
+        FloatBuffer vertexBuffer = mesh.getVertices();
+        IntBuffer indexBuffer = mesh.getIndices();
+        float[] vertices = new float[vertexBuffer.remaining()];
+        int[] indices = new int[indexBuffer.remaining()];
+        vertexBuffer.get(vertexBuffer.position(), vertices);
+        indexBuffer.get(indexBuffer.position(), indices);
+        MeshOptimizer.optimizeVertexCache(indices, mesh.getVertexCount());
+        MeshOptimizer.optimizeOverdraw(indices, vertices);
+        MeshOptimizer.optimizeVertexFetch(vertices, indices);
+        vertexBuffer.put(vertexBuffer.position(), vertices);
+        indexBuffer.put(indexBuffer.position(), indices);
+    }
+
+    // Cache-orders count indices from offset (relative to the buffer's position) in place.
+    private static void optimizeVertexCache(IntBuffer buffer, int offset, int count, int vertexCount) {
+        int[] indices = new int[count];
+        buffer.get(buffer.position() + offset, indices);
+        MeshOptimizer.optimizeVertexCache(indices, vertexCount);
+        buffer.put(buffer.position() + offset, indices);
+    }
+
+    public static Model createModel(ModelData data, Texture texture) {
+        return createModel(data, texture, VertexFormat.STANDARD);
+    }
+
+    // Uploads and then frees data; the native buffers go to GL without a Java-heap copy.
+    public static Model createModel(ModelData data, Texture texture, VertexFormat format) {
+        Model model = new Model(texture);
+        try {
+            for (MeshData mesh : data.getMeshes()) {
+                IntBuffer indices = lodIndices(mesh);
+                Mesh uploaded;
+                try {
+                    uploaded = new Mesh(mesh.getVertices(), indices, format);
+                } finally {
+                    if (indices != mesh.getIndices()) memFree(indices);
+                }
+                uploaded.setLods(lodCounts(mesh));
+                if (MESHLET_CULLING) uploaded.setMeshlets(mesh.getMeshlets());
+                uploaded.setBounds(mesh.getBoundsMin(), mesh.getBoundsMax(), mesh.getSphere());
+                model.addMesh(uploaded);
+            }
+            model.setBounds(data.getBoundsMin(), data.getBoundsMax());
+        } finally {
+            data.free();
+        }
+        return model;
+    }
+
+    // Like createModel, but meshes go into the shared arena; ones too large for it get their own buffers.
+    public static Model createModel(ModelData data, Texture texture, GeometryArena arena) {
+        Model model = new Model(texture);
+        try {
+            for (MeshData mesh : data.getMeshes()) {
+                IntBuffer indices = lodIndices(mesh);
+                Mesh uploaded;
+                try {
+                    uploaded = arena.accepts(mesh.getVertexCount())
+                            ? new Mesh(arena, mesh.getVertices(), indices)
+                            : new Mesh(mesh.getVertices(), indices, arena.format());
+                } finally {
+                    if (indices != mesh.getIndices()) memFree(indices);
+                }
+                uploaded.setLods(lodCounts(mesh));
+                if (MESHLET_CULLING) uploaded.setMeshlets(mesh.getMeshlets());
+                uploaded.setBounds(mesh.getBoundsMin(), mesh.getBoundsMax(), mesh.getSphere());
+                model.addMesh(uploaded);
+            }
+            model.setBounds(data.getBoundsMin(), data.getBoundsMax());
+        } finally {
+            data.free();
+        }
+        return model;
+    }
+
+    // All LOD levels back to back in one index buffer, finest first; the mesh's own buffer when it has none.
+    private static IntBuffer lodIndices(MeshData mesh) {
+        if (mesh.getLods().isEmpty()) return mesh.getIndices();
+        int total = mesh.getIndexCount();
+        for (IntBuffer lod : mesh.getLods()) total += lod.remaining();
+        IntBuffer combined = memAllocInt(total);
+        combined.put(mesh.getIndices().duplicate());
+        for (IntBuffer lod : mesh.getLods()) combined.put(lod.duplicate());
+        return combined.flip();
+    }
+
+    private static int[] lodCounts(MeshData mesh) {
+        int[] counts = new int[1 + mesh.getLods().size()];
+        counts[0] = mesh.getIndexCount();
+        for (int i = 0; i < mesh.getLods().size(); i++) counts[i + 1] = mesh.getLods().get(i).remaining();
+        return counts;
+    }
+
+    private static ModelData importWithAssimp(ByteBuffer source) {
+        AIScene scene = aiImportFileFromMemory(source, IMPORT_FLAGS, (String) null);
         if (scene == null) {
             throw new RuntimeException("Assimp load failed: " + aiGetErrorString());
         }
-        Texture texture = new Texture(textureResourcePath);
-        Model model = new Model(texture);
+        ModelData data = new ModelData();
 
         int meshCount = scene.mNumMeshes();
         PointerBuffer meshes = scene.mMeshes();
@@ -29,61 +190,111 @@ public class ModelLoader {
 
         for (int i = 0; i < meshCount; i++) {
             AIMesh mesh = AIMesh.create(meshes.get(i));
-            float[] vertices = extractVertices(mesh, boundsMin, boundsMax);
-            int[] indices = extractIndices(mesh);
-            model.addMesh(new Mesh(vertices, indices));
+            MeshData meshData = MeshData.allocate(mesh.mNumVertices(), countIndices(mesh));
+            Vector3f meshMin = new Vector3f(Float.POSITIVE_INFINITY);
+            Vector3f meshMax = new Vector3f(Float.NEGATIVE_INFINITY);
+            extractVertices(mesh, meshData.getVertices(), meshMin, meshMax);
+            extractIndices(mesh, meshData.getIndices());
+            meshData.setBounds(meshMin, meshMax);
+            boundsMin.min(meshMin);
+            boundsMax.max(meshMax);
+            data.addMesh(meshData);
         }
-        model.setBounds(boundsMin, boundsMax);
+        data.setBounds(boundsMin, boundsMax);
         aiReleaseImport(scene);
-        return model;
+        return data;
     }
 
-    private static float[] extractVertices(AIMesh mesh, Vector3f boundsMin, Vector3f boundsMax) {
-        AIVector3D.Buffer positions = mesh.mVertices();
-        AIVector3D.Buffer normals = mesh.mNormals();
-        AIVector3D.Buffer texCoords = mesh.mTextureCoords(0);
+    private static void generateLods(MeshData mesh, float diagonal) {
+        if (mesh.getIndexCount() / 3 < LOD_MIN_TRIANGLES) return;
+        MeshSimplifier simplifier = new MeshSimplifier(mesh.getVertices());
+        IntBuffer previous = mesh.getIndices();
+        for (int level = 1; level < MAX_LODS; level++) {
+            int target = previous.remaining() / 6 * 3;
+            IntBuffer lod = simplifier.simplify(previous, target, LOD_ERROR * (1 << level) * diagonal);
+            // Not worth a level if the error budget stopped it short of a meaningful reduction.
+            if (lod.remaining() > previous.remaining() * 9 / 10) {
+                memFree(lod);
+                return;
+            }
+            optimizeVertexCache(lod, 0, lod.remaining(), mesh.getVertexCount());
+            mesh.addLod(lod);
+            if (lod.remaining() / 3 < LOD_MIN_TRIANGLES) return;
+            previous = lod;
+        }
+    }
+
+    // Reads Assimp's native arrays directly: no AIVector3D/AIFace wrappers or boxing per vertex or index.
+    static void extractVertices(AIMesh mesh, FloatBuffer verts, Vector3f boundsMin, Vector3f boundsMax) {
         int vertexCount = mesh.mNumVertices();
-        float[] verts = new float[vertexCount * 8];
+        AIVector3D.Buffer normalBuffer = mesh.mNormals();
+        AIVector3D.Buffer texCoordBuffer = mesh.mTextureCoords(0);
+        long positions = mesh.mVertices().address();
+        long normals = normalBuffer != null ? normalBuffer.address() : NULL;
+        long texCoords = texCoordBuffer != null ? texCoordBuffer.address() : NULL;
+
+        float minX = boundsMin.x, minY = boundsMin.y, minZ = boundsMin.z;
+        float maxX = boundsMax.x, maxY = boundsMax.y, maxZ = boundsMax.z;
         for (int i = 0; i < vertexCount; i++) {
-            AIVector3D p = positions.get(i);
-            AIVector3D n = normals != null ? normals.get(i) : AIVector3D.create().set(0,0,1);
-            AIVector3D t = texCoords != null ? texCoords.get(i) : AIVector3D.create().set(0,0,0);
-            int base = i * 8;
-            float px = p.x(); float py = p.y(); float pz = p.z();
-            verts[base] = px;
-            verts[base+1] = py;
-            verts[base+2] = pz;
-            verts[base+3] = n.x();
-            verts[base+4] = n.y();
-            verts[base+5] = n.z();
-            verts[base+6] = t.x();
-            verts[base+7] = t.y();
+            long offset = (long) i * AIVector3D.SIZEOF;
+            int base = i * MeshData.FLOATS_PER_VERTEX;
+            float px = memGetFloat(positions + offset);
+            float py = memGetFloat(positions + offset + 4);
+            float pz = memGetFloat(positions + offset + 8);
+            verts.put(base, px);
+            verts.put(base + 1, py);
+            verts.put(base + 2, pz);
+            if (normals != NULL) {
+                verts.put(base + 3, memGetFloat(normals + offset));
+                verts.put(base + 4, memGetFloat(normals + offset + 4));
+                verts.put(base + 5, memGetFloat(normals + offset + 8));
+            } else {
+                verts.put(base + 3, 0.0f);
+                verts.put(base + 4, 0.0f);
+                verts.put(base + 5, 1.0f);
+            }
+            if (texCoords != NULL) {
+                verts.put(base + 6, memGetFloat(texCoords + offset));
+                verts.put(base + 7, memGetFloat(texCoords + offset + 4));
+            } else {
+                verts.put(base + 6, 0.0f);
+                verts.put(base + 7, 0.0f);
+            }
 
             // Update bounds
-            if (px < boundsMin.x) boundsMin.x = px;
-            if (py < boundsMin.y) boundsMin.y = py;
-            if (pz < boundsMin.z) boundsMin.z = pz;
-            if (px > boundsMax.x) boundsMax.x = px;
-            if (py > boundsMax.y) boundsMax.y = py;
-            if (pz > boundsMax.z) boundsMax.z = pz;
+            if (px < minX) minX = px;
+            if (py < minY) minY = py;
+            if (pz < minZ) minZ = pz;
+            if (px > maxX) maxX = px;
+            if (py > maxY) maxY = py;
+            if (pz > maxZ) maxZ = pz;
+        }
+        boundsMin.set(minX, minY, minZ);
+        boundsMax.set(maxX, maxY, maxZ);
+    }
+
+    static int countIndices(AIMesh mesh) {
+        int faceCount = mesh.mNumFaces();
+        long faces = mesh.mFaces().address();
+        int total = 0;
+        for (int i = 0; i < faceCount; i++) {
+            total += AIFace.nmNumIndices(faces + (long) i * AIFace.SIZEOF);
         }
-        return verts;
+        return total;
     }
 
-    private static int[] extractIndices(AIMesh mesh) {
+    static void extractIndices(AIMesh mesh, IntBuffer out) {
         int faceCount = mesh.mNumFaces();
-        AIFace.Buffer faces = mesh.mFaces();
-        List<Integer> indexList = new ArrayList<>(faceCount * 3);
+        long faces = mesh.mFaces().address();
+        int n = 0;
         for (int i = 0; i < faceCount; i++) {
-            AIFace face = faces.get(i);
-            IntBuffer indices = face.mIndices();
-            for (int j = 0; j < indices.remaining(); j++) {
-                indexList.add(indices.get(j));
+            long face = faces + (long) i * AIFace.SIZEOF;
+            int count = AIFace.nmNumIndices(face);
+            long indices = memGetAddress(face + AIFace.MINDICES);
+            for (int j = 0; j < count; j++) {
+                out.put(n++, memGetInt(indices + (long) j * Integer.BYTES));
             }
         }
-        int[] arr = new int[indexList.size()];
-        for (int i = 0; i < arr.length; i++) arr[i] = indexList.get(i);
-        return arr;
     }
 
     private static class Utils {
@@ -2,69 +2,136 @@ package com.example.graphics;
 
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import org.lwjgl.opengl.GL;
+
+import java.nio.ByteBuffer;
 
 import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.*;
 import static org.lwjgl.opengl.GL13.*;
 import static org.lwjgl.opengl.GL30.*;
 import static org.lwjgl.opengl.GL32.glFramebufferTexture;
+import static org.lwjgl.opengl.GL40.GL_TEXTURE_CUBE_MAP_ARRAY;
 
+/**
+ * Depth cubes for all point lights in one layered texture: a cube map array where
+ * ARB_texture_cube_map_array is available, otherwise a 2D array with six layers per light.
+ * Either way light {@code i}, face {@code f} lives in layer {@code 6 * i + f}, so the same
+ * layered framebuffer and geometry shader fill both.
+ */
 public class PointLightShadowMap {
     public final int fbo;
-    public final int depthCubeTex;
+    public final int depthTex;
     public final int size;
     public final float farPlane;
+    public final int capacity;
+    public final boolean cubeArray;
+    private final int target;
+    private final int clearFbo;
 
-    public PointLightShadowMap(int size, float farPlane) {
+    public PointLightShadowMap(int size, float farPlane, int capacity) {
         this.size = size;
         this.farPlane = farPlane;
-        fbo = glGenFramebuffers();
-        depthCubeTex = glGenTextures();
-        glBindTexture(GL_TEXTURE_CUBE_MAP, depthCubeTex);
-        for (int i = 0; i < 6; i++) {
-            glTexImage2D(GL_TEXTURE_CUBE_MAP_POSITIVE_X + i, 0, GL_DEPTH_COMPONENT, size, size, 0, GL_DEPTH_COMPONENT, GL_FLOAT, 0);
+        this.capacity = capacity;
+        this.cubeArray = supportsCubeArray();
+        this.target = cubeArray ? GL_TEXTURE_CUBE_MAP_ARRAY : GL_TEXTURE_2D_ARRAY;
+
+        int maxLayers = glGetInteger(GL_MAX_ARRAY_TEXTURE_LAYERS);
+        if (6 * capacity > maxLayers) {
+            throw new RuntimeException("Shadow atlas needs " + 6 * capacity + " layers, driver allows " + maxLayers);
         }
-        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
-        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
-        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
-        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
-        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_R, GL_CLAMP_TO_EDGE);
+
+        fbo = glGenFramebuffers();
+        depthTex = glGenTextures();
+        glBindTexture(target, depthTex);
+        glTexImage3D(target, 0, GL_DEPTH_COMPONENT24, size, size, 6 * capacity, 0, GL_DEPTH_COMPONENT, GL_FLOAT, (ByteBuffer) null);
+        glTexParameteri(target, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        glTexParameteri(target, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(target, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(target, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        glTexParameteri(target, GL_TEXTURE_WRAP_R, GL_CLAMP_TO_EDGE);
 
         glBindFramebuffer(GL_FRAMEBUFFER, fbo);
-        glFramebufferTexture(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, depthCubeTex, 0);
+        glFramebufferTexture(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, depthTex, 0);
         glDrawBuffer(GL_NONE);
         glReadBuffer(GL_NONE);
         int status = glCheckFramebufferStatus(GL_FRAMEBUFFER);
         if (status != GL_FRAMEBUFFER_COMPLETE) {
             throw new RuntimeException("Shadow framebuffer incomplete: status=" + status);
         }
+
+        // Single-layer attachment used to clear individual faces; see clearFaces.
+        clearFbo = glGenFramebuffers();
+        glBindFramebuffer(GL_FRAMEBUFFER, clearFbo);
+        glFramebufferTextureLayer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, depthTex, 0, 0);
+        glDrawBuffer(GL_NONE);
+        glReadBuffer(GL_NONE);
         glBindFramebuffer(GL_FRAMEBUFFER, 0);
     }
 
+    public static boolean supportsCubeArray() {
+        return GL.getCapabilities().GL_ARB_texture_cube_map_array;
+    }
+
+    // Preprocessor define selecting the matching sampleShadow() variant in basic.frag.
+    public String shaderDefine() {
+        return cubeArray ? "SHADOW_CUBE_ARRAY" : "SHADOW_LAYERED_2D";
+    }
+
+    // Binds the layered framebuffer; faces keep their contents until cleared.
     public void bindForWrite() {
         glViewport(0, 0, size, size);
         glBindFramebuffer(GL_FRAMEBUFFER, fbo);
-        glClear(GL_DEPTH_BUFFER_BIT);
+    }
+
+    // Clears only the faces of one light selected by faceMask (bit f = face f), leaving the others cached.
+    public void clearFaces(int light, int faceMask) {
+        if (faceMask == 0) return;
+        glBindFramebuffer(GL_FRAMEBUFFER, clearFbo);
+        for (int face = 0; face < 6; face++) {
+            if ((faceMask & (1 << face)) == 0) continue;
+            glFramebufferTextureLayer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, depthTex, 0, layerBase(light) + face);
+            glClear(GL_DEPTH_BUFFER_BIT);
+        }
     }
 
     public void unbind() {
         glBindFramebuffer(GL_FRAMEBUFFER, 0);
     }
 
+    public void bindTexture(int unit) {
+        glActiveTexture(GL_TEXTURE0 + unit);
+        glBindTexture(target, depthTex);
+    }
+
+    // First layer of the given light, for the geometry shader's gl_Layer offset.
+    public static int layerBase(int light) {
+        return 6 * light;
+    }
+
     public void delete() {
         glDeleteFramebuffers(fbo);
-        glDeleteTextures(depthCubeTex);
+        glDeleteFramebuffers(clearFbo);
+        glDeleteTextures(depthTex);
     }
 
     public static Matrix4f[] buildLightSpaceMatrices(Vector3f lightPos, float nearPlane, float farPlane) {
-        Matrix4f proj = new Matrix4f().perspective((float)Math.toRadians(90.0), 1.0f, nearPlane, farPlane);
         Matrix4f[] mats = new Matrix4f[6];
-        mats[0] = new Matrix4f(proj).mul(new Matrix4f().lookAt(lightPos, new Vector3f(lightPos).add(1,0,0), new Vector3f(0,-1,0))); // +X
-        mats[1] = new Matrix4f(proj).mul(new Matrix4f().lookAt(lightPos, new Vector3f(lightPos).add(-1,0,0), new Vector3f(0,-1,0))); // -X
-        mats[2] = new Matrix4f(proj).mul(new Matrix4f().lookAt(lightPos, new Vector3f(lightPos).add(0,1,0), new Vector3f(0,0,1))); // +Y
-        mats[3] = new Matrix4f(proj).mul(new Matrix4f().lookAt(lightPos, new Vector3f(lightPos).add(0,-1,0), new Vector3f(0,0,-1))); // -Y
-        mats[4] = new Matrix4f(proj).mul(new Matrix4f().lookAt(lightPos, new Vector3f(lightPos).add(0,0,1), new Vector3f(0,-1,0))); // +Z
-        mats[5] = new Matrix4f(proj).mul(new Matrix4f().lookAt(lightPos, new Vector3f(lightPos).add(0,0,-1), new Vector3f(0,-1,0))); // -Z
-        return mats;
+        for (int face = 0; face < 6; face++) mats[face] = new Matrix4f();
+        return buildLightSpaceMatrices(lightPos, nearPlane, farPlane, mats);
     }
-}
 
+    // Cube face view-projections in face order, written into the six matrices of dest.
+    public static Matrix4f[] buildLightSpaceMatrices(Vector3fc lightPos, float nearPlane, float farPlane, Matrix4f[] dest) {
+        float fov = (float) Math.toRadians(90.0);
+        float x = lightPos.x(), y = lightPos.y(), z = lightPos.z();
+        dest[0].setPerspective(fov, 1.0f, nearPlane, farPlane).lookAt(x, y, z, x + 1, y, z, 0, -1, 0); // +X
+        dest[1].setPerspective(fov, 1.0f, nearPlane, farPlane).lookAt(x, y, z, x - 1, y, z, 0, -1, 0); // -X
+        dest[2].setPerspective(fov, 1.0f, nearPlane, farPlane).lookAt(x, y, z, x, y + 1, z, 0, 0, 1); // +Y
+        dest[3].setPerspective(fov, 1.0f, nearPlane, farPlane).lookAt(x, y, z, x, y - 1, z, 0, 0, -1); // -Y
+        dest[4].setPerspective(fov, 1.0f, nearPlane, farPlane).lookAt(x, y, z, x, y, z + 1, 0, -1, 0); // +Z
+        dest[5].setPerspective(fov, 1.0f, nearPlane, farPlane).lookAt(x, y, z, x, y, z - 1, 0, -1, 0); // -Z
+        return dest;
+    }
+}
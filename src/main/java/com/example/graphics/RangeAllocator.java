@@ -0,0 +1,66 @@
+package com.example.graphics;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * First-fit allocator over a linear range of elements (vertices, indices, ...). Free blocks are
+ * kept sorted by offset and merged with their neighbours when released, so the range does not
+ * fragment into unusable slivers as meshes come and go.
+ */
+public class RangeAllocator {
+    // offset -> size of each free block
+    private final TreeMap<Integer, Integer> free = new TreeMap<>();
+    private int capacity;
+    private int used;
+
+    public RangeAllocator(int capacity) {
+        this.capacity = capacity;
+        if (capacity > 0) free.put(0, capacity);
+    }
+
+    // Returns the offset of a block of the given size, or -1 if no free block is large enough.
+    public int allocate(int size) {
+        if (size <= 0) throw new IllegalArgumentException("Allocation size must be positive: " + size);
+        Iterator<Map.Entry<Integer, Integer>> it = free.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Integer> block = it.next();
+            int blockSize = block.getValue();
+            if (blockSize < size) continue;
+            int offset = block.getKey();
+            it.remove();
+            if (blockSize > size) free.put(offset + size, blockSize - size);
+            used += size;
+            return offset;
+        }
+        return -1;
+    }
+
+    public void free(int offset, int size) {
+        int start = offset;
+        int end = offset + size;
+        Map.Entry<Integer, Integer> before = free.floorEntry(offset);
+        if (before != null && before.getKey() + before.getValue() == offset) {
+            start = before.getKey();
+            free.remove(start);
+        }
+        Integer afterSize = free.remove(end);
+        if (afterSize != null) end += afterSize;
+        free.put(start, end - start);
+        used -= size;
+    }
+
+    // Extends the range; the new tail becomes free (merged with a free block ending at the old capacity).
+    public void grow(int newCapacity) {
+        if (newCapacity <= capacity) return;
+        int added = newCapacity - capacity;
+        int oldCapacity = capacity;
+        capacity = newCapacity;
+        used += added;
+        free(oldCapacity, added);
+    }
+
+    public int capacity() { return capacity; }
+    public int used() { return used; }
+}
@@ -0,0 +1,19 @@
+package com.example.graphics;
+
+// GPU resources shared through AssetRegistry; the creator holds the first reference.
+public abstract class RefCounted {
+    private int refCount = 1;
+
+    public void retain() {
+        if (refCount <= 0) throw new IllegalStateException("Resource already freed: " + this);
+        refCount++;
+    }
+
+    public boolean isAlive() { return refCount > 0; }
+
+    // Drops one reference and returns true when it was the last one, i.e. GPU objects must be freed now.
+    protected boolean release() {
+        if (refCount <= 0) return false;
+        return --refCount == 0;
+    }
+}
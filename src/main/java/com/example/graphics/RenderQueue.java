@@ -0,0 +1,208 @@
+package com.example.graphics;
+
+import org.joml.Matrix4fc;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
+
+/**
+ * Collects draw items for one pass, sorts them so items sharing a shader, texture and mesh are
+ * adjacent, and draws them through a {@link RenderState} so redundant binds are skipped.
+ *
+ * <p>Sort key, from the most significant bit: shader (8 bits), texture (12), mesh VAO (12),
+ * view depth (16), item index (16). GL names are used as ids; names beyond the field width
+ * only cost batching, never correctness. Depth takes the high bits of the non-negative float,
+ * which order the same way as the value, so opaque items go front to back within a batch.
+ *
+ * <p>Each item draws an index range of its mesh: a whole LOD, or a run of visible meshlet
+ * clusters. Ranges of one mesh share its VAO and batch together.
+ *
+ * <p>Consecutive instanced items whose meshes live in the same {@link GeometryArena} and share
+ * shader, texture and instance buffer go out as one {@link DrawCommandBuffer} submission.
+ *
+ * <p>{@link #prepass} draws the queued items depth-only before {@link #flush}, so the shaded pass
+ * can run with {@code GL_EQUAL} and shade each pixel once.
+ */
+public class RenderQueue {
+    public static final int MAX_ITEMS = 1 << 16;
+
+    private final RenderState state = new RenderState();
+    // Created on first flush, when a GL context is guaranteed to be current.
+    private DrawCommandBuffer commands;
+    private long[] keys = new long[64];
+    private ShaderProgram[] shaders = new ShaderProgram[64];
+    private Texture[] textures = new Texture[64];
+    private Mesh[] meshes = new Mesh[64];
+    private InstanceBuffer[] instances = new InstanceBuffer[64];
+    private int[] rangeStarts = new int[64];
+    private int[] rangeCounts = new int[64];
+    private int[] meshletRanges = new int[64];
+    private int count;
+
+    // instances may be null for a single non-instanced draw whose transform is already set.
+    public void submit(ShaderProgram shader, Texture texture, Mesh mesh, InstanceBuffer instanceData, float depth) {
+        submit(shader, texture, mesh, 0, instanceData, depth);
+    }
+
+    public void submit(ShaderProgram shader, Texture texture, Mesh mesh, int lod, InstanceBuffer instanceData, float depth) {
+        submitRange(shader, texture, mesh, mesh.lodStart(lod), mesh.indexCount(lod), instanceData, depth);
+    }
+
+    // Draws indexCount indices from start, relative to the mesh's first index.
+    public void submitRange(ShaderProgram shader, Texture texture, Mesh mesh, int start, int indexCount, InstanceBuffer instanceData, float depth) {
+        if (count == MAX_ITEMS) throw new IllegalStateException("Render queue is full (" + MAX_ITEMS + " items)");
+        if (count == keys.length) grow();
+        shaders[count] = shader;
+        textures[count] = texture;
+        meshes[count] = mesh;
+        instances[count] = instanceData;
+        rangeStarts[count] = start;
+        rangeCounts[count] = indexCount;
+        keys[count] = sortKey(shader.id(), texture.id(), mesh.vao(), depth, count);
+        count++;
+    }
+
+    // Submits every mesh of the model with its current texture.
+    public void submit(ShaderProgram shader, Model model, int lod, InstanceBuffer instanceData, float depth) {
+        List<Mesh> modelMeshes = model.getMeshes();
+        for (int m = 0; m < modelMeshes.size(); m++) {
+            submit(shader, model.currentTexture(), modelMeshes.get(m), lod, instanceData, depth);
+        }
+    }
+
+    /**
+     * Single-instance variant that leaves out meshes the culler rejects under the instance's
+     * transform. At LOD 0, meshes with meshlets only submit their clusters that pass the
+     * culler's sphere and cone tests.
+     */
+    public void submit(ShaderProgram shader, Model model, int lod, InstanceBuffer instanceData, float depth, FrustumCuller culler, Matrix4fc transform) {
+        List<Mesh> modelMeshes = model.getMeshes();
+        for (int m = 0; m < modelMeshes.size(); m++) {
+            Mesh mesh = modelMeshes.get(m);
+            if (!culler.isVisible(mesh, transform)) continue;
+            Meshlets meshlets = mesh.meshlets();
+            if (meshlets == null || mesh.clampLod(lod) != 0) {
+                submit(shader, model.currentTexture(), mesh, lod, instanceData, depth);
+                continue;
+            }
+            if (meshletRanges.length < meshlets.count() * 2) meshletRanges = new int[meshlets.count() * 2];
+            int ranges = culler.visibleMeshlets(meshlets, transform, meshletRanges);
+            for (int r = 0; r < ranges; r++) {
+                submitRange(shader, model.currentTexture(), mesh, meshletRanges[r * 2], meshletRanges[r * 2 + 1], instanceData, depth);
+            }
+        }
+    }
+
+    static long sortKey(int shader, int texture, int vao, float depth, int index) {
+        long depthBits = (Float.floatToIntBits(Math.max(0.0f, depth)) >>> 15) & 0xFFFF;
+        return ((long) (shader & 0xFF) << 56)
+                | ((long) (texture & 0xFFF) << 44)
+                | ((long) (vao & 0xFFF) << 32)
+                | (depthBits << 16)
+                | (index & 0xFFFF);
+    }
+
+    // Sorts and draws everything submitted since the last flush, then empties the queue.
+    public void flush() {
+        Arrays.sort(keys, 0, count);
+        state.reset();
+        if (commands == null) commands = new DrawCommandBuffer(64);
+        int k = 0;
+        while (k < count) {
+            int i = (int) (keys[k] & 0xFFFF);
+            state.useProgram(shaders[i].id());
+            state.bindTexture(0, GL_TEXTURE_2D, textures[i].id());
+            Mesh mesh = meshes[i];
+            state.bindVertexArray(mesh.vao());
+            GeometryArena arena = mesh.arena();
+            if (arena == null || instances[i] == null) {
+                if (instances[i] != null) mesh.drawInstancedRange(instances[i], rangeStarts[i], rangeCounts[i]);
+                else mesh.drawRange(rangeStarts[i], rangeCounts[i]);
+                k++;
+                continue;
+            }
+            // Commands with zero instances are valid no-ops, so empty buffers need no special case.
+            arena.attachInstances(instances[i]);
+            commands.add(mesh, rangeStarts[i], rangeCounts[i], instances[i].count());
+            k++;
+            while (k < count && batchable(i, (int) (keys[k] & 0xFFFF))) {
+                int next = (int) (keys[k] & 0xFFFF);
+                commands.add(meshes[next], rangeStarts[next], rangeCounts[next], instances[i].count());
+                k++;
+            }
+            commands.submit();
+        }
+        clear();
+    }
+
+    /**
+     * Draws everything submitted so far with depthShader only, through the meshes' position-only
+     * vertex streams, ignoring textures. The items stay queued for the following flush, which
+     * must produce bit-identical positions (see the invariant gl_Position in depth.vert).
+     */
+    public void prepass(ShaderProgram depthShader) {
+        Arrays.sort(keys, 0, count);
+        state.reset();
+        if (commands == null) commands = new DrawCommandBuffer(64);
+        state.useProgram(depthShader.id());
+        int k = 0;
+        while (k < count) {
+            int i = (int) (keys[k] & 0xFFFF);
+            Mesh mesh = meshes[i];
+            state.bindVertexArray(mesh.depthVao());
+            GeometryArena arena = mesh.arena();
+            if (arena == null || instances[i] == null) {
+                if (instances[i] != null) mesh.drawInstancedRange(instances[i], rangeStarts[i], rangeCounts[i]);
+                else mesh.drawRange(rangeStarts[i], rangeCounts[i]);
+                k++;
+                continue;
+            }
+            arena.attachDepthInstances(instances[i]);
+            commands.add(mesh, rangeStarts[i], rangeCounts[i], instances[i].count());
+            k++;
+            while (k < count) {
+                int next = (int) (keys[k] & 0xFFFF);
+                if (meshes[next].arena() != arena || instances[next] != instances[i]) break;
+                commands.add(meshes[next], rangeStarts[next], rangeCounts[next], instances[i].count());
+                k++;
+            }
+            commands.submit();
+        }
+    }
+
+    private boolean batchable(int first, int next) {
+        return meshes[next].arena() == meshes[first].arena()
+                && shaders[next] == shaders[first]
+                && textures[next] == textures[first]
+                && instances[next] == instances[first];
+    }
+
+    public void clear() {
+        Arrays.fill(shaders, 0, count, null);
+        Arrays.fill(textures, 0, count, null);
+        Arrays.fill(meshes, 0, count, null);
+        Arrays.fill(instances, 0, count, null);
+        count = 0;
+    }
+
+    public int size() { return count; }
+
+    public RenderState state() { return state; }
+
+    public void delete() {
+        if (commands != null) commands.delete();
+    }
+
+    private void grow() {
+        int n = Math.min(keys.length * 2, MAX_ITEMS);
+        keys = Arrays.copyOf(keys, n);
+        shaders = Arrays.copyOf(shaders, n);
+        textures = Arrays.copyOf(textures, n);
+        meshes = Arrays.copyOf(meshes, n);
+        instances = Arrays.copyOf(instances, n);
+        rangeStarts = Arrays.copyOf(rangeStarts, n);
+        rangeCounts = Arrays.copyOf(rangeCounts, n);
+    }
+}
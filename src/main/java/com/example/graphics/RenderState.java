@@ -0,0 +1,68 @@
+package com.example.graphics;
+
+import static org.lwjgl.opengl.GL11.glBindTexture;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL20.glUseProgram;
+import static org.lwjgl.opengl.GL30.glBindVertexArray;
+
+/**
+ * Shadow copy of the GL binding state touched by {@link RenderQueue}, so binds that would not
+ * change anything are skipped. Anything that binds behind its back must be followed by
+ * {@link #reset()}.
+ */
+public class RenderState {
+    private static final int MAX_UNITS = 16;
+
+    private int program;
+    private int vao;
+    private int activeUnit;
+    private final int[] textures = new int[MAX_UNITS];
+    private final int[] targets = new int[MAX_UNITS];
+    private int skipped;
+
+    public RenderState() {
+        reset();
+    }
+
+    // Forgets everything; the next bind of each kind always reaches GL.
+    public void reset() {
+        program = -1;
+        vao = -1;
+        activeUnit = -1;
+        for (int i = 0; i < MAX_UNITS; i++) {
+            textures[i] = -1;
+            targets[i] = 0;
+        }
+    }
+
+    public void useProgram(int id) {
+        if (program == id) { skipped++; return; }
+        glUseProgram(id);
+        program = id;
+    }
+
+    public void bindVertexArray(int id) {
+        if (vao == id) { skipped++; return; }
+        glBindVertexArray(id);
+        vao = id;
+    }
+
+    public void bindTexture(int unit, int target, int id) {
+        if (textures[unit] == id && targets[unit] == target) { skipped++; return; }
+        if (activeUnit != unit) {
+            glActiveTexture(GL_TEXTURE0 + unit);
+            activeUnit = unit;
+        }
+        glBindTexture(target, id);
+        textures[unit] = id;
+        targets[unit] = target;
+    }
+
+    // Number of binds skipped since the last call, for profiling.
+    public int takeSkippedCount() {
+        int n = skipped;
+        skipped = 0;
+        return n;
+    }
+}
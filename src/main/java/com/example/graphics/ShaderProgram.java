@@ -6,19 +6,37 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.IntBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL31.GL_INVALID_INDEX;
+import static org.lwjgl.opengl.GL31.glGetUniformBlockIndex;
+import static org.lwjgl.opengl.GL31.glUniformBlockBinding;
+import static org.lwjgl.opengl.GL32.GL_GEOMETRY_SHADER;
+import static org.lwjgl.system.MemoryStack.stackPush;
 
 public class ShaderProgram {
+    private static final Uniform[] NO_ELEMENTS = new Uniform[0];
+
     private final int programId;
+    private final Map<String, Uniform> uniforms = new HashMap<>();
 
     public ShaderProgram(String vertexResource, String fragmentResource) {
-        int vertexId = createShaderFromResource(vertexResource, GL_VERTEX_SHADER);
-        int fragmentId = createShaderFromResource(fragmentResource, GL_FRAGMENT_SHADER);
+        this(vertexResource, null, fragmentResource);
+    }
+
+    // geometryResource may be null; each define is injected as "#define NAME" right after the #version line.
+    public ShaderProgram(String vertexResource, String geometryResource, String fragmentResource, String... defines) {
+        int vertexId = createShaderFromResource(vertexResource, GL_VERTEX_SHADER, defines);
+        int geometryId = geometryResource != null ? createShaderFromResource(geometryResource, GL_GEOMETRY_SHADER, defines) : 0;
+        int fragmentId = createShaderFromResource(fragmentResource, GL_FRAGMENT_SHADER, defines);
         programId = glCreateProgram();
         glAttachShader(programId, vertexId);
+        if (geometryId != 0) glAttachShader(programId, geometryId);
         glAttachShader(programId, fragmentId);
         glLinkProgram(programId);
         if (glGetProgrami(programId, GL_LINK_STATUS) == GL_FALSE) {
@@ -28,10 +46,41 @@ public class ShaderProgram {
         glDetachShader(programId, fragmentId);
         glDeleteShader(vertexId);
         glDeleteShader(fragmentId);
+        if (geometryId != 0) {
+            glDetachShader(programId, geometryId);
+            glDeleteShader(geometryId);
+        }
+        introspectUniforms();
+    }
+
+    // Resolves every active uniform once; arrays are registered under "name", "name[0]" and each "name[i]".
+    private void introspectUniforms() {
+        int count = glGetProgrami(programId, GL_ACTIVE_UNIFORMS);
+        try (var stack = stackPush()) {
+            IntBuffer size = stack.mallocInt(1);
+            IntBuffer type = stack.mallocInt(1);
+            for (int i = 0; i < count; i++) {
+                String name = glGetActiveUniform(programId, i, size, type);
+                int location = glGetUniformLocation(programId, name);
+                if (location < 0) continue; // member of a uniform block
+                if (name.endsWith("[0]")) {
+                    String base = name.substring(0, name.length() - 3);
+                    Uniform[] elements = new Uniform[size.get(0)];
+                    for (int e = 0; e < elements.length; e++) {
+                        String elementName = base + "[" + e + "]";
+                        elements[e] = new Uniform(elementName, glGetUniformLocation(programId, elementName), type.get(0), 1, NO_ELEMENTS);
+                        uniforms.put(elementName, elements[e]);
+                    }
+                    uniforms.put(base, new Uniform(base, location, type.get(0), elements.length, elements));
+                } else {
+                    uniforms.put(name, new Uniform(name, location, type.get(0), size.get(0), NO_ELEMENTS));
+                }
+            }
+        }
     }
 
-    private int createShaderFromResource(String path, int type) {
-        String source = readResource(path);
+    private int createShaderFromResource(String path, int type, String[] defines) {
+        String source = injectDefines(readResource(path), defines);
         int id = glCreateShader(type);
         glShaderSource(id, source);
         glCompileShader(id);
@@ -41,6 +90,15 @@ public class ShaderProgram {
         return id;
     }
 
+    private static String injectDefines(String source, String[] defines) {
+        if (defines.length == 0) return source;
+        int versionEnd = source.startsWith("#version") ? source.indexOf('\n') + 1 : 0;
+        StringBuilder sb = new StringBuilder(source.length() + 32 * defines.length);
+        sb.append(source, 0, versionEnd);
+        for (String define : defines) sb.append("#define ").append(define).append('\n');
+        return sb.append(source, versionEnd, source.length()).toString();
+    }
+
     private String readResource(String path) {
         try (InputStream is = ShaderProgram.class.getClassLoader().getResourceAsStream(path)) {
             if (is == null) throw new RuntimeException("Resource not found: " + path);
@@ -60,8 +118,19 @@ public class ShaderProgram {
         glDeleteProgram(programId);
     }
 
+    // Cached handle for an active uniform (or array element such as "uLightPos[3]"); Uniform.NONE if inactive.
+    public Uniform uniform(String name) {
+        return uniforms.getOrDefault(name, Uniform.NONE);
+    }
+
+    // Points the named uniform block at a UniformBuffer binding; ignored if this program doesn't use the block.
+    public void bindUniformBlock(String blockName, int binding) {
+        int index = glGetUniformBlockIndex(programId, blockName);
+        if (index != GL_INVALID_INDEX) glUniformBlockBinding(programId, index, binding);
+    }
+
     public int getUniformLocation(String name) {
-        return glGetUniformLocation(programId, name);
+        return uniform(name).location();
     }
 
     public int id() { return programId; }
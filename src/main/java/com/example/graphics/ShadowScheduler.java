@@ -0,0 +1,98 @@
+package com.example.graphics;
+
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.joml.Vector3fc;
+
+/**
+ * Decides which shadow cube faces to re-render each frame. A face becomes dirty when its
+ * light has moved more than {@code moveThreshold} since the face was last rendered, or when
+ * the occluder transform changes; dirty faces are then handed out round-robin across lights,
+ * at most {@code faceBudget} per frame (all of them if the budget is not positive).
+ */
+public class ShadowScheduler {
+    private final int capacity;
+    private final int faceBudget;
+    private final float moveThresholdSq;
+
+    // Light position each face was last rendered with, xyz per face.
+    private final float[] renderedPos;
+    private final boolean[] rendered;
+    private final int[] dirtyMask;
+    private final float[] lightPos;
+
+    private final Matrix4f occluderTransform = new Matrix4f();
+    private boolean hasOccluderTransform;
+    private int cursor;
+
+    public ShadowScheduler(int capacity, int faceBudget, float moveThreshold) {
+        this.capacity = capacity;
+        this.faceBudget = faceBudget;
+        this.moveThresholdSq = moveThreshold * moveThreshold;
+        this.renderedPos = new float[capacity * 6 * 3];
+        this.rendered = new boolean[capacity * 6];
+        this.dirtyMask = new int[capacity];
+        this.lightPos = new float[capacity * 3];
+    }
+
+    public void updateLight(int light, Vector3fc pos) {
+        lightPos[light * 3] = pos.x();
+        lightPos[light * 3 + 1] = pos.y();
+        lightPos[light * 3 + 2] = pos.z();
+        int mask = dirtyMask[light];
+        for (int face = 0; face < 6; face++) {
+            int f = light * 6 + face;
+            if (!rendered[f]) {
+                mask |= 1 << face;
+                continue;
+            }
+            float dx = pos.x() - renderedPos[f * 3];
+            float dy = pos.y() - renderedPos[f * 3 + 1];
+            float dz = pos.z() - renderedPos[f * 3 + 2];
+            if (dx * dx + dy * dy + dz * dz > moveThresholdSq) mask |= 1 << face;
+        }
+        dirtyMask[light] = mask;
+    }
+
+    // Call every frame with the transform of the shadow casters; any change invalidates all faces.
+    public void setOccluderTransform(Matrix4fc transform) {
+        if (hasOccluderTransform && occluderTransform.equals(transform, 1e-6f)) return;
+        occluderTransform.set(transform);
+        hasOccluderTransform = true;
+        invalidateAll();
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < capacity; i++) dirtyMask[i] = 0x3F;
+    }
+
+    /**
+     * Picks the faces to render this frame among the first {@code lightCount} lights and writes
+     * one face bitmask per light into {@code outMasks}. Picked faces are treated as rendered.
+     * Returns the number of faces picked.
+     */
+    public int schedule(int lightCount, int[] outMasks) {
+        int total = lightCount * 6;
+        int budget = faceBudget > 0 ? faceBudget : total;
+        for (int i = 0; i < lightCount; i++) outMasks[i] = 0;
+        if (total == 0) return 0;
+
+        int picked = 0;
+        int start = cursor % total;
+        for (int n = 0; n < total && picked < budget; n++) {
+            int f = (start + n) % total;
+            int light = f / 6;
+            int bit = 1 << (f % 6);
+            if ((dirtyMask[light] & bit) == 0) continue;
+            dirtyMask[light] &= ~bit;
+            outMasks[light] |= bit;
+            rendered[f] = true;
+            renderedPos[f * 3] = lightPos[light * 3];
+            renderedPos[f * 3 + 1] = lightPos[light * 3 + 1];
+            renderedPos[f * 3 + 2] = lightPos[light * 3 + 2];
+            picked++;
+            cursor = f + 1;
+        }
+        return picked;
+    }
+}
@@ -14,33 +14,53 @@ import static org.lwjgl.opengl.GL30.glGenerateMipmap;
 import static org.lwjgl.system.MemoryStack.stackPush;
 import static org.lwjgl.system.MemoryUtil.*;
 
-public class Texture {
+public class Texture extends RefCounted {
     private final int id;
 
     public Texture(String resourcePath) {
-        id = glGenTextures();
-        glBindTexture(GL_TEXTURE_2D, id);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
+        ImageData image = decode(resourcePath);
+        try {
+            id = upload(image);
+        } finally {
+            image.free();
+        }
+    }
 
+    public Texture(ImageData image) {
+        id = upload(image);
+    }
+
+    // Safe to call from any thread; only the upload needs the GL context.
+    public static ImageData decode(String resourcePath) {
+        ByteBuffer imageBuffer;
         try {
-            ByteBuffer imageBuffer = ioResourceToByteBuffer(resourcePath, 8 * 1024);
-            try (var stack = stackPush()) {
-                IntBuffer w = stack.mallocInt(1);
-                IntBuffer h = stack.mallocInt(1);
-                IntBuffer comp = stack.mallocInt(1);
-                STBImage.stbi_set_flip_vertically_on_load(true);
-                ByteBuffer image = STBImage.stbi_load_from_memory(imageBuffer, w, h, comp, 4);
-                if (image == null) throw new RuntimeException("Failed to load texture: " + resourcePath + " - " + STBImage.stbi_failure_reason());
-                glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, w.get(0), h.get(0), 0, GL_RGBA, GL_UNSIGNED_BYTE, image);
-                glGenerateMipmap(GL_TEXTURE_2D);
-                STBImage.stbi_image_free(image);
-            }
+            imageBuffer = ioResourceToByteBuffer(resourcePath, 8 * 1024);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        try (var stack = stackPush()) {
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer comp = stack.mallocInt(1);
+            STBImage.stbi_set_flip_vertically_on_load_thread(1);
+            ByteBuffer image = STBImage.stbi_load_from_memory(imageBuffer, w, h, comp, 4);
+            if (image == null) throw new RuntimeException("Failed to load texture: " + resourcePath + " - " + STBImage.stbi_failure_reason());
+            return new ImageData(w.get(0), h.get(0), image);
+        } finally {
+            memFree(imageBuffer);
+        }
+    }
+
+    private static int upload(ImageData image) {
+        int id = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D, id);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, image.getWidth(), image.getHeight(), 0, GL_RGBA, GL_UNSIGNED_BYTE, image.getPixels());
+        glGenerateMipmap(GL_TEXTURE_2D);
+        return id;
     }
 
     private static ByteBuffer ioResourceToByteBuffer(String resource, int bufferSize) throws IOException {
@@ -58,6 +78,9 @@ public class Texture {
         glBindTexture(GL_TEXTURE_2D, id);
     }
 
-    public void delete() { glDeleteTextures(id); }
-}
+    public int id() { return id; }
 
+    public void delete() {
+        if (release()) glDeleteTextures(id);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.graphics;
+
+import org.joml.Matrix4fc;
+import org.joml.Vector3fc;
+
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.opengl.GL20.*;
+
+/**
+ * Cached handle to an active uniform, resolved once by {@link ShaderProgram} after linking.
+ * Setters apply to the currently bound program and neither allocate nor query the driver.
+ * Uniforms the linker removed resolve to {@link #NONE}, whose setters are ignored by GL.
+ */
+public class Uniform {
+    public static final Uniform NONE = new Uniform("<none>", -1, 0, 0, new Uniform[0]);
+
+    private static final float[] MATRIX = new float[16];
+
+    private final String name;
+    private final int location;
+    private final int type;
+    private final int size;
+    private final Uniform[] elements;
+
+    Uniform(String name, int location, int type, int size, Uniform[] elements) {
+        this.name = name;
+        this.location = location;
+        this.type = type;
+        this.size = size;
+        this.elements = elements;
+    }
+
+    public String name() { return name; }
+    public int location() { return location; }
+    // GL type enum from glGetActiveUniform, e.g. GL_FLOAT_VEC3.
+    public int type() { return type; }
+    public int size() { return size; }
+
+    // Handle for element i of an array uniform; NONE when out of range.
+    public Uniform at(int index) {
+        if (index < 0 || index >= elements.length) return index == 0 && elements.length == 0 ? this : NONE;
+        return elements[index];
+    }
+
+    public void set(int value) { glUniform1i(location, value); }
+
+    public void set(boolean value) { glUniform1i(location, value ? 1 : 0); }
+
+    public void set(float value) { glUniform1f(location, value); }
+
+    public void set(float x, float y, float z) { glUniform3f(location, x, y, z); }
+
+    public void set(Vector3fc v) { glUniform3f(location, v.x(), v.y(), v.z()); }
+
+    public void set(Matrix4fc m) {
+        m.get(MATRIX);
+        glUniformMatrix4fv(location, false, MATRIX);
+    }
+
+    // Column-major mat4 data, one or more matrices back to back (for mat4 arrays).
+    public void setMatrices(FloatBuffer matrices) { glUniformMatrix4fv(location, false, matrices); }
+}
@@ -0,0 +1,65 @@
+package com.example.graphics;
+
+import org.joml.Matrix4fc;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.glBindBufferBase;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER;
+import static org.lwjgl.system.MemoryUtil.memAddress;
+import static org.lwjgl.system.MemoryUtil.memCalloc;
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+/**
+ * Uniform buffer attached to a fixed binding point, filled on the CPU at std140 offsets and
+ * uploaded once per frame. Each upload orphans the previous store, so the driver hands out
+ * fresh memory instead of waiting for draws that still read last frame's data.
+ */
+public class UniformBuffer {
+    private final int ubo;
+    private final int binding;
+    private final ByteBuffer data;
+
+    public UniformBuffer(int binding, int size) {
+        this.binding = binding;
+        this.data = memCalloc(size);
+        ubo = glGenBuffers();
+        glBindBuffer(GL_UNIFORM_BUFFER, ubo);
+        glBufferData(GL_UNIFORM_BUFFER, size, GL_STREAM_DRAW);
+        glBindBuffer(GL_UNIFORM_BUFFER, 0);
+        glBindBufferBase(GL_UNIFORM_BUFFER, binding, ubo);
+    }
+
+    public int binding() { return binding; }
+
+    public void putInt(int offset, int value) { data.putInt(offset, value); }
+
+    public void putFloat(int offset, float value) { data.putFloat(offset, value); }
+
+    public void putVec4(int offset, float x, float y, float z, float w) {
+        data.putFloat(offset, x);
+        data.putFloat(offset + 4, y);
+        data.putFloat(offset + 8, z);
+        data.putFloat(offset + 12, w);
+    }
+
+    public void putMatrix(int offset, Matrix4fc m) { m.get(offset, data); }
+
+    public void upload() {
+        upload(data.capacity());
+    }
+
+    // Sends only the first byteCount bytes, e.g. the used part of an array at the end of the block.
+    public void upload(int byteCount) {
+        glBindBuffer(GL_UNIFORM_BUFFER, ubo);
+        glBufferData(GL_UNIFORM_BUFFER, data.capacity(), GL_STREAM_DRAW);
+        nglBufferSubData(GL_UNIFORM_BUFFER, 0, byteCount, memAddress(data));
+        glBindBuffer(GL_UNIFORM_BUFFER, 0);
+    }
+
+    public void delete() {
+        glDeleteBuffers(ubo);
+        memFree(data);
+    }
+}
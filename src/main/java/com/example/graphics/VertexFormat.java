@@ -0,0 +1,96 @@
+package com.example.graphics;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
+import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
+import static org.lwjgl.opengl.GL30.GL_HALF_FLOAT;
+import static org.lwjgl.opengl.GL33.GL_INT_2_10_10_10_REV;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+
+/**
+ * GPU vertex layouts for the interleaved position/normal/uv data produced by ModelLoader.
+ * Attribute locations are the same for every format: 0 = position, 1 = normal, 2 = uv.
+ */
+public enum VertexFormat {
+    // 3 float position, 3 float normal, 2 float uv: 32 bytes
+    STANDARD(8 * Float.BYTES),
+    // 3 float position, normal as signed 10:10:10:2, uv as two half floats: 20 bytes
+    PACKED(3 * Float.BYTES + Integer.BYTES + 2 * Short.BYTES);
+
+    private final int stride;
+
+    VertexFormat(int stride) { this.stride = stride; }
+
+    public int stride() { return stride; }
+
+    // Expects the VAO and VBO to be bound.
+    void setupAttributes() {
+        glEnableVertexAttribArray(0);
+        glVertexAttribPointer(0, 3, GL_FLOAT, false, stride, 0);
+        glEnableVertexAttribArray(1);
+        glEnableVertexAttribArray(2);
+        if (this == STANDARD) {
+            glVertexAttribPointer(1, 3, GL_FLOAT, false, stride, 3 * Float.BYTES);
+            glVertexAttribPointer(2, 2, GL_FLOAT, false, stride, 6 * Float.BYTES);
+        } else {
+            glVertexAttribPointer(1, 4, GL_INT_2_10_10_10_REV, true, stride, 3 * Float.BYTES);
+            glVertexAttribPointer(2, 2, GL_HALF_FLOAT, false, stride, 3 * Float.BYTES + Integer.BYTES);
+        }
+    }
+
+    // Converts MeshData.FLOATS_PER_VERTEX interleaved floats into a new MemoryUtil buffer in this layout.
+    ByteBuffer encode(FloatBuffer vertices) {
+        int src = vertices.position();
+        int vertexCount = vertices.remaining() / MeshData.FLOATS_PER_VERTEX;
+        ByteBuffer out = memAlloc(vertexCount * stride);
+        for (int i = 0; i < vertexCount; i++) {
+            int base = src + i * MeshData.FLOATS_PER_VERTEX;
+            int dst = i * stride;
+            out.putFloat(dst, vertices.get(base));
+            out.putFloat(dst + 4, vertices.get(base + 1));
+            out.putFloat(dst + 8, vertices.get(base + 2));
+            if (this == STANDARD) {
+                for (int c = 3; c < MeshData.FLOATS_PER_VERTEX; c++) out.putFloat(dst + c * Float.BYTES, vertices.get(base + c));
+            } else {
+                out.putInt(dst + 12, packNormal(vertices.get(base + 3), vertices.get(base + 4), vertices.get(base + 5)));
+                out.putShort(dst + 16, toHalf(vertices.get(base + 6)));
+                out.putShort(dst + 18, toHalf(vertices.get(base + 7)));
+            }
+        }
+        return out;
+    }
+
+    static int packNormal(float x, float y, float z) {
+        return packSnorm10(x) | (packSnorm10(y) << 10) | (packSnorm10(z) << 20);
+    }
+
+    private static int packSnorm10(float v) {
+        float c = Math.max(-1.0f, Math.min(1.0f, v));
+        return Math.round(c * 511.0f) & 0x3FF;
+    }
+
+    // IEEE 754 binary16 with round-to-nearest; values beyond the half range become infinity.
+    static short toHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exp = (bits >>> 23) & 0xFF;
+        int mantissa = bits & 0x7FFFFF;
+        if (exp == 0xFF) return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+        int e = exp - 127 + 15;
+        if (e >= 0x1F) return (short) (sign | 0x7C00);
+        if (e <= 0) {
+            if (e < -10) return (short) sign;
+            mantissa |= 0x800000;
+            int shift = 14 - e;
+            int half = mantissa >> shift;
+            if (((mantissa >> (shift - 1)) & 1) != 0) half++;
+            return (short) (sign | half);
+        }
+        int half = sign | (e << 10) | (mantissa >> 13);
+        if ((mantissa & 0x1000) != 0) half++; // carry may roll into the exponent, which is still correct
+        return (short) half;
+    }
+}
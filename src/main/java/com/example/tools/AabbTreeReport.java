@@ -0,0 +1,153 @@
+package com.example.tools;
+
+import com.example.graphics.AabbTree;
+import org.joml.FrustumIntersection;
+import org.joml.Intersectionf;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.Random;
+
+/**
+ * Times AabbTree frustum, sphere and ray queries against a linear scan over the same boxes, at
+ * 1k, 10k and 100k random objects (or the counts given). Each query kind runs once untimed to
+ * warm up the JIT, then the best of several timed rounds is printed.
+ * Runs on the CPU only; no window or GL context is needed.
+ *
+ * Usage: AabbTreeReport [count ...]
+ */
+public class AabbTreeReport {
+    private static final int[] DEFAULT_COUNTS = { 1_000, 10_000, 100_000 };
+    private static final int QUERIES = 200;
+    private static final int ROUNDS = 5;
+    private static final float SIZE = 2.0f;
+
+    private static int hits;
+
+    public static void main(String[] args) {
+        int[] counts = DEFAULT_COUNTS;
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; i++) counts[i] = Integer.parseInt(args[i]);
+        }
+        System.out.printf("%8s %-8s %12s %12s %8s %10s%n", "objects", "query", "tree us", "scan us", "speedup", "hits/query");
+        for (int count : counts) report(count);
+    }
+
+    private static void report(int count) {
+        // Keep the density of the scene roughly constant, so queries see a similar neighbourhood.
+        float world = 20.0f * (float) Math.cbrt(count);
+        Random random = new Random(count);
+        float[] boxes = new float[count * 6];
+        AabbTree tree = new AabbTree(0.0f);
+        Vector3f min = new Vector3f(), max = new Vector3f();
+        for (int i = 0; i < count; i++) {
+            min.set(random.nextFloat(), random.nextFloat(), random.nextFloat()).mul(world);
+            max.set(random.nextFloat(), random.nextFloat(), random.nextFloat()).mul(SIZE).add(min);
+            boxes[i * 6] = min.x;
+            boxes[i * 6 + 1] = min.y;
+            boxes[i * 6 + 2] = min.z;
+            boxes[i * 6 + 3] = max.x;
+            boxes[i * 6 + 4] = max.y;
+            boxes[i * 6 + 5] = max.z;
+            tree.insert(min, max, i);
+        }
+
+        FrustumIntersection[] frusta = new FrustumIntersection[QUERIES];
+        float[] spheres = new float[QUERIES * 4];
+        Vector3f[] origins = new Vector3f[QUERIES];
+        Vector3f[] directions = new Vector3f[QUERIES];
+        Matrix4f viewProjection = new Matrix4f();
+        for (int q = 0; q < QUERIES; q++) {
+            Vector3f eye = new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()).mul(world);
+            Vector3f target = new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()).mul(world);
+            viewProjection.setPerspective((float) Math.toRadians(60.0), 16.0f / 9.0f, 0.1f, world * 0.25f)
+                    .lookAt(eye, target, new Vector3f(0, 1, 0));
+            frusta[q] = new FrustumIntersection(viewProjection, false);
+            spheres[q * 4] = eye.x;
+            spheres[q * 4 + 1] = eye.y;
+            spheres[q * 4 + 2] = eye.z;
+            spheres[q * 4 + 3] = world * 0.1f;
+            origins[q] = eye;
+            directions[q] = target.sub(eye).normalize();
+        }
+
+        time(count, "frustum",
+                () -> { for (FrustumIntersection f : frusta) tree.queryFrustum(f, id -> hits++); },
+                () -> { for (FrustumIntersection f : frusta) scanFrustum(boxes, f); });
+        time(count, "sphere",
+                () -> { for (int q = 0; q < QUERIES; q++) tree.querySphere(spheres[q * 4], spheres[q * 4 + 1], spheres[q * 4 + 2], spheres[q * 4 + 3], id -> hits++); },
+                () -> { for (int q = 0; q < QUERIES; q++) scanSphere(boxes, spheres[q * 4], spheres[q * 4 + 1], spheres[q * 4 + 2], spheres[q * 4 + 3]); });
+        time(count, "ray",
+                () -> { for (int q = 0; q < QUERIES; q++) if (tree.raycast(origins[q], directions[q], world) >= 0) hits++; },
+                () -> { for (int q = 0; q < QUERIES; q++) if (scanRay(boxes, origins[q], directions[q], world) >= 0) hits++; });
+    }
+
+    private static void time(int count, String query, Runnable tree, Runnable scan) {
+        hits = 0;
+        tree.run();
+        int treeHits = hits;
+        hits = 0;
+        scan.run();
+        if (hits != treeHits) throw new IllegalStateException(query + ": tree found " + treeHits + ", scan found " + hits);
+        double treeMicros = best(tree), scanMicros = best(scan);
+        System.out.printf("%8d %-8s %12.2f %12.2f %7.1fx %10.2f%n", count, query, treeMicros, scanMicros, scanMicros / treeMicros, (double) treeHits / QUERIES);
+    }
+
+    // Best round in microseconds per query.
+    private static double best(Runnable queries) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            queries.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1000.0 / QUERIES;
+    }
+
+    private static void scanFrustum(float[] boxes, FrustumIntersection frustum) {
+        for (int b = 0; b < boxes.length; b += 6) {
+            int result = frustum.intersectAab(boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3], boxes[b + 4], boxes[b + 5]);
+            if (result == FrustumIntersection.INSIDE || result == FrustumIntersection.INTERSECT) hits++;
+        }
+    }
+
+    private static void scanSphere(float[] boxes, float cx, float cy, float cz, float radius) {
+        float r2 = radius * radius;
+        for (int b = 0; b < boxes.length; b += 6) {
+            if (Intersectionf.testAabSphere(boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3], boxes[b + 4], boxes[b + 5], cx, cy, cz, r2)) hits++;
+        }
+    }
+
+    // Same slab test as the tree's leaves: entry distance, 0 when starting inside.
+    private static int scanRay(float[] boxes, Vector3f origin, Vector3f dir, float maxDistance) {
+        float[] o = { origin.x, origin.y, origin.z };
+        float[] d = { dir.x, dir.y, dir.z };
+        float best = maxDistance;
+        int hit = -1;
+        boxes:
+        for (int b = 0; b < boxes.length; b += 6) {
+            float tmin = 0.0f;
+            float tmax = Float.POSITIVE_INFINITY;
+            for (int axis = 0; axis < 3; axis++) {
+                float lo = boxes[b + axis];
+                float hi = boxes[b + 3 + axis];
+                if (Math.abs(d[axis]) < 1e-12f) {
+                    if (o[axis] < lo || o[axis] > hi) continue boxes;
+                    continue;
+                }
+                float inv = 1.0f / d[axis];
+                float t0 = (lo - o[axis]) * inv;
+                float t1 = (hi - o[axis]) * inv;
+                tmin = Math.max(tmin, Math.min(t0, t1));
+                tmax = Math.min(tmax, Math.max(t0, t1));
+                if (tmin > tmax) continue boxes;
+            }
+            if (tmin <= best) {
+                best = tmin;
+                hit = b / 6;
+            }
+        }
+        return hit;
+    }
+}
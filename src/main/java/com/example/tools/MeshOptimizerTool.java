@@ -0,0 +1,148 @@
+package com.example.tools;
+
+import com.example.graphics.MeshData;
+import com.example.graphics.MeshOptimizer;
+import com.example.graphics.ModelData;
+import com.example.graphics.ModelLoader;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Offline front end for ModelLoader's optimize stage.
+ *
+ * <pre>
+ * MeshOptimizerTool report [model.obj ...]   ACMR/ATVR of LOD 0: raw, cache pass only, full stage
+ * MeshOptimizerTool bake [model.obj ...]     write optimized meshes to the mesh cache
+ *                                             (-Dmodelloader.cacheDir selects the directory)
+ * MeshOptimizerTool export model.obj out.obj write the optimized LOD 0 as a Wavefront OBJ
+ * </pre>
+ *
+ * Models are classpath resource paths; the bundled ones are used when none are given.
+ */
+public class MeshOptimizerTool {
+    private static final String[] DEFAULT_MODELS = {
+            "model/cyborg/cyborg.obj",
+            "model/corona/Corona.obj",
+            "model/beer-v2/beer.obj",
+    };
+
+    public static void main(String[] args) {
+        String mode = args.length > 0 ? args[0] : "report";
+        String[] models = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : DEFAULT_MODELS;
+        switch (mode) {
+            case "report" -> report(models);
+            case "bake" -> bake(models);
+            case "export" -> {
+                if (args.length != 3) throw new IllegalArgumentException("Usage: MeshOptimizerTool export model.obj out.obj");
+                export(args[1], Paths.get(args[2]));
+            }
+            default -> throw new IllegalArgumentException("Unknown mode '" + mode + "', expected report, bake or export");
+        }
+    }
+
+    private static void report(String[] models) {
+        System.out.printf("ACMR/ATVR against a %d-entry FIFO cache%n", MeshOptimizer.ANALYZE_CACHE_SIZE);
+        System.out.println("(full stage includes meshlet clustering, which restarts the cache per cluster)");
+        System.out.printf("%-28s %10s %9s %9s %9s %9s %9s %9s %8s%n", "model", "triangles",
+                "ACMR raw", "cache", "full", "ATVR raw", "cache", "full", "time");
+        for (String path : models) {
+            ModelData data = ModelLoader.importRaw(path);
+            try {
+                Stats before = stats(data, false);
+                Stats cacheOnly = stats(data, true);
+                long start = System.nanoTime();
+                ModelLoader.optimize(data);
+                long millis = (System.nanoTime() - start) / 1_000_000;
+                Stats after = stats(data, false);
+                System.out.printf("%-28s %10d %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f %6dms%n", shorten(path), before.triangles,
+                        before.acmr(), cacheOnly.acmr(), after.acmr(), before.atvr(), cacheOnly.atvr(), after.atvr(), millis);
+            } finally {
+                for (MeshData mesh : data.getMeshes()) mesh.free();
+            }
+        }
+    }
+
+    private static void bake(String[] models) {
+        for (String path : models) {
+            ModelData data = ModelLoader.importModel(path);
+            System.out.println("Baked " + path + " (" + data.getMeshes().size() + " meshes)");
+            for (MeshData mesh : data.getMeshes()) mesh.free();
+        }
+    }
+
+    private static void export(String model, Path out) {
+        ModelData data = ModelLoader.importModel(model);
+        try (BufferedWriter writer = Files.newBufferedWriter(out)) {
+            writer.write("# Optimized by MeshOptimizerTool from " + model + "\n");
+            int base = 1;
+            for (int m = 0; m < data.getMeshes().size(); m++) {
+                MeshData mesh = data.getMeshes().get(m);
+                FloatBuffer v = mesh.getVertices();
+                int p = v.position();
+                writer.write("o mesh" + m + "\n");
+                for (int i = 0; i < mesh.getVertexCount(); i++) {
+                    int o = p + i * MeshData.FLOATS_PER_VERTEX;
+                    writer.write("v " + v.get(o) + " " + v.get(o + 1) + " " + v.get(o + 2) + "\n");
+                }
+                for (int i = 0; i < mesh.getVertexCount(); i++) {
+                    int o = p + i * MeshData.FLOATS_PER_VERTEX;
+                    writer.write("vn " + v.get(o + 3) + " " + v.get(o + 4) + " " + v.get(o + 5) + "\n");
+                }
+                for (int i = 0; i < mesh.getVertexCount(); i++) {
+                    int o = p + i * MeshData.FLOATS_PER_VERTEX;
+                    writer.write("vt " + v.get(o + 6) + " " + v.get(o + 7) + "\n");
+                }
+                IntBuffer indices = mesh.getIndices();
+                for (int i = 0; i < mesh.getIndexCount(); i += 3) {
+                    writer.write("f");
+                    for (int k = 0; k < 3; k++) {
+                        int index = base + indices.get(indices.position() + i + k);
+                        writer.write(" " + index + "/" + index + "/" + index);
+                    }
+                    writer.write("\n");
+                }
+                base += mesh.getVertexCount();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            for (MeshData mesh : data.getMeshes()) mesh.free();
+        }
+        System.out.println("Wrote " + out);
+    }
+
+    private record Stats(long triangles, double misses, double vertices) {
+        double acmr() { return triangles == 0 ? 0 : misses / triangles; }
+        double atvr() { return vertices == 0 ? 0 : misses / vertices; }
+    }
+
+    // Totals over all meshes, so the model figures weight meshes by size; optionally on a cache-ordered copy.
+    private static Stats stats(ModelData data, boolean cacheOrdered) {
+        long triangles = 0;
+        double misses = 0, vertices = 0;
+        for (MeshData mesh : data.getMeshes()) {
+            int[] indices = new int[mesh.getIndexCount()];
+            mesh.getIndices().get(mesh.getIndices().position(), indices);
+            if (cacheOrdered) MeshOptimizer.optimizeVertexCache(indices, mesh.getVertexCount());
+            int mt = indices.length / 3;
+            float acmr = MeshOptimizer.acmr(indices, mesh.getVertexCount());
+            float atvr = MeshOptimizer.atvr(indices, mesh.getVertexCount());
+            triangles += mt;
+            misses += (double) acmr * mt;
+            if (atvr > 0) vertices += acmr * mt / atvr;
+        }
+        return new Stats(triangles, misses, vertices);
+    }
+
+    private static String shorten(String path) {
+        return path.length() <= 28 ? path : "..." + path.substring(path.length() - 25);
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.tools;
+
+import com.example.graphics.FrustumCuller;
+import com.example.graphics.MeshData;
+import com.example.graphics.Meshlets;
+import com.example.graphics.ModelData;
+import com.example.graphics.ModelLoader;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+/**
+ * Prints how many triangles meshlet culling would submit for the given models (the bundled ones
+ * by default), viewed from a ring of camera positions around each model at several distances.
+ * Runs on the CPU only; no window or GL context is needed.
+ *
+ * Usage: MeshletReport [model.obj ...]
+ */
+public class MeshletReport {
+    private static final String[] DEFAULT_MODELS = {
+            "model/cyborg/cyborg.obj",
+            "model/corona/Corona.obj",
+            "model/beer-v2/beer.obj",
+    };
+    private static final float[] DISTANCES = { 0.75f, 1.5f, 3.0f };
+    private static final float[] ELEVATIONS = { 0.0f, 45.0f };
+    private static final int AZIMUTHS = 8;
+
+    public static void main(String[] args) {
+        String[] models = args.length > 0 ? args : DEFAULT_MODELS;
+        System.out.printf("%-28s %8s %9s %10s %12s %8s%n", "model", "distance", "meshlets", "triangles", "submitted", "ratio");
+        for (String path : models) {
+            ModelData data = ModelLoader.importModel(path);
+            try {
+                report(path, data);
+            } finally {
+                for (MeshData mesh : data.getMeshes()) mesh.free();
+            }
+        }
+    }
+
+    private static void report(String path, ModelData data) {
+        Vector3f min = data.getBoundsMin();
+        Vector3f max = data.getBoundsMax();
+        Vector3f center = new Vector3f(min).add(max).mul(0.5f);
+        float diagonal = max.distance(min);
+
+        int meshletCount = 0;
+        int maxMeshlets = 0;
+        long total = 0;
+        for (MeshData mesh : data.getMeshes()) {
+            total += mesh.getIndexCount() / 3;
+            if (mesh.getMeshlets() == null) continue;
+            meshletCount += mesh.getMeshlets().count();
+            maxMeshlets = Math.max(maxMeshlets, mesh.getMeshlets().count());
+        }
+
+        FrustumCuller culler = new FrustumCuller();
+        Matrix4f identity = new Matrix4f();
+        Matrix4f projection = new Matrix4f().perspective((float) Math.toRadians(60), 16.0f / 9.0f, 0.01f, diagonal * 10.0f);
+        Matrix4f viewProjection = new Matrix4f();
+        Vector3f eye = new Vector3f();
+        int[] ranges = new int[Math.max(2, maxMeshlets * 2)];
+
+        for (float distance : DISTANCES) {
+            long submitted = 0;
+            int views = 0;
+            for (float elevation : ELEVATIONS) {
+                for (int a = 0; a < AZIMUTHS; a++) {
+                    double azimuth = 2.0 * Math.PI * a / AZIMUTHS;
+                    double pitch = Math.toRadians(elevation);
+                    float r = distance * diagonal;
+                    eye.set((float) (Math.cos(azimuth) * Math.cos(pitch)), (float) Math.sin(pitch), (float) (Math.sin(azimuth) * Math.cos(pitch)))
+                            .mul(r).add(center);
+                    viewProjection.set(projection).lookAt(eye, center, new Vector3f(0, 1, 0));
+                    culler.set(viewProjection);
+                    submitted += submittedTriangles(data, culler, identity, ranges);
+                    views++;
+                }
+            }
+            double average = (double) submitted / views;
+            System.out.printf("%-28s %8.2f %9d %10d %12.0f %7.1f%%%n",
+                    shorten(path), distance, meshletCount, total, average, 100.0 * average / Math.max(1, total));
+        }
+    }
+
+    private static long submittedTriangles(ModelData data, FrustumCuller culler, Matrix4f transform, int[] ranges) {
+        long triangles = 0;
+        for (MeshData mesh : data.getMeshes()) {
+            Meshlets meshlets = mesh.getMeshlets();
+            if (meshlets == null) {
+                if (culler.isVisible(mesh.getBoundsMin(), mesh.getBoundsMax())) triangles += mesh.getIndexCount() / 3;
+                continue;
+            }
+            int count = culler.visibleMeshlets(meshlets, transform, ranges);
+            for (int r = 0; r < count; r++) triangles += ranges[r * 2 + 1] / 3;
+        }
+        return triangles;
+    }
+
+    private static String shorten(String path) {
+        return path.length() <= 28 ? path : "..." + path.substring(path.length() - 25);
+    }
+}
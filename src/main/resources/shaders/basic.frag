@@ -1,9 +1,13 @@
 #version 330 core
+#ifdef SHADOW_CUBE_ARRAY
+#extension GL_ARB_texture_cube_map_array : require
+#endif
 out vec4 FragColor;
 
 in vec3 vNormal;
 in vec3 vFragPos;
 in vec2 vTex;
+flat in vec4 vParams; // x = emissive, y = unlit
 
 uniform sampler2D uTexture;
 uniform samplerCube uEnvMap;
@@ -11,89 +15,119 @@ uniform bool uReflect;
 uniform float uReflectStrength;
 uniform float uGlow;
 
-const int MAX_LIGHTS = 16;
-uniform int uLightCount;
-uniform vec3 uLightPos[MAX_LIGHTS];
-uniform vec3 uLightColor[MAX_LIGHTS];
+layout (std140) uniform Frame { // see FrameUniforms
+    mat4 uView;
+    mat4 uProjection;
+    vec4 uViewPos; // xyz
+};
+
+layout (std140) uniform Lights { // see LightUniforms
+    int uLightCount;
+    int uShadowCount;
+    float uShadowFarPlane;
+    ivec4 uClusterDims;   // tiles x, tiles y, depth slices
+    vec4 uClusterParams;  // tile width, tile height (pixels), slice scale, slice bias
+};
+
+// Clustered light lists, see ClusteredLights
+uniform samplerBuffer uLightData;     // two texels per light: position + radius, color + intensity
+uniform usamplerBuffer uClusterGrid;  // per cluster: offset into uLightIndices, light count
+uniform usamplerBuffer uLightIndices;
 
-uniform vec3 uViewPos;
 uniform float uAmbient;
 uniform float uSpecularStrength;
 uniform float uShininess;
-uniform bool uEmissive;
-uniform bool uUnlit;
 
 uniform int uShadowEnabled;
-uniform float uShadowFarPlane;
-// Individual shadow map samplers (support up to 12 bottles)
-uniform samplerCube uShadowMap0;
-uniform samplerCube uShadowMap1;
-uniform samplerCube uShadowMap2;
-uniform samplerCube uShadowMap3;
-uniform samplerCube uShadowMap4;
-uniform samplerCube uShadowMap5;
-uniform samplerCube uShadowMap6;
-uniform samplerCube uShadowMap7;
-uniform samplerCube uShadowMap8;
-uniform samplerCube uShadowMap9;
-uniform samplerCube uShadowMap10;
-uniform samplerCube uShadowMap11;
+// All lights' depth cubes in one texture, see PointLightShadowMap
+#ifdef SHADOW_CUBE_ARRAY
+uniform samplerCubeArray uShadowMaps;
+#else
+uniform sampler2DArray uShadowMaps; // six layers per light, in cubemap face order
+#endif
 
 float sampleShadow(int idx, vec3 dir) {
-    if (idx == 0) return texture(uShadowMap0, dir).r;
-    else if (idx == 1) return texture(uShadowMap1, dir).r;
-    else if (idx == 2) return texture(uShadowMap2, dir).r;
-    else if (idx == 3) return texture(uShadowMap3, dir).r;
-    else if (idx == 4) return texture(uShadowMap4, dir).r;
-    else if (idx == 5) return texture(uShadowMap5, dir).r;
-    else if (idx == 6) return texture(uShadowMap6, dir).r;
-    else if (idx == 7) return texture(uShadowMap7, dir).r;
-    else if (idx == 8) return texture(uShadowMap8, dir).r;
-    else if (idx == 9) return texture(uShadowMap9, dir).r;
-    else if (idx == 10) return texture(uShadowMap10, dir).r;
-    else if (idx == 11) return texture(uShadowMap11, dir).r;
-    return 1.0; // default (no shadow info)
+#ifdef SHADOW_CUBE_ARRAY
+    return texture(uShadowMaps, vec4(dir, float(idx))).r;
+#else
+    // Same face selection and (s,t) mapping as cubemap sampling, so the layers can be rendered
+    // with the cube face matrices from PointLightShadowMap.buildLightSpaceMatrices.
+    vec3 a = abs(dir);
+    int face;
+    float ma;
+    vec2 st;
+    if (a.x >= a.y && a.x >= a.z) {
+        ma = a.x;
+        face = dir.x > 0.0 ? 0 : 1;
+        st = vec2(dir.x > 0.0 ? -dir.z : dir.z, -dir.y);
+    } else if (a.y >= a.z) {
+        ma = a.y;
+        face = dir.y > 0.0 ? 2 : 3;
+        st = vec2(dir.x, dir.y > 0.0 ? dir.z : -dir.z);
+    } else {
+        ma = a.z;
+        face = dir.z > 0.0 ? 4 : 5;
+        st = vec2(dir.z > 0.0 ? dir.x : -dir.x, -dir.y);
+    }
+    st = st / ma * 0.5 + 0.5;
+    return texture(uShadowMaps, vec3(st, float(idx * 6 + face))).r;
+#endif
 }
 
 void main() {
     vec3 baseColor = texture(uTexture, vTex).rgb;
+    bool emissive = vParams.x > 0.5;
+    bool unlit = vParams.y > 0.5;
 
-    if (uUnlit) {
+    if (unlit) {
         FragColor = vec4(baseColor, 1.0);
         return;
     }
 
     vec3 N = normalize(vNormal);
-    vec3 V = normalize(uViewPos - vFragPos);
+    vec3 V = normalize(uViewPos.xyz - vFragPos);
 
     vec3 lighting = uAmbient * baseColor;
 
-    for (int i = 0; i < uLightCount; ++i) {
-        vec3 Lvec = uLightPos[i] - vFragPos;
+    float viewDepth = max(-(uView * vec4(vFragPos, 1.0)).z, 1e-4);
+    int slice = clamp(int(log(viewDepth) * uClusterParams.z + uClusterParams.w), 0, uClusterDims.z - 1);
+    ivec2 tile = min(ivec2(gl_FragCoord.xy / uClusterParams.xy), uClusterDims.xy - 1);
+    uvec2 cluster = texelFetch(uClusterGrid, (slice * uClusterDims.y + tile.y) * uClusterDims.x + tile.x).xy;
+
+    for (uint c = 0u; c < cluster.y; ++c) {
+        int i = int(texelFetch(uLightIndices, int(cluster.x + c)).r);
+        vec4 positionRadius = texelFetch(uLightData, i * 2);
+        vec4 colorIntensity = texelFetch(uLightData, i * 2 + 1);
+        vec3 lightPos = positionRadius.xyz;
+        vec3 Lvec = lightPos - vFragPos;
         float dist = length(Lvec);
+        if (dist >= positionRadius.w) continue;
         vec3 L = Lvec / dist;
         float diff = max(dot(N, L), 0.0);
         vec3 H = normalize(L + V);
         float spec = pow(max(dot(N, H), 0.0), uShininess) * uSpecularStrength;
         float attenuation = 1.0 / (1.0 + 0.09 * dist + 0.032 * dist * dist);
+        // Fade to zero at the light's radius so the cluster cut-off is not visible.
+        float falloff = clamp(1.0 - pow(dist / positionRadius.w, 4.0), 0.0, 1.0);
+        attenuation *= falloff * falloff * colorIntensity.w;
         float shadowFactor = 1.0;
-        if (uShadowEnabled == 1 && !uUnlit && i < 12) {
-            vec3 sampleDir = normalize(vFragPos - uLightPos[i]);
+        if (uShadowEnabled == 1 && i < uShadowCount) {
+            vec3 sampleDir = normalize(vFragPos - lightPos);
             float closestDepth = sampleShadow(i, sampleDir) * uShadowFarPlane;
             float currentDepth = dist;
             float bias = 0.01;
             float shadow = currentDepth - bias > closestDepth ? 1.0 : 0.0;
             shadowFactor = 1.0 - shadow;
         }
-        lighting += shadowFactor * attenuation * (diff * baseColor + spec * uLightColor[i]);
+        lighting += shadowFactor * attenuation * (diff * baseColor + spec * colorIntensity.rgb);
     }
 
-    if (uEmissive) {
+    if (emissive) {
         lighting += 0.35 * vec3(1.0);
     }
 
     if (uReflect) {
-        vec3 I = normalize(vFragPos - uViewPos);
+        vec3 I = normalize(vFragPos - uViewPos.xyz);
         vec3 R = reflect(I, N);
         vec3 envCol = texture(uEnvMap, R).rgb;
         lighting = mix(lighting, envCol, clamp(uReflectStrength, 0.0, 1.0));
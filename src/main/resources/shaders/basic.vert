@@ -2,19 +2,29 @@
 layout (location = 0) in vec3 aPos;
 layout (location = 1) in vec3 aNormal;
 layout (location = 2) in vec2 aTex;
+// Per instance, see InstanceBuffer
+layout (location = 3) in mat4 aModel;
+layout (location = 7) in vec4 aParams; // x = emissive, y = unlit
+layout (location = 8) in mat3 aNormalMatrix; // inverse transpose of aModel's 3x3
 
-uniform mat4 uProjection;
-uniform mat4 uView;
-uniform mat4 uModel;
+layout (std140) uniform Frame { // see FrameUniforms
+    mat4 uView;
+    mat4 uProjection;
+    vec4 uViewPos; // xyz
+};
 
 out vec3 vNormal;
 out vec3 vFragPos;
 out vec2 vTex;
+flat out vec4 vParams;
+// Matches depth.vert, so depth from the pre-pass passes GL_EQUAL here.
+invariant gl_Position;
 
 void main() {
-    vec4 worldPos = uModel * vec4(aPos, 1.0);
+    vec4 worldPos = aModel * vec4(aPos, 1.0);
     vFragPos = worldPos.xyz;
-    vNormal = mat3(transpose(inverse(uModel))) * aNormal;
+    vNormal = aNormalMatrix * aNormal;
     vTex = aTex;
+    vParams = aParams;
     gl_Position = uProjection * uView * worldPos;
 }
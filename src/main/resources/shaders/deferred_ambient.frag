@@ -0,0 +1,48 @@
+#version 330 core
+// Deferred path: everything basic.frag adds besides the point lights, once per covered pixel.
+// Also copies the G-buffer depth so the light volumes and the skybox can depth test against it.
+out vec4 FragColor;
+
+uniform sampler2D uAlbedo;
+uniform sampler2D uNormal;
+uniform sampler2D uPosition;
+uniform sampler2D uDepth;
+uniform samplerCube uEnvMap;
+uniform bool uReflect;
+uniform float uReflectStrength;
+uniform float uGlow;
+uniform float uAmbient;
+
+layout (std140) uniform Frame { // see FrameUniforms
+    mat4 uView;
+    mat4 uProjection;
+    vec4 uViewPos; // xyz
+};
+
+void main() {
+    ivec2 pixel = ivec2(gl_FragCoord.xy);
+    vec4 position = texelFetch(uPosition, pixel, 0);
+    if (position.w == 0.0) discard;
+    gl_FragDepth = texelFetch(uDepth, pixel, 0).r;
+
+    vec4 albedo = texelFetch(uAlbedo, pixel, 0);
+    vec4 normal = texelFetch(uNormal, pixel, 0);
+    if (normal.w > 0.5) {
+        FragColor = vec4(albedo.rgb, 1.0);
+        return;
+    }
+
+    vec3 lighting = uAmbient * albedo.rgb;
+    if (albedo.a > 0.5) {
+        lighting += 0.35 * vec3(1.0);
+    }
+    if (uReflect) {
+        vec3 I = normalize(position.xyz - uViewPos.xyz);
+        vec3 R = reflect(I, normal.xyz);
+        vec3 envCol = texture(uEnvMap, R).rgb;
+        lighting = mix(lighting, envCol, clamp(uReflectStrength, 0.0, 1.0));
+    }
+    lighting += uGlow * vec3(1.0);
+
+    FragColor = vec4(lighting, 1.0);
+}
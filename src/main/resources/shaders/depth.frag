@@ -0,0 +1,4 @@
+#version 330 core
+// Depth pre-pass: depth only, no color output.
+void main() {
+}
@@ -0,0 +1,19 @@
+#version 330 core
+// Depth pre-pass, see RenderQueue.prepass. Must transform exactly like basic.vert so the
+// shaded pass can depth test with GL_EQUAL.
+layout (location = 0) in vec3 aPos;
+// Per instance, see InstanceBuffer
+layout (location = 3) in mat4 aModel;
+
+layout (std140) uniform Frame { // see FrameUniforms
+    mat4 uView;
+    mat4 uProjection;
+    vec4 uViewPos; // xyz
+};
+
+invariant gl_Position;
+
+void main() {
+    vec4 worldPos = aModel * vec4(aPos, 1.0);
+    gl_Position = uProjection * uView * worldPos;
+}
@@ -2,12 +2,19 @@
 
 in vec3 vWorldPos;
 
+layout (std140) uniform Lights { // see LightUniforms
+    int uLightCount;
+    int uShadowCount;
+    float uShadowFarPlane;
+    ivec4 uClusterDims;
+    vec4 uClusterParams;
+};
+
 uniform vec3 uLightPos;
-uniform float uFarPlane;
 
 void main() {
     float dist = length(vWorldPos - uLightPos);
     // Store linear depth scaled to [0,1]
-    gl_FragDepth = dist / uFarPlane;
+    gl_FragDepth = dist / uShadowFarPlane;
 }
 
@@ -2,12 +2,8 @@
 layout (location = 0) in vec3 aPos;
 
 uniform mat4 uModel;
-uniform mat4 uLightSpace; // view-projection for current cubemap face
-
-out vec3 vWorldPos;
 
 void main() {
-    vec4 worldPos = uModel * vec4(aPos, 1.0);
-    vWorldPos = worldPos.xyz;
-    gl_Position = uLightSpace * worldPos;
+    // World space; depth_cube.geom projects into each cubemap face.
+    gl_Position = uModel * vec4(aPos, 1.0);
 }
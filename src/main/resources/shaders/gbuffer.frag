@@ -0,0 +1,18 @@
+#version 330 core
+// Geometry pass of the deferred path, drawn with basic.vert; see GBuffer for the layout.
+layout (location = 0) out vec4 gAlbedo;   // rgb albedo, a = emissive
+layout (location = 1) out vec4 gNormal;   // xyz world normal, w = unlit
+layout (location = 2) out vec4 gPosition; // xyz world position, w = 1 where geometry was drawn
+
+in vec3 vNormal;
+in vec3 vFragPos;
+in vec2 vTex;
+flat in vec4 vParams; // x = emissive, y = unlit
+
+uniform sampler2D uTexture;
+
+void main() {
+    gAlbedo = vec4(texture(uTexture, vTex).rgb, vParams.x > 0.5 ? 1.0 : 0.0);
+    gNormal = vec4(normalize(vNormal), vParams.y > 0.5 ? 1.0 : 0.0);
+    gPosition = vec4(vFragPos, 1.0);
+}
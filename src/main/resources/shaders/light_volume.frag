@@ -0,0 +1,104 @@
+#version 330 core
+#ifdef SHADOW_CUBE_ARRAY
+#extension GL_ARB_texture_cube_map_array : require
+#endif
+// Deferred path: one light's contribution to the G-buffer pixels inside its volume, added on
+// top of deferred_ambient.frag. Same lighting as the loop in basic.frag.
+out vec4 FragColor;
+
+flat in int vLight;
+
+uniform sampler2D uAlbedo;
+uniform sampler2D uNormal;
+uniform sampler2D uPosition;
+uniform samplerBuffer uLightData; // see ClusteredLights
+
+layout (std140) uniform Frame { // see FrameUniforms
+    mat4 uView;
+    mat4 uProjection;
+    vec4 uViewPos; // xyz
+};
+
+layout (std140) uniform Lights { // see LightUniforms
+    int uLightCount;
+    int uShadowCount;
+    float uShadowFarPlane;
+    ivec4 uClusterDims;
+    vec4 uClusterParams;
+};
+
+uniform float uSpecularStrength;
+uniform float uShininess;
+
+uniform int uShadowEnabled;
+// All lights' depth cubes in one texture, see PointLightShadowMap
+#ifdef SHADOW_CUBE_ARRAY
+uniform samplerCubeArray uShadowMaps;
+#else
+uniform sampler2DArray uShadowMaps; // six layers per light, in cubemap face order
+#endif
+
+float sampleShadow(int idx, vec3 dir) {
+#ifdef SHADOW_CUBE_ARRAY
+    return texture(uShadowMaps, vec4(dir, float(idx))).r;
+#else
+    // Same face selection and (s,t) mapping as cubemap sampling, so the layers can be rendered
+    // with the cube face matrices from PointLightShadowMap.buildLightSpaceMatrices.
+    vec3 a = abs(dir);
+    int face;
+    float ma;
+    vec2 st;
+    if (a.x >= a.y && a.x >= a.z) {
+        ma = a.x;
+        face = dir.x > 0.0 ? 0 : 1;
+        st = vec2(dir.x > 0.0 ? -dir.z : dir.z, -dir.y);
+    } else if (a.y >= a.z) {
+        ma = a.y;
+        face = dir.y > 0.0 ? 2 : 3;
+        st = vec2(dir.x, dir.y > 0.0 ? dir.z : -dir.z);
+    } else {
+        ma = a.z;
+        face = dir.z > 0.0 ? 4 : 5;
+        st = vec2(dir.z > 0.0 ? dir.x : -dir.x, -dir.y);
+    }
+    st = st / ma * 0.5 + 0.5;
+    return texture(uShadowMaps, vec3(st, float(idx * 6 + face))).r;
+#endif
+}
+
+void main() {
+    ivec2 pixel = ivec2(gl_FragCoord.xy);
+    vec4 position = texelFetch(uPosition, pixel, 0);
+    vec4 normal = texelFetch(uNormal, pixel, 0);
+    if (position.w == 0.0 || normal.w > 0.5) discard;
+
+    vec3 vFragPos = position.xyz;
+    vec3 baseColor = texelFetch(uAlbedo, pixel, 0).rgb;
+    vec3 N = normal.xyz;
+    vec3 V = normalize(uViewPos.xyz - vFragPos);
+    int i = vLight;
+    vec4 positionRadius = texelFetch(uLightData, i * 2);
+    vec4 colorIntensity = texelFetch(uLightData, i * 2 + 1);
+    vec3 lightPos = positionRadius.xyz;
+    vec3 Lvec = lightPos - vFragPos;
+    float dist = length(Lvec);
+    if (dist >= positionRadius.w) discard;
+    vec3 L = Lvec / dist;
+    float diff = max(dot(N, L), 0.0);
+    vec3 H = normalize(L + V);
+    float spec = pow(max(dot(N, H), 0.0), uShininess) * uSpecularStrength;
+    float attenuation = 1.0 / (1.0 + 0.09 * dist + 0.032 * dist * dist);
+    // Fade to zero at the light's radius so the edge of its volume is not visible.
+    float falloff = clamp(1.0 - pow(dist / positionRadius.w, 4.0), 0.0, 1.0);
+    attenuation *= falloff * falloff * colorIntensity.w;
+    float shadowFactor = 1.0;
+    if (uShadowEnabled == 1 && i < uShadowCount) {
+        vec3 sampleDir = normalize(vFragPos - lightPos);
+        float closestDepth = sampleShadow(i, sampleDir) * uShadowFarPlane;
+        float currentDepth = dist;
+        float bias = 0.01;
+        float shadow = currentDepth - bias > closestDepth ? 1.0 : 0.0;
+        shadowFactor = 1.0 - shadow;
+    }
+    FragColor = vec4(shadowFactor * attenuation * (diff * baseColor + spec * colorIntensity.rgb), 1.0);
+}
@@ -0,0 +1,19 @@
+#version 330 core
+// Deferred path: one box per light, scaled to its radius; see LightVolume.
+layout (location = 0) in vec3 aPos;
+
+layout (std140) uniform Frame { // see FrameUniforms
+    mat4 uView;
+    mat4 uProjection;
+    vec4 uViewPos; // xyz
+};
+
+uniform samplerBuffer uLightData; // see ClusteredLights
+
+flat out int vLight;
+
+void main() {
+    vec4 positionRadius = texelFetch(uLightData, gl_InstanceID * 2);
+    vLight = gl_InstanceID;
+    gl_Position = uProjection * uView * vec4(positionRadius.xyz + aPos * positionRadius.w, 1.0);
+}
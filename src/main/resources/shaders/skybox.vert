@@ -3,12 +3,16 @@ layout (location = 0) in vec3 aPos;
 
 out vec3 vTexDir;
 
-uniform mat4 uProjection;
-uniform mat4 uViewRot; // view matrix without translation
+layout (std140) uniform Frame { // see FrameUniforms
+    mat4 uView;
+    mat4 uProjection;
+    vec4 uViewPos; // xyz
+};
 
 void main() {
     vTexDir = aPos;
-    vec4 pos = uProjection * uViewRot * vec4(aPos, 1.0);
+    // Rotation only, so the box stays centred on the camera
+    vec4 pos = uProjection * mat4(mat3(uView)) * vec4(aPos, 1.0);
     gl_Position = pos.xyww; // force depth to 1.0 (far plane)
 }
 
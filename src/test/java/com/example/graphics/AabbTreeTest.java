@@ -0,0 +1,189 @@
+package com.example.graphics;
+
+import org.joml.FrustumIntersection;
+import org.joml.Intersectionf;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the tree against a linear scan over the same boxes. The brute-force runs use a zero
+ * margin so the tree's stored boxes equal the inserted ones.
+ */
+class AabbTreeTest {
+    private static final int COUNT = 20_000;
+    private static final float WORLD = 500.0f;
+
+    private final Random random = new Random(1234);
+    private AabbTree tree;
+    private float[] boxes;
+    private int[] proxies;
+    private boolean[] alive;
+
+    @BeforeEach
+    void build() {
+        tree = new AabbTree(0.0f);
+        boxes = new float[COUNT * 6];
+        proxies = new int[COUNT];
+        alive = new boolean[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            randomBox(i);
+            proxies[i] = tree.insert(min(i), max(i), i);
+            alive[i] = true;
+        }
+    }
+
+    @Test
+    void staysBalanced() {
+        assertEquals(COUNT, tree.size());
+        // An AVL tree over n leaves is at most about 1.44 log2(n) high.
+        double log2 = Math.log(COUNT) / Math.log(2);
+        assertTrue(tree.height() <= 1.44 * log2 + 2, "height " + tree.height());
+    }
+
+    @Test
+    void queriesMatchLinearScan() {
+        checkQueries();
+    }
+
+    @Test
+    void updateMatchesLinearScan() {
+        for (int i = 0; i < COUNT; i += 3) {
+            float dx = (random.nextFloat() - 0.5f) * 40.0f, dy = (random.nextFloat() - 0.5f) * 40.0f, dz = 1.0f + random.nextFloat();
+            for (int k = 0; k < 2; k++) {
+                boxes[i * 6 + k * 3] += dx;
+                boxes[i * 6 + k * 3 + 1] += dy;
+                boxes[i * 6 + k * 3 + 2] += dz;
+            }
+            assertTrue(tree.update(proxies[i], min(i), max(i)));
+        }
+        checkQueries();
+        staysBalanced();
+    }
+
+    @Test
+    void removeMatchesLinearScan() {
+        for (int i = 1; i < COUNT; i += 3) {
+            tree.remove(proxies[i]);
+            alive[i] = false;
+        }
+        assertEquals(COUNT - (COUNT + 1) / 3, tree.size());
+        checkQueries();
+    }
+
+    @Test
+    void smallMovesStayInsideFattenedBox() {
+        AabbTree fat = new AabbTree(0.25f);
+        int proxy = fat.insert(new Vector3f(0, 0, 0), new Vector3f(1, 1, 1), 7);
+        assertFalse(fat.update(proxy, new Vector3f(0.2f, 0, 0), new Vector3f(1.2f, 1, 1)));
+        assertTrue(fat.update(proxy, new Vector3f(0.3f, 0, 0), new Vector3f(1.3f, 1, 1)));
+        assertEquals(7, fat.payload(proxy));
+    }
+
+    private void checkQueries() {
+        for (int q = 0; q < 20; q++) {
+            Vector3f eye = randomPoint();
+            Matrix4f viewProjection = new Matrix4f()
+                    .perspective((float) Math.toRadians(60.0), 16.0f / 9.0f, 0.1f, 300.0f)
+                    .lookAt(eye, randomPoint(), new Vector3f(0, 1, 0));
+            FrustumIntersection frustum = new FrustumIntersection(viewProjection, false);
+            Hits hits = new Hits();
+            tree.queryFrustum(frustum, hits::add);
+            boolean[] expected = new boolean[COUNT];
+            for (int i = 0; i < COUNT; i++) {
+                int b = i * 6;
+                expected[i] = alive[i] && frustum.testAab(boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3], boxes[b + 4], boxes[b + 5]);
+            }
+            hits.assertMatches(expected);
+
+            Vector3f c = randomPoint();
+            float radius = 5.0f + random.nextFloat() * 60.0f;
+            hits = new Hits();
+            tree.querySphere(c.x, c.y, c.z, radius, hits::add);
+            for (int i = 0; i < COUNT; i++) {
+                int b = i * 6;
+                expected[i] = alive[i] && Intersectionf.testAabSphere(boxes[b], boxes[b + 1], boxes[b + 2],
+                        boxes[b + 3], boxes[b + 4], boxes[b + 5], c.x, c.y, c.z, radius * radius);
+            }
+            hits.assertMatches(expected);
+
+            Vector3f origin = randomPoint();
+            Vector3f dir = randomPoint().sub(origin).normalize();
+            float maxDistance = 400.0f;
+            float nearest = Float.POSITIVE_INFINITY;
+            for (int i = 0; i < COUNT; i++) {
+                float t = alive[i] ? rayEntry(i, origin, dir) : -1.0f;
+                if (t >= 0.0f && t <= maxDistance) nearest = Math.min(nearest, t);
+            }
+            int hit = tree.raycast(origin, dir, maxDistance);
+            if (nearest == Float.POSITIVE_INFINITY) {
+                assertEquals(-1, hit);
+            } else {
+                // Ties may pick either box, so compare entry distances rather than payloads.
+                assertTrue(hit >= 0 && alive[hit]);
+                assertEquals(nearest, rayEntry(hit, origin, dir));
+            }
+        }
+    }
+
+    private float rayEntry(int i, Vector3f origin, Vector3f dir) {
+        float tmin = 0.0f;
+        float tmax = Float.POSITIVE_INFINITY;
+        for (int axis = 0; axis < 3; axis++) {
+            float o = origin.get(axis), d = dir.get(axis);
+            float lo = boxes[i * 6 + axis], hi = boxes[i * 6 + 3 + axis];
+            if (Math.abs(d) < 1e-12f) {
+                if (o < lo || o > hi) return -1.0f;
+                continue;
+            }
+            float inv = 1.0f / d;
+            float t0 = (lo - o) * inv, t1 = (hi - o) * inv;
+            tmin = Math.max(tmin, Math.min(t0, t1));
+            tmax = Math.min(tmax, Math.max(t0, t1));
+            if (tmin > tmax) return -1.0f;
+        }
+        return tmin;
+    }
+
+    private void randomBox(int i) {
+        Vector3f p = randomPoint();
+        float sx = 0.5f + random.nextFloat() * 8.0f, sy = 0.5f + random.nextFloat() * 8.0f, sz = 0.5f + random.nextFloat() * 8.0f;
+        int b = i * 6;
+        boxes[b] = p.x;
+        boxes[b + 1] = p.y;
+        boxes[b + 2] = p.z;
+        boxes[b + 3] = p.x + sx;
+        boxes[b + 4] = p.y + sy;
+        boxes[b + 5] = p.z + sz;
+    }
+
+    private Vector3f randomPoint() {
+        return new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()).mul(WORLD).sub(WORLD / 2, WORLD / 2, WORLD / 2);
+    }
+
+    private Vector3f min(int i) {
+        return new Vector3f(boxes[i * 6], boxes[i * 6 + 1], boxes[i * 6 + 2]);
+    }
+
+    private Vector3f max(int i) {
+        return new Vector3f(boxes[i * 6 + 3], boxes[i * 6 + 4], boxes[i * 6 + 5]);
+    }
+
+    private static final class Hits {
+        private final boolean[] seen = new boolean[COUNT];
+
+        void add(int payload) {
+            assertFalse(seen[payload], "payload " + payload + " reported twice");
+            seen[payload] = true;
+        }
+
+        void assertMatches(boolean[] expected) {
+            assertArrayEquals(expected, seen);
+        }
+    }
+}
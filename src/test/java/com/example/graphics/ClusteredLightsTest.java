@@ -0,0 +1,112 @@
+package com.example.graphics;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusteredLightsTest {
+    private static final float NEAR = 0.1f;
+    private static final float FAR = 100.0f;
+    private static final int CLUSTERS = ClusteredLights.TILES_X * ClusteredLights.TILES_Y * ClusteredLights.SLICES;
+
+    private final Matrix4f projection = new Matrix4f().perspective((float) Math.toRadians(60.0), 16.0f / 9.0f, NEAR, FAR);
+    private final Matrix4f view = new Matrix4f().lookAt(0, 2, 10, 0, 0, 0, 0, 1, 0);
+    private ClusteredLights serial;
+    private ClusteredLights parallel;
+
+    @AfterEach
+    void delete() {
+        if (serial != null) serial.delete();
+        if (parallel != null) parallel.delete();
+    }
+
+    @Test
+    void radiusIsWhereAttenuatedIntensityReachesCutoff() {
+        for (float intensity : new float[] { 0.06f, 0.15f, 1.0f, 4.0f, 25.0f }) {
+            float r = ClusteredLights.radiusFor(intensity);
+            float attenuation = 1.0f / (1.0f + ClusteredLights.ATTENUATION_LINEAR * r + ClusteredLights.ATTENUATION_QUADRATIC * r * r);
+            assertEquals(ClusteredLights.CUTOFF, intensity * attenuation, 1e-5f, "intensity " + intensity);
+        }
+        assertEquals(0.0f, ClusteredLights.radiusFor(ClusteredLights.CUTOFF));
+        assertEquals(0.0f, ClusteredLights.radiusFor(0.0f));
+    }
+
+    @Test
+    void parallelBinningMatchesSerial() {
+        serial = new ClusteredLights(0);
+        parallel = new ClusteredLights(3);
+        Random random = new Random(99);
+        int count = 1000;
+        for (int i = 0; i < count; i++) {
+            Vector3f position = new Vector3f(random.nextFloat() * 60 - 30, random.nextFloat() * 10 - 2, random.nextFloat() * 60 - 40);
+            float intensity = 0.1f + random.nextFloat();
+            serial.setLight(i, position, 1, 1, 1, intensity);
+            parallel.setLight(i, position, 1, 1, 1, intensity);
+        }
+        for (ClusteredLights lights : new ClusteredLights[] { serial, parallel }) {
+            lights.setLightCount(count);
+            lights.setProjection(projection, NEAR, FAR, 1280, 720);
+        }
+
+        for (int frame = 0; frame < 3; frame++) {
+            view.rotateY(0.3f);
+            int indexCount = serial.bin(view);
+            assertEquals(indexCount, parallel.bin(view));
+            assertTrue(indexCount > 0);
+            for (int c = 0; c < CLUSTERS; c++) {
+                assertEquals(serial.clusterOffset(c), parallel.clusterOffset(c));
+                assertEquals(serial.clusterLightCount(c), parallel.clusterLightCount(c));
+            }
+            for (int i = 0; i < indexCount; i++) assertEquals(serial.lightIndex(i), parallel.lightIndex(i));
+            assertEquals(serial.takeOverflowCount(), parallel.takeOverflowCount());
+        }
+    }
+
+    @Test
+    void lightCrossingNearPlaneCoversEveryTile() {
+        serial = new ClusteredLights(0);
+        // At the eye, so the sphere straddles the near plane.
+        serial.setLight(0, new Vector3f(0, 2, 10), 1, 1, 1, 1.0f);
+        serial.setLightCount(1);
+        serial.setProjection(projection, NEAR, FAR, 1280, 720);
+        serial.bin(view);
+        int tiles = ClusteredLights.TILES_X * ClusteredLights.TILES_Y;
+        for (int t = 0; t < tiles; t++) {
+            assertEquals(1, serial.clusterLightCount(t), "tile " + t);
+            assertEquals(0, serial.lightIndex(serial.clusterOffset(t)));
+        }
+    }
+
+    @Test
+    void countsLightsBeyondClusterCapacity() {
+        serial = new ClusteredLights(0);
+        serial.setProjection(projection, NEAR, FAR, 1280, 720);
+        Vector3f position = new Vector3f(0, 0, 0);
+        serial.setLight(0, position, 1, 1, 1, 1.0f);
+        serial.setLightCount(1);
+        serial.bin(view);
+        int covered = 0;
+        for (int c = 0; c < CLUSTERS; c++) covered += serial.clusterLightCount(c);
+        assertTrue(covered > 0);
+        assertEquals(0, serial.takeOverflowCount());
+
+        int extra = 10;
+        int count = ClusteredLights.MAX_LIGHTS_PER_CLUSTER + extra;
+        for (int i = 0; i < count; i++) serial.setLight(i, position, 1, 1, 1, 1.0f);
+        serial.setLightCount(count);
+        serial.bin(view);
+        for (int c = 0; c < CLUSTERS; c++) {
+            int n = serial.clusterLightCount(c);
+            assertTrue(n == 0 || n == ClusteredLights.MAX_LIGHTS_PER_CLUSTER, "cluster " + c + " holds " + n);
+            // Lights go in ascending order, so the first ones are kept.
+            for (int k = 0; k < n; k++) assertEquals(k, serial.lightIndex(serial.clusterOffset(c) + k));
+        }
+        assertEquals(covered * extra, serial.takeOverflowCount());
+        assertEquals(0, serial.takeOverflowCount());
+    }
+}
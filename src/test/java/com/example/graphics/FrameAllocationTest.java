@@ -0,0 +1,145 @@
+package com.example.graphics;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs the CPU side of a frame (camera, culling, tree queries, shadow scheduling, light binning)
+ * until the JIT has settled, then asserts that further frames allocate nothing on the calling
+ * thread or on the binning workers.
+ */
+class FrameAllocationTest {
+    private static final int WARMUP_FRAMES = 12_000;
+    private static final int MEASURED_FRAMES = 1_000;
+    private static final int LIGHTS = 96;
+    private static final int SHADOW_LIGHTS = 4;
+
+    private final Camera camera = new Camera();
+    private final Matrix4f projection = new Matrix4f();
+    private final Matrix4f view = new Matrix4f();
+    private final Matrix4f viewProjection = new Matrix4f();
+    private final Matrix4f occluder = new Matrix4f();
+    private final Matrix4f[] lightSpaceMatrices = new Matrix4f[6];
+    private final Vector3f lightPos = new Vector3f();
+    private final Vector3f casterMin = new Vector3f(-1, 0, -1);
+    private final Vector3f casterMax = new Vector3f(1, 2, 1);
+    private final FrustumCuller culler = new FrustumCuller();
+    private final FrustumIntersection frustum = new FrustumIntersection();
+    private final AabbTree tree = new AabbTree(0.25f);
+    private final int[] proxies = new int[64];
+    private final ShadowScheduler scheduler = new ShadowScheduler(SHADOW_LIGHTS, 6, 0.05f);
+    private final int[] faceMasks = new int[SHADOW_LIGHTS];
+    private ClusteredLights lights;
+    private int hits;
+    private final IntConsumer query = id -> hits++;
+
+    @AfterEach
+    void delete() {
+        if (lights != null) lights.delete();
+    }
+
+    @Test
+    void steadyStateFrameAllocatesNothing() {
+        com.sun.management.ThreadMXBean threads = threadBean();
+        // Workers of instances deleted by earlier tests may still be winding down; skip those.
+        Set<Long> earlier = binnerThreadIds();
+        lights = new ClusteredLights(3);
+        Set<Long> ours = binnerThreadIds();
+        ours.removeAll(earlier);
+        long[] workers = ours.stream().mapToLong(Long::longValue).toArray();
+        assertEquals(3, workers.length);
+
+        setUp();
+        for (int frame = 0; frame < WARMUP_FRAMES; frame++) frame(frame);
+        // The worker counters come back in fresh arrays, so they are read outside the frame thread's window.
+        long[] workersBefore = threads.getThreadAllocatedBytes(workers);
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int frame = WARMUP_FRAMES; frame < WARMUP_FRAMES + MEASURED_FRAMES; frame++) frame(frame);
+        long after = threads.getCurrentThreadAllocatedBytes();
+        long[] workersAfter = threads.getThreadAllocatedBytes(workers);
+
+        assertEquals(0, after - before, "bytes allocated by the frame thread");
+        for (int w = 0; w < workers.length; w++) {
+            assertEquals(0, workersAfter[w] - workersBefore[w], "bytes allocated by binning worker " + w);
+        }
+        assertTrue(hits > 0);
+    }
+
+    private void setUp() {
+        for (int i = 0; i < lightSpaceMatrices.length; i++) lightSpaceMatrices[i] = new Matrix4f();
+        for (int i = 0; i < proxies.length; i++) {
+            float x = (i % 8) * 3.0f - 12.0f, z = (i / 8) * 3.0f - 12.0f;
+            proxies[i] = tree.insert(new Vector3f(x, 0, z), new Vector3f(x + 1, 1, z + 1), i);
+        }
+        for (int i = 0; i < LIGHTS; i++) {
+            lights.setLight(i, new Vector3f((i % 20) - 10.0f, 1.0f, (i / 20) - 5.0f), 1, 1, 1, 0.5f);
+        }
+        lights.setLightCount(LIGHTS);
+    }
+
+    // What ModelViewer does on the CPU each frame, minus the GL calls.
+    private void frame(int frame) {
+        float dt = 0.016f;
+        camera.processKeyboard(frame % 2 == 0, frame % 2 == 1, frame % 3 == 0, false, false, false, frame % 5 == 0, dt);
+        camera.processMouse(frame % 7 - 3, 0);
+        camera.getViewMatrix(view);
+        projection.setPerspective((float) Math.toRadians(60.0), 16.0f / 9.0f, 0.1f, 100.0f);
+        viewProjection.set(projection).mul(view);
+        culler.set(viewProjection);
+        culler.isVisible(casterMin, casterMax);
+        frustum.set(viewProjection, false);
+        tree.queryFrustum(frustum, query);
+
+        float angle = frame * 0.01f;
+        occluder.rotationY(angle);
+        scheduler.setOccluderTransform(occluder);
+        for (int li = 0; li < SHADOW_LIGHTS; li++) {
+            lightPos.set((float) Math.cos(angle + li), 2.0f, (float) Math.sin(angle + li)).mul(4.0f);
+            scheduler.updateLight(li, lightPos);
+        }
+        scheduler.schedule(SHADOW_LIGHTS, faceMasks);
+        for (int li = 0; li < SHADOW_LIGHTS; li++) {
+            if (faceMasks[li] == 0) continue;
+            lightPos.set((float) Math.cos(angle + li), 2.0f, (float) Math.sin(angle + li)).mul(4.0f);
+            tree.querySphere(lightPos.x, lightPos.y, lightPos.z, 25.0f, query);
+            PointLightShadowMap.buildLightSpaceMatrices(lightPos, 0.1f, 25.0f, lightSpaceMatrices);
+            culler.visibleFaces(lightSpaceMatrices, casterMin, casterMax);
+        }
+        casterMin.x = -1.0f + (float) Math.sin(angle);
+        casterMax.x = casterMin.x + 2.0f;
+        tree.update(proxies[frame % proxies.length], casterMin, casterMax);
+        culler.takeTestedCount();
+        culler.takeCulledCount();
+
+        lights.setProjection(projection, 0.1f, 100.0f, 1280, 720);
+        lights.bin(view);
+        lights.takeOverflowCount();
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    private static Set<Long> binnerThreadIds() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().startsWith("light-binner-"))
+                .map(Thread::getId)
+                .collect(Collectors.toCollection(HashSet::new));
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.graphics;
+
+import org.joml.Matrix3f;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstanceBufferTest {
+    private static final int NORMAL_OFFSET = 20;
+
+    private final InstanceBuffer instances = new InstanceBuffer(1);
+
+    @AfterEach
+    void delete() {
+        instances.delete();
+    }
+
+    @Test
+    void writesInverseTransposeForNonUniformScale() {
+        Matrix4f model = new Matrix4f()
+                .translate(3, -1, 2)
+                .rotateXYZ(0.4f, 1.1f, -0.7f)
+                .scale(2.0f, 0.5f, 3.0f);
+        instances.add(new Matrix4f(), false, false);
+        instances.add(model, true, false);
+        assertEquals(2, instances.count());
+
+        Matrix3f expected = new Matrix3f().set(model).invert().transpose();
+        Matrix3f written = normalMatrix(1);
+        assertTrue(written.equals(expected, 1e-5f), () -> "expected\n" + expected + "but was\n" + written);
+        assertEquals(1.0f, instances.get(1, 16));
+        assertEquals(0.0f, instances.get(1, 17));
+
+        // A normal of a surface stays perpendicular to the surface's transformed tangents.
+        Vector3f tangent = new Vector3f(1, 1, 0);
+        Vector3f normal = new Vector3f(1, -1, 0.5f).normalize();
+        Vector3f bitangent = new Vector3f(normal).cross(tangent);
+        Vector3f n = written.transform(new Vector3f(normal));
+        assertEquals(0.0f, n.dot(model.transformDirection(new Vector3f(tangent))), 1e-4f);
+        assertEquals(0.0f, n.dot(model.transformDirection(new Vector3f(bitangent))), 1e-4f);
+        // The plain upper 3x3 does not keep it so under non-uniform scale.
+        Vector3f skewed = new Matrix3f().set(model).transform(new Vector3f(normal));
+        assertTrue(Math.abs(skewed.dot(model.transformDirection(new Vector3f(tangent)))) > 0.1f);
+    }
+
+    @Test
+    void identityInstanceHasIdentityNormalMatrix() {
+        instances.add(new Matrix4f().translate(5, 6, 7), false, true);
+        assertTrue(normalMatrix(0).equals(new Matrix3f(), 1e-6f));
+        assertEquals(7.0f, instances.get(0, 14));
+        assertEquals(1.0f, instances.get(0, 17));
+    }
+
+    @Test
+    void growsPastInitialCapacity() {
+        for (int i = 0; i < 9; i++) instances.add(new Matrix4f().scaling(i + 1, 1, 1), false, false);
+        assertEquals(9, instances.count());
+        for (int i = 0; i < 9; i++) assertEquals(1.0f / (i + 1), normalMatrix(i).m00(), 1e-6f);
+    }
+
+    // The nine column-major floats after the model matrix and parameters.
+    private Matrix3f normalMatrix(int instance) {
+        float[] m = new float[9];
+        for (int k = 0; k < 9; k++) m[k] = instances.get(instance, NORMAL_OFFSET + k);
+        return new Matrix3f(m[0], m[1], m[2], m[3], m[4], m[5], m[6], m[7], m[8]);
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.graphics;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MeshOptimizerTest {
+    // Runs the import-time stages on the raw Assimp output of a bundled model.
+    @ParameterizedTest
+    @ValueSource(strings = { "model/corona/Corona.obj", "model/cyborg/cyborg.obj" })
+    void stagesKeepTrianglesAndDoNotRaiseCacheMisses(String resource) {
+        ModelData data = ModelLoader.importRaw(resource);
+        try {
+            for (MeshData mesh : data.getMeshes()) check(mesh);
+        } finally {
+            data.free();
+        }
+    }
+
+    private static void check(MeshData mesh) {
+        int vertexCount = mesh.getVertexCount();
+        float[] vertices = new float[mesh.getVertices().remaining()];
+        int[] indices = new int[mesh.getIndices().remaining()];
+        mesh.getVertices().get(0, vertices);
+        mesh.getIndices().get(0, indices);
+        // Tag each vertex with its original index in the unused second uv component, so the
+        // triangle set can be compared after optimizeVertexFetch renumbers the vertices.
+        for (int v = 0; v < vertexCount; v++) vertices[v * MeshData.FLOATS_PER_VERTEX + 7] = v;
+        float[] originalVertices = vertices.clone();
+        long[] original = triangles(indices, null);
+        float rawAcmr = MeshOptimizer.acmr(indices, vertexCount);
+        float rawAtvr = MeshOptimizer.atvr(indices, vertexCount);
+
+        MeshOptimizer.optimizeVertexCache(indices, vertexCount);
+        assertArrayEquals(original, triangles(indices, null));
+        float cacheAcmr = MeshOptimizer.acmr(indices, vertexCount);
+        assertTrue(cacheAcmr <= rawAcmr, "ACMR " + rawAcmr + " -> " + cacheAcmr);
+        assertTrue(MeshOptimizer.atvr(indices, vertexCount) <= rawAtvr);
+
+        MeshOptimizer.optimizeOverdraw(indices, vertices);
+        assertArrayEquals(original, triangles(indices, null));
+        float overdrawAcmr = MeshOptimizer.acmr(indices, vertexCount);
+        float overdrawAtvr = MeshOptimizer.atvr(indices, vertexCount);
+        assertTrue(overdrawAcmr <= rawAcmr, "ACMR " + rawAcmr + " -> " + overdrawAcmr);
+        assertTrue(overdrawAtvr <= rawAtvr, "ATVR " + rawAtvr + " -> " + overdrawAtvr);
+
+        int referenced = MeshOptimizer.optimizeVertexFetch(vertices, indices);
+        assertArrayEquals(original, triangles(indices, vertices));
+        assertEquals(Arrays.stream(indices).distinct().count(), referenced);
+        // Renumbering moves whole vertices and leaves the cache behaviour as it was.
+        for (int v = 0; v < vertexCount; v++) {
+            int from = (int) vertices[v * MeshData.FLOATS_PER_VERTEX + 7] * MeshData.FLOATS_PER_VERTEX;
+            assertArrayEquals(Arrays.copyOfRange(originalVertices, from, from + MeshData.FLOATS_PER_VERTEX),
+                    Arrays.copyOfRange(vertices, v * MeshData.FLOATS_PER_VERTEX, (v + 1) * MeshData.FLOATS_PER_VERTEX));
+        }
+        assertEquals(overdrawAcmr, MeshOptimizer.acmr(indices, vertexCount));
+        assertEquals(overdrawAtvr, MeshOptimizer.atvr(indices, vertexCount));
+    }
+
+    // Sorted triangle keys in original vertex numbering (read from the tag when vertices is given),
+    // rotated so the smallest index leads, which keeps the winding.
+    private static long[] triangles(int[] indices, float[] vertices) {
+        long[] keys = new long[indices.length / 3];
+        for (int t = 0; t < keys.length; t++) {
+            int a = original(indices[t * 3], vertices), b = original(indices[t * 3 + 1], vertices), c = original(indices[t * 3 + 2], vertices);
+            while (a > b || a > c) {
+                int tmp = a;
+                a = b;
+                b = c;
+                c = tmp;
+            }
+            keys[t] = ((long) a << 42) | ((long) b << 21) | c;
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    private static int original(int index, float[] vertices) {
+        return vertices == null ? index : (int) vertices[index * MeshData.FLOATS_PER_VERTEX + 7];
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.graphics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.system.MemoryUtil.*;
+
+class MeshSimplifierTest {
+    private static final int GRID = 32;
+
+    private FloatBuffer vertices;
+    private IntBuffer indices;
+    private IntBuffer result;
+
+    @AfterEach
+    void free() {
+        if (vertices != null) memFree(vertices);
+        if (indices != null) memFree(indices);
+        if (result != null) memFree(result);
+    }
+
+    @Test
+    void flatGridReachesTarget() {
+        grid(0.0f);
+        int target = indices.remaining() / 4 / 3 * 3;
+        result = new MeshSimplifier(vertices).simplify(indices, target, 0.01f);
+        assertTrue(result.remaining() <= target, result.remaining() + " > " + target);
+        assertTrue(result.remaining() > 0);
+        assertValid(result);
+    }
+
+    @Test
+    void errorBudgetStopsEarly() {
+        grid(0.5f);
+        int target = indices.remaining() / 4 / 3 * 3;
+        result = new MeshSimplifier(vertices).simplify(indices, target, 1e-4f);
+        // Every collapse on the bumpy grid moves the surface by more than the budget.
+        assertEquals(indices.remaining(), result.remaining());
+        memFree(result);
+        result = null;
+
+        result = new MeshSimplifier(vertices).simplify(indices, target, 1.0f);
+        assertTrue(result.remaining() <= target);
+        assertValid(result);
+    }
+
+    @Test
+    void outputIndicesAreInRangeAndNonDegenerate() {
+        grid(0.05f);
+        MeshSimplifier simplifier = new MeshSimplifier(vertices);
+        IntBuffer previous = indices;
+        for (int level = 0; level < 3; level++) {
+            IntBuffer lod = simplifier.simplify(previous, previous.remaining() / 6 * 3, 0.2f);
+            assertValid(lod);
+            if (previous != indices) memFree(previous);
+            previous = lod;
+        }
+        result = previous;
+    }
+
+    @Test
+    void selectLodHalvesPerLevelBelowReference() {
+        float reference = Model.LOD_REFERENCE_PIXELS;
+        assertEquals(0, Model.selectLod(reference, 0));
+        assertEquals(0, Model.selectLod(Float.POSITIVE_INFINITY, 0));
+        assertEquals(1, Model.selectLod(reference - 1.0f, 0));
+        assertEquals(1, Model.selectLod(reference / 2 + 1.0f, 0));
+        assertEquals(2, Model.selectLod(reference / 2 - 1.0f, 0));
+        assertEquals(3, Model.selectLod(reference / 4 - 1.0f, 0));
+    }
+
+    @Test
+    void selectLodAppliesBiasAndClampsAtZero() {
+        float reference = Model.LOD_REFERENCE_PIXELS;
+        assertEquals(1, Model.selectLod(reference * 2, 1));
+        assertEquals(3, Model.selectLod(reference / 2 - 1.0f, 1));
+        assertEquals(0, Model.selectLod(reference - 1.0f, -1));
+        assertEquals(0, Model.selectLod(reference * 2, -2));
+    }
+
+    @Test
+    void projectedPixelsIsInfiniteInsideTheSphere() {
+        assertEquals(Float.POSITIVE_INFINITY, Model.projectedPixels(2.0f, 1.0f, 1.0f, 720));
+        // A sphere whose radius spans the half-height at unit tan is the full viewport high.
+        float fov = (float) (2.0 * Math.atan(1.0));
+        assertEquals(720.0f, Model.projectedPixels(1.0f, 1.0f + 1e-6f, fov, 720), 0.01f);
+    }
+
+    // GRID x GRID quads in the xz plane, with random heights up to bump.
+    private void grid(float bump) {
+        Random random = new Random(7);
+        int side = GRID + 1;
+        vertices = memCallocFloat(side * side * MeshData.FLOATS_PER_VERTEX);
+        for (int z = 0; z < side; z++) {
+            for (int x = 0; x < side; x++) {
+                int base = (z * side + x) * MeshData.FLOATS_PER_VERTEX;
+                vertices.put(base, x / (float) GRID);
+                vertices.put(base + 1, bump * random.nextFloat());
+                vertices.put(base + 2, z / (float) GRID);
+                vertices.put(base + 4, 1.0f);
+                vertices.put(base + 6, x / (float) GRID);
+                vertices.put(base + 7, z / (float) GRID);
+            }
+        }
+        indices = memAllocInt(GRID * GRID * 6);
+        for (int z = 0; z < GRID; z++) {
+            for (int x = 0; x < GRID; x++) {
+                int v = z * side + x;
+                indices.put(v).put(v + side).put(v + 1);
+                indices.put(v + 1).put(v + side).put(v + side + 1);
+            }
+        }
+        indices.flip();
+    }
+
+    private void assertValid(IntBuffer lod) {
+        assertEquals(0, lod.remaining() % 3);
+        int vertexCount = vertices.remaining() / MeshData.FLOATS_PER_VERTEX;
+        for (int i = 0; i < lod.remaining(); i += 3) {
+            int a = lod.get(i), b = lod.get(i + 1), c = lod.get(i + 2);
+            for (int v : new int[] { a, b, c }) assertTrue(v >= 0 && v < vertexCount, "index " + v);
+            assertTrue(a != b && b != c && a != c, "degenerate triangle at " + i);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.graphics;
+
+import org.joml.Matrix4f;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.system.MemoryUtil.*;
+
+class MeshletsTest {
+    private FloatBuffer vertices;
+    private IntBuffer indices;
+
+    @AfterEach
+    void free() {
+        if (vertices != null) memFree(vertices);
+        if (indices != null) memFree(indices);
+    }
+
+    @Test
+    void reorderKeepsEveryTriangleOnce() {
+        sphere(48, 32);
+        long[] before = triangles(indices, 0, indices.remaining());
+        Meshlets meshlets = Meshlets.build(vertices, indices);
+        long[] after = triangles(indices, 0, indices.remaining());
+        assertArrayEquals(before, after);
+        assertEquals(before.length, meshlets.triangleCount());
+    }
+
+    @Test
+    void clustersStayWithinLimits() {
+        sphere(48, 32);
+        Meshlets meshlets = Meshlets.build(vertices, indices);
+        assertTrue(meshlets.count() > 1);
+        for (int m = 0; m < meshlets.count(); m++) {
+            int count = meshlets.indexCount(m);
+            assertEquals(0, count % 3);
+            assertTrue(count / 3 <= Meshlets.MAX_TRIANGLES, "cluster " + m + " has " + count / 3 + " triangles");
+            int[] used = new int[count];
+            indices.get(meshlets.first(m), used);
+            long distinct = Arrays.stream(used).distinct().count();
+            assertTrue(distinct <= Meshlets.MAX_VERTICES, "cluster " + m + " has " + distinct + " vertices");
+        }
+    }
+
+    @Test
+    void rangesAreContiguous() {
+        sphere(48, 32);
+        Meshlets meshlets = Meshlets.build(vertices, indices);
+        int end = 0;
+        for (int m = 0; m < meshlets.count(); m++) {
+            assertEquals(end, meshlets.first(m));
+            assertTrue(meshlets.indexCount(m) > 0);
+            end += meshlets.indexCount(m);
+        }
+        assertEquals(indices.remaining(), end);
+    }
+
+    @Test
+    void coneCullsBackFacingPlanarCluster() {
+        // A small patch in the xy plane, wound counter-clockwise as seen from +z.
+        grid(4);
+        Meshlets meshlets = Meshlets.build(vertices, indices);
+        assertEquals(1, meshlets.count());
+        assertEquals(0.0f, meshlets.cutoff(0), 1e-6f);
+        int[] ranges = new int[2];
+        Matrix4f identity = new Matrix4f();
+
+        FrustumCuller front = new FrustumCuller().set(lookAt(0, 0, 5));
+        assertEquals(1, front.visibleMeshlets(meshlets, identity, ranges));
+        assertEquals(indices.remaining(), ranges[1]);
+
+        FrustumCuller back = new FrustumCuller().set(lookAt(0, 0, -5));
+        assertEquals(0, back.visibleMeshlets(meshlets, identity, ranges));
+    }
+
+    @Test
+    void adjacentVisibleClustersMerge() {
+        // Three one-triangle clusters along x without cones; the middle one can be moved off screen.
+        int[] ranges = { 0, 3, 3, 3, 6, 3 };
+        float[] bounds = new float[3 * Meshlets.FLOATS_PER_BOUNDS];
+        for (int m = 0; m < 3; m++) {
+            int o = m * Meshlets.FLOATS_PER_BOUNDS;
+            bounds[o] = m - 1.0f;
+            bounds[o + 3] = 0.25f;
+            bounds[o + 7] = 1.0f;
+        }
+        FrustumCuller culler = new FrustumCuller().set(lookAt(0, 0, 5));
+        int[] out = new int[6];
+        assertEquals(1, culler.visibleMeshlets(new Meshlets(ranges, bounds, 3), new Matrix4f(), out));
+        assertArrayEquals(new int[] { 0, 9 }, Arrays.copyOf(out, 2));
+
+        bounds[Meshlets.FLOATS_PER_BOUNDS + 2] = 100.0f;
+        assertEquals(2, culler.visibleMeshlets(new Meshlets(ranges, bounds, 3), new Matrix4f(), out));
+        assertArrayEquals(new int[] { 0, 3, 6, 3 }, Arrays.copyOf(out, 4));
+    }
+
+    private static Matrix4f lookAt(float x, float y, float z) {
+        return new Matrix4f()
+                .perspective((float) Math.toRadians(60.0), 1.0f, 0.1f, 50.0f)
+                .lookAt(x, y, z, 0, 0, 0, 0, 1, 0);
+    }
+
+    // Triangles as sorted keys, rotated so the smallest index leads; winding is preserved.
+    private static long[] triangles(IntBuffer buffer, int first, int count) {
+        long[] keys = new long[count / 3];
+        for (int t = 0; t < keys.length; t++) {
+            int a = buffer.get(first + t * 3), b = buffer.get(first + t * 3 + 1), c = buffer.get(first + t * 3 + 2);
+            while (a > b || a > c) {
+                int tmp = a;
+                a = b;
+                b = c;
+                c = tmp;
+            }
+            keys[t] = ((long) a << 42) | ((long) b << 21) | c;
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    // UV sphere with a duplicated seam column, so welded positions differ from vertex indices.
+    private void sphere(int slices, int stacks) {
+        int columns = slices + 1;
+        vertices = memCallocFloat(columns * (stacks + 1) * MeshData.FLOATS_PER_VERTEX);
+        for (int s = 0; s <= stacks; s++) {
+            double phi = Math.PI * s / stacks;
+            for (int i = 0; i <= slices; i++) {
+                double theta = 2.0 * Math.PI * (i % slices) / slices;
+                float x = (float) (Math.sin(phi) * Math.cos(theta));
+                float y = (float) Math.cos(phi);
+                float z = (float) (Math.sin(phi) * Math.sin(theta));
+                int base = (s * columns + i) * MeshData.FLOATS_PER_VERTEX;
+                vertices.put(base, x).put(base + 1, y).put(base + 2, z);
+                vertices.put(base + 3, x).put(base + 4, y).put(base + 5, z);
+                vertices.put(base + 6, i / (float) slices).put(base + 7, s / (float) stacks);
+            }
+        }
+        indices = memAllocInt(slices * stacks * 6);
+        for (int s = 0; s < stacks; s++) {
+            for (int i = 0; i < slices; i++) {
+                int v = s * columns + i;
+                indices.put(v).put(v + 1).put(v + columns);
+                indices.put(v + 1).put(v + columns + 1).put(v + columns);
+            }
+        }
+        indices.flip();
+    }
+
+    // n x n quads over [-0.5, 0.5] in the xy plane, facing +z.
+    private void grid(int n) {
+        int side = n + 1;
+        vertices = memCallocFloat(side * side * MeshData.FLOATS_PER_VERTEX);
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                int base = (y * side + x) * MeshData.FLOATS_PER_VERTEX;
+                vertices.put(base, x / (float) n - 0.5f).put(base + 1, y / (float) n - 0.5f).put(base + 5, 1.0f);
+            }
+        }
+        indices = memAllocInt(n * n * 6);
+        for (int y = 0; y < n; y++) {
+            for (int x = 0; x < n; x++) {
+                int v = y * side + x;
+                indices.put(v).put(v + 1).put(v + side);
+                indices.put(v + 1).put(v + side + 1).put(v + side);
+            }
+        }
+        indices.flip();
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.graphics;
+
+import org.joml.Vector3f;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.lwjgl.assimp.AIFace;
+import org.lwjgl.assimp.AIMesh;
+import org.lwjgl.assimp.AIScene;
+import org.lwjgl.assimp.AIVector3D;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.lwjgl.assimp.Assimp.*;
+import static org.lwjgl.system.MemoryUtil.*;
+
+class ModelLoaderTest {
+    // Room for the few AIVector3D.Buffer views a call creates; per-vertex garbage would be far larger.
+    private static final long FIXED_ALLOCATION_BYTES = 1024;
+    // Enough to load and initialize the classes involved; a JIT-warm loop could let escape analysis
+    // hide exactly the wrapper allocations this test is after.
+    private static final int WARMUP_RUNS = 2;
+
+    private ByteBuffer source;
+    private AIScene scene;
+
+    @AfterEach
+    void release() {
+        if (scene != null) aiReleaseImport(scene);
+        if (source != null) memFree(source);
+    }
+
+    // The address-based extraction must match the AIVector3D/AIFace wrapper path it replaced.
+    @ParameterizedTest
+    @ValueSource(strings = { "model/corona/Corona.obj", "model/cyborg/cyborg.obj" })
+    void extractionMatchesWrapperPath(String resource) throws IOException {
+        source = load(resource);
+        scene = aiImportFileFromMemory(source, ModelLoader.IMPORT_FLAGS, (String) null);
+        assertNotNull(scene, () -> aiGetErrorString());
+        assertTrue(scene.mNumMeshes() > 0);
+
+        for (int i = 0; i < scene.mNumMeshes(); i++) {
+            AIMesh mesh = AIMesh.create(scene.mMeshes().get(i));
+            Vector3f expectedMin = new Vector3f(Float.POSITIVE_INFINITY);
+            Vector3f expectedMax = new Vector3f(Float.NEGATIVE_INFINITY);
+            float[] expectedVertices = wrapperVertices(mesh, expectedMin, expectedMax);
+            int[] expectedIndices = wrapperIndices(mesh);
+
+            int indexCount = ModelLoader.countIndices(mesh);
+            assertEquals(expectedIndices.length, indexCount);
+            FloatBuffer vertices = memAllocFloat(mesh.mNumVertices() * MeshData.FLOATS_PER_VERTEX);
+            IntBuffer indices = memAllocInt(indexCount);
+            try {
+                Vector3f min = new Vector3f(Float.POSITIVE_INFINITY);
+                Vector3f max = new Vector3f(Float.NEGATIVE_INFINITY);
+                ModelLoader.extractVertices(mesh, vertices, min, max);
+                ModelLoader.extractIndices(mesh, indices);
+
+                float[] actualVertices = new float[vertices.remaining()];
+                vertices.get(0, actualVertices);
+                int[] actualIndices = new int[indices.remaining()];
+                indices.get(0, actualIndices);
+                assertArrayEquals(expectedVertices, actualVertices);
+                assertArrayEquals(expectedIndices, actualIndices);
+                assertEquals(expectedMin, min);
+                assertEquals(expectedMax, max);
+            } finally {
+                memFree(vertices);
+                memFree(indices);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "model/corona/Corona.obj", "model/cyborg/cyborg.obj" })
+    void extractionDoesNotAllocatePerElement(String resource) throws IOException {
+        com.sun.management.ThreadMXBean threads = threadBean();
+        source = load(resource);
+        scene = aiImportFileFromMemory(source, ModelLoader.IMPORT_FLAGS, (String) null);
+        assertNotNull(scene, () -> aiGetErrorString());
+
+        for (int i = 0; i < scene.mNumMeshes(); i++) {
+            AIMesh mesh = AIMesh.create(scene.mMeshes().get(i));
+            int indexCount = ModelLoader.countIndices(mesh);
+            FloatBuffer vertices = memAllocFloat(mesh.mNumVertices() * MeshData.FLOATS_PER_VERTEX);
+            IntBuffer indices = memAllocInt(indexCount);
+            Vector3f min = new Vector3f();
+            Vector3f max = new Vector3f();
+            try {
+                for (int run = 0; run < WARMUP_RUNS; run++) extract(mesh, vertices, indices, min, max);
+                long before = threads.getCurrentThreadAllocatedBytes();
+                extract(mesh, vertices, indices, min, max);
+                long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+                assertTrue(allocated <= FIXED_ALLOCATION_BYTES,
+                        allocated + " bytes for " + mesh.mNumVertices() + " vertices and " + indexCount + " indices");
+            } finally {
+                memFree(vertices);
+                memFree(indices);
+            }
+        }
+    }
+
+    private static void extract(AIMesh mesh, FloatBuffer vertices, IntBuffer indices, Vector3f min, Vector3f max) {
+        min.set(Float.POSITIVE_INFINITY);
+        max.set(Float.NEGATIVE_INFINITY);
+        ModelLoader.countIndices(mesh);
+        ModelLoader.extractVertices(mesh, vertices, min, max);
+        ModelLoader.extractIndices(mesh, indices);
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    private static float[] wrapperVertices(AIMesh mesh, Vector3f boundsMin, Vector3f boundsMax) {
+        AIVector3D.Buffer positions = mesh.mVertices();
+        AIVector3D.Buffer normals = mesh.mNormals();
+        AIVector3D.Buffer texCoords = mesh.mTextureCoords(0);
+        int vertexCount = mesh.mNumVertices();
+        float[] verts = new float[vertexCount * MeshData.FLOATS_PER_VERTEX];
+        for (int i = 0; i < vertexCount; i++) {
+            AIVector3D p = positions.get(i);
+            AIVector3D n = normals != null ? normals.get(i) : AIVector3D.create().set(0, 0, 1);
+            AIVector3D t = texCoords != null ? texCoords.get(i) : AIVector3D.create().set(0, 0, 0);
+            int base = i * MeshData.FLOATS_PER_VERTEX;
+            verts[base] = p.x();
+            verts[base + 1] = p.y();
+            verts[base + 2] = p.z();
+            verts[base + 3] = n.x();
+            verts[base + 4] = n.y();
+            verts[base + 5] = n.z();
+            verts[base + 6] = t.x();
+            verts[base + 7] = t.y();
+            boundsMin.min(new Vector3f(p.x(), p.y(), p.z()));
+            boundsMax.max(new Vector3f(p.x(), p.y(), p.z()));
+        }
+        return verts;
+    }
+
+    private static int[] wrapperIndices(AIMesh mesh) {
+        AIFace.Buffer faces = mesh.mFaces();
+        List<Integer> indexList = new ArrayList<>();
+        for (int i = 0; i < mesh.mNumFaces(); i++) {
+            IntBuffer indices = faces.get(i).mIndices();
+            for (int j = 0; j < indices.remaining(); j++) indexList.add(indices.get(j));
+        }
+        int[] arr = new int[indexList.size()];
+        for (int i = 0; i < arr.length; i++) arr[i] = indexList.get(i);
+        return arr;
+    }
+
+    private static ByteBuffer load(String resource) throws IOException {
+        try (InputStream is = ModelLoaderTest.class.getClassLoader().getResourceAsStream(resource)) {
+            assertNotNull(is, "Resource not found: " + resource);
+            byte[] bytes = is.readAllBytes();
+            return memAlloc(bytes.length).put(bytes).flip();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.graphics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RangeAllocatorTest {
+    @Test
+    void allocatesFirstFit() {
+        RangeAllocator allocator = new RangeAllocator(100);
+        int a = allocator.allocate(10);
+        int b = allocator.allocate(10);
+        int c = allocator.allocate(30);
+        int d = allocator.allocate(10);
+        assertEquals(0, a);
+        assertEquals(10, b);
+        assertEquals(20, c);
+        assertEquals(50, d);
+
+        // Holes of 10 at 0 and 30 at 20: a request for 20 skips the first, smaller ones take the lowest offset.
+        allocator.free(a, 10);
+        allocator.free(c, 30);
+        assertEquals(20, allocator.allocate(20));
+        assertEquals(0, allocator.allocate(5));
+        assertEquals(40, allocator.allocate(10));
+        assertEquals(55, allocator.used());
+    }
+
+    @Test
+    void coalescesNeighbouringFreeBlocks() {
+        RangeAllocator allocator = new RangeAllocator(30);
+        int a = allocator.allocate(10);
+        int b = allocator.allocate(10);
+        int c = allocator.allocate(10);
+        assertEquals(-1, allocator.allocate(1));
+
+        // Freeing the outer blocks leaves two holes of 10; the middle one joins them into 30.
+        allocator.free(a, 10);
+        allocator.free(c, 10);
+        assertEquals(-1, allocator.allocate(20));
+        allocator.free(b, 10);
+        assertEquals(0, allocator.used());
+        assertEquals(0, allocator.allocate(30));
+    }
+
+    @Test
+    void failsOnceFull() {
+        RangeAllocator allocator = new RangeAllocator(16);
+        for (int i = 0; i < 4; i++) assertEquals(i * 4, allocator.allocate(4));
+        assertEquals(16, allocator.used());
+        assertEquals(-1, allocator.allocate(1));
+        assertThrows(IllegalArgumentException.class, () -> allocator.allocate(0));
+    }
+
+    @Test
+    void growMergesNewTailWithFreeEnd() {
+        RangeAllocator allocator = new RangeAllocator(20);
+        allocator.allocate(12);
+        allocator.grow(40);
+        assertEquals(40, allocator.capacity());
+        assertEquals(12, allocator.allocate(28));
+        assertEquals(-1, allocator.allocate(1));
+    }
+}
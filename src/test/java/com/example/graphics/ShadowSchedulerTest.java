@@ -0,0 +1,97 @@
+package com.example.graphics;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShadowSchedulerTest {
+    private static final float THRESHOLD = 0.05f;
+
+    @Test
+    void budgetLimitsFacesPerFrame() {
+        ShadowScheduler scheduler = new ShadowScheduler(4, 5, THRESHOLD);
+        int[] masks = new int[4];
+        for (int light = 0; light < 4; light++) scheduler.updateLight(light, new Vector3f(light, 0, 0));
+
+        int total = 0;
+        for (int frame = 0; frame < 4; frame++) {
+            int picked = scheduler.schedule(4, masks);
+            assertTrue(picked <= 5);
+            assertEquals(picked, faces(masks));
+            total += picked;
+        }
+        // 24 dirty faces at 5 per frame: 5, 5, 5, 5, then the last 4.
+        assertEquals(20, total);
+        assertEquals(4, scheduler.schedule(4, masks));
+        assertEquals(0, scheduler.schedule(4, masks));
+    }
+
+    @Test
+    void nonPositiveBudgetRendersEverythingDirty() {
+        ShadowScheduler scheduler = new ShadowScheduler(3, 0, THRESHOLD);
+        int[] masks = new int[3];
+        for (int light = 0; light < 3; light++) scheduler.updateLight(light, new Vector3f());
+        assertEquals(18, scheduler.schedule(3, masks));
+        for (int mask : masks) assertEquals(0x3F, mask);
+    }
+
+    @Test
+    void roundRobinIsFairAcrossLights() {
+        int lights = 3;
+        ShadowScheduler scheduler = new ShadowScheduler(lights, 4, THRESHOLD);
+        int[] masks = new int[lights];
+        int[] rendered = new int[lights];
+        for (int frame = 0; frame < 27; frame++) {
+            // Every light keeps moving, so all of its faces stay dirty.
+            for (int light = 0; light < lights; light++) scheduler.updateLight(light, new Vector3f(light, frame, 0));
+            scheduler.schedule(lights, masks);
+            for (int light = 0; light < lights; light++) rendered[light] += Integer.bitCount(masks[light]);
+        }
+        // 108 faces, six full passes over the 18: the cursor hands each light the same share.
+        for (int light = 0; light < lights; light++) assertEquals(36, rendered[light]);
+    }
+
+    @Test
+    void moveAboveThresholdMarksFacesDirty() {
+        ShadowScheduler scheduler = new ShadowScheduler(2, 0, THRESHOLD);
+        int[] masks = new int[2];
+        scheduler.updateLight(0, new Vector3f());
+        scheduler.updateLight(1, new Vector3f(5, 0, 0));
+        scheduler.schedule(2, masks);
+
+        scheduler.updateLight(0, new Vector3f(THRESHOLD * 0.5f, 0, 0));
+        scheduler.updateLight(1, new Vector3f(5, THRESHOLD * 2.0f, 0));
+        assertEquals(6, scheduler.schedule(2, masks));
+        assertEquals(0, masks[0]);
+        assertEquals(0x3F, masks[1]);
+
+        // Small moves accumulate against the position the faces were rendered with.
+        scheduler.updateLight(0, new Vector3f(THRESHOLD * 1.5f, 0, 0));
+        scheduler.schedule(2, masks);
+        assertEquals(0x3F, masks[0]);
+    }
+
+    @Test
+    void occluderChangeInvalidatesAllFaces() {
+        ShadowScheduler scheduler = new ShadowScheduler(2, 0, THRESHOLD);
+        int[] masks = new int[2];
+        Matrix4f occluder = new Matrix4f();
+        scheduler.setOccluderTransform(occluder);
+        scheduler.updateLight(0, new Vector3f());
+        scheduler.updateLight(1, new Vector3f());
+        scheduler.schedule(2, masks);
+
+        scheduler.setOccluderTransform(occluder);
+        assertEquals(0, scheduler.schedule(2, masks));
+        scheduler.setOccluderTransform(occluder.translate(1, 0, 0));
+        assertEquals(12, scheduler.schedule(2, masks));
+    }
+
+    private static int faces(int[] masks) {
+        int n = 0;
+        for (int mask : masks) n += Integer.bitCount(mask);
+        return n;
+    }
+}